@@ -0,0 +1,25 @@
+package me.eddiep.tinyhttp.benchmarks;
+
+import me.eddiep.tinyhttp.net.http.HttpMethod;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Converting the method of a request line to a {@link me.eddiep.tinyhttp.net.http.HttpMethod}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HttpMethodBenchmark {
+    @Param({ "GET", "POST", "DELETE", "get", "PATCH" })
+    public String method;
+
+    @Benchmark
+    public HttpMethod toHttpMethod() {
+        return HttpMethod.toHttpMethod(method);
+    }
+}
@@ -0,0 +1,42 @@
+package me.eddiep.tinyhttp.benchmarks;
+
+import me.eddiep.tinyhttp.net.http.MimeTypes;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Finding the content type of a static file, which is done for every file the server sends that is not in the file cache
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MimeTypesBenchmark {
+    private File[] files;
+    private int next;
+
+    @Setup
+    public void setup() {
+        files = new File[] {
+                new File("/var/www/index.html"),
+                new File("/var/www/css/site.min.css"),
+                new File("/var/www/js/app.bundle.js"),
+                new File("/var/www/images/logo.png"),
+                new File("/var/www/images/photos/2015/holiday.jpeg"),
+                new File("/var/www/fonts/OpenSans-Regular.woff"),
+                new File("/var/www/downloads/release-1.0.1.tar.gz"),
+                new File("/var/www/README")
+        };
+    }
+
+    @Benchmark
+    public String getMimeTypeFor() {
+        File file = files[next];
+        next = (next + 1) & 7;
+        return MimeTypes.getMimeTypeFor(file);
+    }
+}
@@ -0,0 +1,81 @@
+package me.eddiep.tinyhttp.benchmarks;
+
+import me.eddiep.tinyhttp.net.http.HttpMethod;
+import me.eddiep.tinyhttp.routing.RouteDispatcher;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Route lookup as done by {@link me.eddiep.tinyhttp.TinyHttpServer#invokeForRequest(me.eddiep.tinyhttp.net.Request, me.eddiep.tinyhttp.net.Response)}
+ * for every request. The route table mixes literal, prefix and regex routes the way a typical application does, and
+ * the looked up paths mix hits of every kind with misses
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RouteLookupBenchmark {
+    @Param({ "10", "100", "1000" })
+    public int routeCount;
+
+    private RouteDispatcher<String> dispatcher;
+    private String[] paths;
+    private int next;
+
+    @Setup
+    public void setup() {
+        dispatcher = new RouteDispatcher<String>();
+        for (int i = 0; i < routeCount; i++) {
+            //Most routes of an application are plain paths, the rest capture an id or serve everything below a prefix
+            String route;
+            switch (i % 5) {
+                case 0:
+                    route = "/api/v1/users" + i + "/[0-9]+";
+                    break;
+                case 1:
+                    route = "/assets" + i + "/.*";
+                    break;
+                default:
+                    route = "/api/v1/resource" + i;
+                    break;
+            }
+            dispatcher.register(HttpMethod.GET, route, route);
+        }
+
+        paths = new String[] {
+                "/api/v1/resource" + (routeCount - 3),
+                "/api/v1/users" + (routeCount / 5 * 5 - 5) + "/12345",
+                "/assets" + (routeCount / 5 * 5 - 4) + "/css/site.css",
+                "/api/v1/resource2",
+                "/favicon.ico",
+                "/api/v1/users0/not-a-number",
+                "/api/v2/unknown/path/that/matches/nothing",
+                "/"
+        };
+    }
+
+    @Benchmark
+    public String lookup() {
+        String path = paths[next];
+        next = (next + 1) & 7;
+        return dispatcher.lookup(HttpMethod.GET, path);
+    }
+
+    @Benchmark
+    public String lookupLiteral() {
+        return dispatcher.lookup(HttpMethod.GET, paths[0]);
+    }
+
+    @Benchmark
+    public String lookupRegex() {
+        return dispatcher.lookup(HttpMethod.GET, paths[1]);
+    }
+
+    @Benchmark
+    public String lookupMiss() {
+        return dispatcher.lookup(HttpMethod.GET, paths[6]);
+    }
+}
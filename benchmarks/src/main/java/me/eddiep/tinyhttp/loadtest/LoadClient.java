@@ -0,0 +1,210 @@
+package me.eddiep.tinyhttp.loadtest;
+
+import me.eddiep.tinyhttp.metrics.LatencyHistogram;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * One connection of the load test. Requests are sent on a fixed schedule, and every latency is measured from the time
+ * the request was supposed to be sent rather than from the time it actually was. A client that falls behind because
+ * the server stalled keeps counting the time its next requests spent waiting, instead of quietly sending fewer of them,
+ * which is the coordinated omission a closed loop benchmark suffers from
+ */
+class LoadClient implements Runnable {
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    private final InetSocketAddress address;
+    private final byte[] request;
+    private final byte[] body;
+    private final boolean keepAlive;
+    private final long interval;
+    private final long firstRequest;
+    private final long measureFrom;
+    private final long end;
+
+    private final LatencyHistogram corrected;
+    private final LatencyHistogram service;
+    private final LongAdder completed;
+    private final LongAdder errors;
+
+    private Socket socket;
+    private InputStream in;
+    private OutputStream out;
+    private final byte[] buffer = new byte[64 * 1024];
+    private boolean serverClosing;
+
+    /**
+     * @param interval The time between two requests of this connection in nanoseconds, or 0 to send the next request as
+     *                 soon as the last response arrives
+     * @param firstRequest When to send the first request, in {@link System#nanoTime()}
+     * @param measureFrom Requests scheduled before this time are warmup and are not recorded
+     * @param end No request is scheduled at or after this time
+     */
+    LoadClient(InetSocketAddress address, String method, String path, byte[] body, boolean keepAlive, long interval,
+               long firstRequest, long measureFrom, long end, LatencyHistogram corrected, LatencyHistogram service,
+               LongAdder completed, LongAdder errors) {
+        this.address = address;
+        this.body = body;
+        this.keepAlive = keepAlive;
+        this.interval = interval;
+        this.firstRequest = firstRequest;
+        this.measureFrom = measureFrom;
+        this.end = end;
+        this.corrected = corrected;
+        this.service = service;
+        this.completed = completed;
+        this.errors = errors;
+
+        StringBuilder head = new StringBuilder();
+        head.append(method).append(' ').append(path).append(" HTTP/1.1\r\n");
+        head.append("Host: ").append(address.getHostString()).append(':').append(address.getPort()).append("\r\n");
+        head.append("User-Agent: tinyhttp-loadtest\r\n");
+        head.append("Connection: ").append(keepAlive ? "keep-alive" : "close").append("\r\n");
+        if (body != null) {
+            head.append("Content-Type: application/octet-stream\r\n");
+            head.append("Content-Length: ").append(body.length).append("\r\n");
+        }
+        head.append("\r\n");
+        this.request = head.toString().getBytes(ASCII);
+    }
+
+    @Override
+    public void run() {
+        long intended = firstRequest;
+        try {
+            while (intended < end) {
+                if (interval > 0) {
+                    long wait;
+                    while ((wait = intended - System.nanoTime()) > 0) {
+                        LockSupport.parkNanos(wait);
+                    }
+                } else {
+                    intended = System.nanoTime();
+                    if (intended >= end)
+                        break;
+                }
+
+                long sent = System.nanoTime();
+                boolean ok;
+                try {
+                    exchange();
+                    ok = true;
+                } catch (IOException e) {
+                    ok = false;
+                    disconnect();
+                }
+                long done = System.nanoTime();
+
+                if (intended >= measureFrom) {
+                    if (ok) {
+                        corrected.record(done - intended);
+                        service.record(done - sent);
+                        completed.increment();
+                    } else {
+                        errors.increment();
+                    }
+                }
+
+                if (!keepAlive || serverClosing)
+                    disconnect();
+                intended += interval;
+            }
+        } finally {
+            disconnect();
+        }
+    }
+
+    private void exchange() throws IOException {
+        if (socket == null)
+            connect();
+
+        out.write(request);
+        if (body != null)
+            out.write(body);
+        out.flush();
+
+        readResponse();
+    }
+
+    private void connect() throws IOException {
+        socket = new Socket();
+        socket.setTcpNoDelay(true);
+        socket.setSoTimeout(30000);
+        socket.connect(address);
+        in = new BufferedInputStream(socket.getInputStream(), buffer.length);
+        out = socket.getOutputStream();
+        serverClosing = false;
+    }
+
+    private void disconnect() {
+        if (socket == null)
+            return;
+        try {
+            socket.close();
+        } catch (IOException ignored) { }
+        socket = null;
+        in = null;
+        out = null;
+    }
+
+    /**
+     * Read one response. The server always answers these requests with a <code>Content-Length</code>
+     */
+    private void readResponse() throws IOException {
+        long contentLength = -1;
+        boolean statusLine = true;
+        while (true) {
+            String line = readLine();
+            if (statusLine) {
+                if (!line.startsWith("HTTP/1.1 2"))
+                    throw new IOException("Unexpected response: " + line);
+                statusLine = false;
+                continue;
+            }
+            if (line.isEmpty())
+                break;
+
+            int colon = line.indexOf(':');
+            if (colon == -1)
+                continue;
+            String name = line.substring(0, colon).trim();
+            String value = line.substring(colon + 1).trim();
+            if (name.equalsIgnoreCase("Content-Length"))
+                contentLength = Long.parseLong(value);
+            else if (name.equalsIgnoreCase("Connection") && value.equalsIgnoreCase("close"))
+                serverClosing = true;
+        }
+
+        if (contentLength == -1)
+            throw new IOException("The response has no Content-Length");
+
+        long remaining = contentLength;
+        while (remaining > 0) {
+            int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+            if (read == -1)
+                throw new EOFException("The connection was closed in the middle of a response");
+            remaining -= read;
+        }
+    }
+
+    private String readLine() throws IOException {
+        StringBuilder line = new StringBuilder(64);
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b == -1)
+                throw new EOFException("The connection was closed in the middle of a response");
+            if (b != '\r')
+                line.append((char) b);
+        }
+        return line.toString();
+    }
+}
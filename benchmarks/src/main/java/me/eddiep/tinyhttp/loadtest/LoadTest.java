@@ -0,0 +1,277 @@
+package me.eddiep.tinyhttp.loadtest;
+
+import me.eddiep.tinyhttp.ExecutionMode;
+import me.eddiep.tinyhttp.ServerMode;
+import me.eddiep.tinyhttp.TinyHttpServer;
+import me.eddiep.tinyhttp.metrics.LatencyHistogram;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An end to end load test. A {@link me.eddiep.tinyhttp.TinyHttpServer} running the {@link LoadTestListener} is started
+ * on loopback and driven by a number of connections, each sending requests at a fixed rate. <br></br>
+ * At the end the throughput and the latency distribution are printed twice: corrected for coordinated omission (measured
+ * from when each request should have been sent) and as service time (measured from when it was actually sent). When the
+ * two are far apart, the server could not keep up with the requested rate. <br></br>
+ * Run it from the benchmarks jar, for example:
+ * <pre>
+ *     java -cp benchmarks/target/benchmarks.jar me.eddiep.tinyhttp.loadtest.LoadTest --scenario dynamic --mode event-loop --connections 64 --rate 20000
+ * </pre>
+ * Run it with <code>--help</code> to see every option
+ */
+public class LoadTest {
+    private String scenario = "dynamic";
+    private String mode = "threads";
+    private int connections = 16;
+    private int rate = 5000;
+    private long duration = TimeUnit.SECONDS.toNanos(30);
+    private long warmup = TimeUnit.SECONDS.toNanos(5);
+    private boolean keepAlive = true;
+    private int bodySize = 1024 * 1024;
+    private int fileSize = 16 * 1024;
+    private int workers = -1;
+    private int acceptors = 1;
+    private int port = 18080;
+
+    public static void main(String[] args) throws Exception {
+        LoadTest test = new LoadTest();
+        try {
+            test.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            printUsage();
+            System.exit(1);
+        }
+        test.run();
+        System.exit(0);
+    }
+
+    private static void printUsage() {
+        System.err.println("Usage: LoadTest [options]");
+        System.err.println("  --scenario static|dynamic|upload   What to request (default dynamic)");
+        System.err.println("  --mode threads|event-loop|virtual  How the server handles connections (default threads)");
+        System.err.println("  --connections N                    Number of connections (default 16)");
+        System.err.println("  --rate N                           Requests per second over all connections, 0 sends as fast as");
+        System.err.println("                                     possible without correcting for coordinated omission (default 5000)");
+        System.err.println("  --duration SECONDS                 How long to measure (default 30)");
+        System.err.println("  --warmup SECONDS                   How long to run before measuring (default 5)");
+        System.err.println("  --keep-alive true|false            Reuse connections (default true)");
+        System.err.println("  --body-size BYTES                  Size of each upload (default 1048576)");
+        System.err.println("  --file-size BYTES                  Size of the static file (default 16384)");
+        System.err.println("  --workers N                        Worker threads of the server (default: connections + 16)");
+        System.err.println("  --acceptors N                      Threads accepting connections (default 1)");
+        System.err.println("  --port N                           Port to listen on (default 18080)");
+    }
+
+    private void parse(String[] args) {
+        for (int i = 0; i < args.length; i += 2) {
+            String option = args[i];
+            if (option.equals("--help") || option.equals("-h"))
+                throw new IllegalArgumentException("TinyHttp load test");
+            if (i + 1 >= args.length)
+                throw new IllegalArgumentException("Missing value for " + option);
+            String value = args[i + 1];
+
+            if (option.equals("--scenario"))
+                scenario = value;
+            else if (option.equals("--mode"))
+                mode = value;
+            else if (option.equals("--connections"))
+                connections = parsePositive(option, value);
+            else if (option.equals("--rate"))
+                rate = Integer.parseInt(value);
+            else if (option.equals("--duration"))
+                duration = TimeUnit.SECONDS.toNanos(parsePositive(option, value));
+            else if (option.equals("--warmup"))
+                warmup = TimeUnit.SECONDS.toNanos(Integer.parseInt(value));
+            else if (option.equals("--keep-alive"))
+                keepAlive = Boolean.parseBoolean(value);
+            else if (option.equals("--body-size"))
+                bodySize = parsePositive(option, value);
+            else if (option.equals("--file-size"))
+                fileSize = parsePositive(option, value);
+            else if (option.equals("--workers"))
+                workers = parsePositive(option, value);
+            else if (option.equals("--acceptors"))
+                acceptors = parsePositive(option, value);
+            else if (option.equals("--port"))
+                port = parsePositive(option, value);
+            else
+                throw new IllegalArgumentException("Unknown option " + option);
+        }
+
+        if (!scenario.equals("static") && !scenario.equals("dynamic") && !scenario.equals("upload"))
+            throw new IllegalArgumentException("Unknown scenario " + scenario);
+        if (!mode.equals("threads") && !mode.equals("event-loop") && !mode.equals("virtual"))
+            throw new IllegalArgumentException("Unknown mode " + mode);
+        if (rate < 0 || warmup < 0)
+            throw new IllegalArgumentException("The rate and warmup can't be negative");
+    }
+
+    private static int parsePositive(String option, String value) {
+        int number = Integer.parseInt(value);
+        if (number <= 0)
+            throw new IllegalArgumentException(option + " must be larger than 0");
+        return number;
+    }
+
+    private void run() throws Exception {
+        File root = createRoot();
+        final TinyHttpServer server = createServer(root);
+
+        Thread serverThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    server.start();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }, "loadtest-server");
+        serverThread.setDaemon(true);
+        serverThread.start();
+        awaitListening();
+
+        LatencyHistogram corrected = new LatencyHistogram();
+        LatencyHistogram service = new LatencyHistogram();
+        LongAdder completed = new LongAdder();
+        LongAdder errors = new LongAdder();
+
+        String method = "GET";
+        String path = "/hello";
+        byte[] body = null;
+        if (scenario.equals("static")) {
+            path = "/file.bin";
+        } else if (scenario.equals("upload")) {
+            method = "POST";
+            path = "/upload";
+            body = new byte[bodySize];
+            new Random(42).nextBytes(body);
+        }
+
+        InetSocketAddress address = new InetSocketAddress("127.0.0.1", port);
+        long interval = rate > 0 ? TimeUnit.SECONDS.toNanos(1) * connections / rate : 0;
+        long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+        long measureFrom = start + warmup;
+        long end = measureFrom + duration;
+
+        printConfiguration();
+        Thread[] threads = new Thread[connections];
+        for (int i = 0; i < connections; i++) {
+            //Spread the connections over one interval so they don't all send at the same moment
+            long first = start + (interval * i) / connections;
+            threads[i] = new Thread(new LoadClient(address, method, path, body, keepAlive, interval, first, measureFrom,
+                    end, corrected, service, completed, errors), "loadtest-client-" + i);
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        printReport(completed.sum(), errors.sum(), corrected.snapshot(), service.snapshot());
+
+        server.stop(Duration.ofSeconds(5)).get();
+        deleteRoot(root);
+    }
+
+    private TinyHttpServer createServer(File root) {
+        TinyHttpServer server = new TinyHttpServer(port, new LoadTestListener(), true);
+        server.setRootDirectory(root);
+        server.setKeepAliveEnabled(keepAlive);
+        //Uploads are buffered whole in event loop mode
+        server.setMaxBufferedContentLength(Math.max(server.getMaxBufferedContentLength(), bodySize));
+
+        if (mode.equals("event-loop")) {
+            server.setServerMode(ServerMode.EVENT_LOOP);
+        } else if (mode.equals("virtual")) {
+            server.setExecutionMode(ExecutionMode.VIRTUAL_THREADS);
+        }
+
+        //A persistent connection holds on to its thread, so every connection needs one to be measured fairly
+        int threads = workers > 0 ? workers : connections + 16;
+        server.setWorkerPoolSize(threads, threads, Math.max(connections, 512));
+        server.setAcceptorThreads(acceptors);
+        return server;
+    }
+
+    private File createRoot() throws IOException {
+        File root = File.createTempFile("tinyhttp-loadtest", "");
+        if (!root.delete() || !root.mkdir())
+            throw new IOException("Could not create " + root);
+
+        byte[] data = new byte[fileSize];
+        new Random(7).nextBytes(data);
+        OutputStream out = new FileOutputStream(new File(root, "file.bin"));
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+        return root;
+    }
+
+    private static void deleteRoot(File root) {
+        File[] files = root.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        root.delete();
+    }
+
+    private void awaitListening() throws InterruptedException, IOException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (true) {
+            Socket socket = new Socket();
+            try {
+                socket.connect(new InetSocketAddress("127.0.0.1", port), 1000);
+                return;
+            } catch (IOException e) {
+                if (System.currentTimeMillis() > deadline)
+                    throw new IOException("The server did not start listening on port " + port, e);
+                Thread.sleep(50);
+            } finally {
+                socket.close();
+            }
+        }
+    }
+
+    private void printConfiguration() {
+        System.out.println(String.format(Locale.US,
+                "scenario=%s mode=%s acceptors=%d connections=%d rate=%s keep-alive=%s warmup=%ds duration=%ds%s",
+                scenario, mode, acceptors, connections, rate > 0 ? rate + "/s" : "max", keepAlive,
+                TimeUnit.NANOSECONDS.toSeconds(warmup), TimeUnit.NANOSECONDS.toSeconds(duration),
+                scenario.equals("upload") ? " body-size=" + bodySize : scenario.equals("static") ? " file-size=" + fileSize : ""));
+    }
+
+    private void printReport(long completed, long errors, LatencyHistogram.Snapshot corrected, LatencyHistogram.Snapshot service) {
+        double seconds = duration / 1e9;
+        System.out.println(String.format(Locale.US, "requests: %d  errors: %d  throughput: %.1f req/s",
+                completed, errors, completed / seconds));
+        if (rate > 0) {
+            System.out.println(String.format(Locale.US, "target rate: %d req/s, achieved %.1f%%", rate, 100.0 * completed / seconds / rate));
+            printLatency("latency (corrected)", corrected);
+        } else {
+            System.out.println("No rate was given, so latencies can't be corrected for coordinated omission");
+        }
+        printLatency("latency (service)  ", service);
+    }
+
+    private static void printLatency(String label, LatencyHistogram.Snapshot snapshot) {
+        System.out.println(String.format(Locale.US, "%s  mean %8.3fms  p50 %8.3fms  p99 %8.3fms  p999 %8.3fms",
+                label, snapshot.getMeanNanos() / 1e6, snapshot.getValueAtQuantile(0.5) / 1e6,
+                snapshot.getValueAtQuantile(0.99) / 1e6, snapshot.getValueAtQuantile(0.999) / 1e6));
+    }
+}
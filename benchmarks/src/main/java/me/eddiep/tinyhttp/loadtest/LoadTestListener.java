@@ -0,0 +1,48 @@
+package me.eddiep.tinyhttp.loadtest;
+
+import me.eddiep.tinyhttp.TinyListener;
+import me.eddiep.tinyhttp.annotations.GetHandler;
+import me.eddiep.tinyhttp.annotations.PostHandler;
+import me.eddiep.tinyhttp.net.Request;
+import me.eddiep.tinyhttp.net.Response;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The reference {@link me.eddiep.tinyhttp.TinyListener} the load test runs against. Static files are served by the
+ * server itself from the root directory
+ */
+public class LoadTestListener implements TinyListener {
+
+    /**
+     * A small dynamic response, about the size of a JSON API answer
+     */
+    @GetHandler(requestPath = "/hello")
+    public void hello(Request request, Response response) {
+        response.setContentType("application/json; charset=UTF-8");
+        response.echo("{\"message\":\"Hello, World!\",\"path\":\"");
+        response.echo(request.getRequestPath());
+        response.echo("\",\"requests\":");
+        response.echo(request.getClient().getRequestCount());
+        response.echo("}");
+    }
+
+    /**
+     * Reads and throws away an upload, then answers with its size
+     */
+    @PostHandler(requestPath = "/upload")
+    public void upload(Request request, Response response) throws IOException {
+        InputStream in = request.getInputStream();
+        long total = 0;
+        if (in != null) {
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                total += read;
+            }
+        }
+        response.setContentType("text/plain; charset=UTF-8");
+        response.echo(total);
+    }
+}
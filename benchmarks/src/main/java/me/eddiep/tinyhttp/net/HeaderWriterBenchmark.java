@@ -0,0 +1,88 @@
+package me.eddiep.tinyhttp.net;
+
+import me.eddiep.tinyhttp.net.http.StatusCode;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writing the status line and headers of a response with {@link HeaderWriter}, with the headers of a small dynamic
+ * response, of a static file, and of a response carrying several cookies and custom headers
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HeaderWriterBenchmark {
+    @Param({ "dynamic", "file", "large" })
+    public String profile;
+
+    private Response respond;
+    private byte[] content;
+    private CountingOutputStream out = new CountingOutputStream();
+
+    @Setup
+    public void setup() {
+        respond = new Response((Client) null);
+        respond.addHeader("Connection", "keep-alive");
+        respond.addHeader("Keep-Alive", "timeout=5");
+        respond.addHeader("Content-Type", "text/html; charset=UTF-8");
+        respond.addHeader("Content-Length", "1024");
+
+        if (!"dynamic".equals(profile)) {
+            respond.addHeader("Accept-Ranges", "bytes");
+            respond.addHeader("ETag", "\"14d0fb2c4a8-2b9e\"");
+            respond.addHeader("Last-Modified", "Sat, 13 Jun 2015 18:25:03 GMT");
+            respond.addHeader("Cache-Control", "public, max-age=3600");
+        }
+        if ("large".equals(profile)) {
+            respond.setStatusCode(StatusCode.Found);
+            respond.addHeader("Location", "https://www.example.com/account/overview?tab=settings");
+            respond.addHeader("Set-Cookie", "session=8f14e45fceea167a5a36dedd4bea2543; Path=/; HttpOnly; Secure; SameSite=Lax");
+            respond.addHeader("X-Request-Id", "7c9e6679-7425-40de-944b-e07fc1f90ae7");
+            respond.addHeader("X-Frame-Options", "SAMEORIGIN");
+            respond.addHeader("Content-Security-Policy", "default-src 'self'; img-src 'self' data: https://cdn.example.com; script-src 'self'");
+            respond.addHeader("Strict-Transport-Security", "max-age=31536000; includeSubDomains");
+        }
+
+        content = new byte[1024];
+    }
+
+    @Benchmark
+    public long writeHead() throws IOException {
+        out.count = 0;
+        HeaderWriter.write(respond, out);
+        return out.count;
+    }
+
+    /**
+     * Write the head together with a small body, which is copied behind the head so both go out in one write
+     */
+    @Benchmark
+    public long writeHeadAndContent() throws IOException {
+        out.count = 0;
+        HeaderWriter.write(respond, out, content, 0, content.length);
+        return out.count;
+    }
+
+    /**
+     * Stands in for the socket, so only the cost of building the head is measured
+     */
+    private static class CountingOutputStream extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
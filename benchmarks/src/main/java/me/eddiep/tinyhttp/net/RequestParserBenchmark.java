@@ -0,0 +1,124 @@
+package me.eddiep.tinyhttp.net;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing request heads the way {@link Client} and {@link ChannelClient} do for every request, with heads as sent by a
+ * command line client, a browser, and a browser carrying a large cookie
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestParserBenchmark {
+    private static final String CURL =
+            "GET /api/v1/users/12345 HTTP/1.1\r\n" +
+            "Host: localhost:8080\r\n" +
+            "User-Agent: curl/8.4.0\r\n" +
+            "Accept: */*\r\n" +
+            "\r\n";
+
+    private static final String BROWSER =
+            "GET /articles/2015/06/tinyhttp-release.html?ref=home&page=2 HTTP/1.1\r\n" +
+            "Host: www.example.com\r\n" +
+            "Connection: keep-alive\r\n" +
+            "Cache-Control: max-age=0\r\n" +
+            "sec-ch-ua: \"Chromium\";v=\"118\", \"Google Chrome\";v=\"118\", \"Not=A?Brand\";v=\"99\"\r\n" +
+            "sec-ch-ua-mobile: ?0\r\n" +
+            "sec-ch-ua-platform: \"Windows\"\r\n" +
+            "Upgrade-Insecure-Requests: 1\r\n" +
+            "User-Agent: Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/118.0.0.0 Safari/537.36\r\n" +
+            "Accept: text/html,application/xhtml+xml,application/xml;q=0.9,image/avif,image/webp,image/apng,*/*;q=0.8\r\n" +
+            "Sec-Fetch-Site: same-origin\r\n" +
+            "Sec-Fetch-Mode: navigate\r\n" +
+            "Sec-Fetch-User: ?1\r\n" +
+            "Sec-Fetch-Dest: document\r\n" +
+            "Referer: https://www.example.com/\r\n" +
+            "Accept-Encoding: gzip, deflate, br\r\n" +
+            "Accept-Language: en-US,en;q=0.9\r\n" +
+            "If-None-Match: \"5f3a1c-2b9e\"\r\n" +
+            "If-Modified-Since: Sat, 13 Jun 2015 18:25:03 GMT\r\n" +
+            "\r\n";
+
+    @Param({ "curl", "browser", "cookies" })
+    public String profile;
+
+    private byte[] head;
+    private RequestParser parser;
+
+    @Setup
+    public void setup() {
+        String text;
+        if ("curl".equals(profile)) {
+            text = CURL;
+        } else if ("browser".equals(profile)) {
+            text = BROWSER;
+        } else {
+            //Analytics and session cookies easily add up to a few kilobytes
+            StringBuilder cookie = new StringBuilder("Cookie: session=8f14e45fceea167a5a36dedd4bea2543");
+            for (int i = 0; i < 40; i++) {
+                cookie.append("; _tracker_").append(i).append("=GA1.2.").append(1000000000L + i * 7919L).append(".1434219903");
+            }
+            text = BROWSER.substring(0, BROWSER.length() - 2) + cookie + "\r\n\r\n";
+        }
+        head = text.getBytes(Charset.forName("ISO-8859-1"));
+        parser = new RequestParser(64 * 1024, 100);
+    }
+
+    /**
+     * Find the end of the head and index every header
+     */
+    @Benchmark
+    public RequestHead parse() throws HttpParseException {
+        int end = parser.parse(head, 0, head.length);
+        RequestHead result = parser.createHead(head, 0, end);
+        parser.reset();
+        return result;
+    }
+
+    /**
+     * Parse the head, then read what the server reads for every request
+     */
+    @Benchmark
+    public void parseAndRead(Blackhole blackhole) throws HttpParseException {
+        RequestHead result = parse();
+        blackhole.consume(result.getMethod());
+        blackhole.consume(result.getTarget());
+        blackhole.consume(result.getVersion());
+        blackhole.consume(result.getContentLength());
+        blackhole.consume(result.valueEqualsIgnoreCase(RequestHead.CONNECTION, "close"));
+        blackhole.consume(result.indexOf(RequestHead.TRANSFER_ENCODING));
+        blackhole.consume(result.get(RequestHead.HOST));
+    }
+
+    /**
+     * Parse the head and decode the value of every header, like a handler that logs all of them
+     */
+    @Benchmark
+    public void parseAndReadAll(Blackhole blackhole) throws HttpParseException {
+        RequestHead result = parse();
+        for (int i = 0; i < result.size(); i++) {
+            blackhole.consume(result.getName(i));
+            blackhole.consume(result.getValue(i));
+        }
+    }
+
+    /**
+     * Parse a head that arrives split over two reads, which makes the parser resume where it stopped
+     */
+    @Benchmark
+    public RequestHead parseSplit() throws HttpParseException {
+        int half = head.length / 2;
+        parser.parse(head, 0, half);
+        int end = parser.parse(head, 0, head.length);
+        RequestHead result = parser.createHead(head, 0, end);
+        parser.reset();
+        return result;
+    }
+}
@@ -0,0 +1,72 @@
+package me.eddiep.tinyhttp.net;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building a response body out of many small {@link Response#echo(String)} calls, the way a handler renders a page.
+ * The body is released after every operation, like the server does once the response has been written
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponseEchoBenchmark {
+    /**
+     * The number of rows rendered, 10 is a small fragment and 1000 a large table of about 60KB
+     */
+    @Param({ "10", "1000" })
+    public int rows;
+
+    @Benchmark
+    public int echoAscii() {
+        Response respond = new Response((Client) null);
+        respond.echo("<table>\n");
+        for (int i = 0; i < rows; i++) {
+            respond.echo("<tr><td>");
+            respond.echo("Row number ");
+            respond.echo(i);
+            respond.echo("</td><td class=\"value\">");
+            respond.echo(i * 31L);
+            respond.echo("</td></tr>\n");
+        }
+        respond.echo("</table>");
+        return release(respond);
+    }
+
+    @Benchmark
+    public int echoUnicode() {
+        Response respond = new Response((Client) null);
+        for (int i = 0; i < rows; i++) {
+            respond.echo("<li>Café über 世界 ");
+            respond.echo(i);
+            respond.echo("</li>\n");
+        }
+        return release(respond);
+    }
+
+    @Benchmark
+    public int echoMixed() {
+        Response respond = new Response((Client) null);
+        for (int i = 0; i < rows; i++) {
+            respond.echo('[');
+            respond.echo(i % 2 == 0);
+            respond.echo(',');
+            respond.echo(i / 3.0);
+            respond.echo(',');
+            respond.echo((Object) Integer.valueOf(i));
+            respond.echo("]\n");
+        }
+        return release(respond);
+    }
+
+    private static int release(Response respond) {
+        ResponseBuffer body = respond.body;
+        int size = body.size();
+        body.release();
+        return size;
+    }
+}
@@ -0,0 +1,4 @@
+package me.eddiep.tinyhttp.benchmarks.jmh_generated;
+public class HttpMethodBenchmark_jmhType extends HttpMethodBenchmark_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package me.eddiep.tinyhttp.benchmarks.jmh_generated;
+public class MimeTypesBenchmark_jmhType extends MimeTypesBenchmark_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package me.eddiep.tinyhttp.benchmarks.jmh_generated;
+public class RouteLookupBenchmark_jmhType extends RouteLookupBenchmark_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package me.eddiep.tinyhttp.net.jmh_generated;
+public class HeaderWriterBenchmark_jmhType extends HeaderWriterBenchmark_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package me.eddiep.tinyhttp.net.jmh_generated;
+public class RequestParserBenchmark_jmhType extends RequestParserBenchmark_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package me.eddiep.tinyhttp.net.jmh_generated;
+public class ResponseEchoBenchmark_jmhType extends ResponseEchoBenchmark_jmhType_B3 {
+}
+
@@ -0,0 +1,19 @@
+package me.eddiep.tinyhttp;
+
+/**
+ * The kind of threads a {@link TinyHttpServer} runs connections and handlers on
+ *
+ * @see TinyHttpServer#setExecutionMode(ExecutionMode)
+ */
+public enum ExecutionMode {
+    /**
+     * Connections and handlers run on the bounded pool of platform threads configured with
+     * {@link TinyHttpServer#setWorkerPoolSize(int, int, int)}
+     */
+    PLATFORM_THREADS,
+    /**
+     * Every connection and every handler invocation gets its own virtual thread. Virtual threads are only available on
+     * Java 21 and newer, on older JVMs the server falls back to {@link ExecutionMode#PLATFORM_THREADS}
+     */
+    VIRTUAL_THREADS
+}
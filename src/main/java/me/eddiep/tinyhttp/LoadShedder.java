@@ -0,0 +1,162 @@
+package me.eddiep.tinyhttp;
+
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decides which requests a {@link TinyHttpServer} turns away when it is overloaded. Requests that are turned away are
+ * answered with a pre-encoded {@link me.eddiep.tinyhttp.net.http.StatusCode#ServiceUnavailable} and the connection is
+ * closed, which is far cheaper than handling them late. <br></br>
+ * Two limits are applied to every request before its handler runs:
+ * <ul>
+ *     <li>At most {@link TinyHttpServer#getMaxInFlightRequests()} requests are handled at once</li>
+ *     <li>A request that waited too long for a thread is shed. Like CoDel, this looks at the shortest wait seen during
+ *     each interval of {@link TinyHttpServer#getQueueDelayInterval()}. If even the shortest wait was above
+ *     {@link TinyHttpServer#getQueueDelayTarget()}, the queue is not draining and only requests that waited less than
+ *     the target are handled. Otherwise requests may wait up to a whole interval, so a short burst is absorbed instead
+ *     of shed</li>
+ * </ul>
+ */
+public class LoadShedder {
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    private final int maxInFlight;
+    private final long target;
+    private final long interval;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder shed = new LongAdder();
+    private volatile byte[] rejection;
+
+    private volatile long intervalEnd;
+    private volatile boolean overloaded;
+    private final AtomicLong minDelay = new AtomicLong(Long.MAX_VALUE);
+
+    /**
+     * Create a new load shedder
+     * @param maxInFlight The number of requests that may be handled at once, or 0 for no limit
+     * @param target The queueing delay in milliseconds the server tries to stay under, or 0 to never shed requests
+     *               because they waited too long
+     * @param interval The interval in milliseconds the queueing delay is watched over
+     * @param retryAfter The number of seconds in the <code>Retry-After</code> header of the rejection
+     */
+    public LoadShedder(int maxInFlight, int target, int interval, int retryAfter) {
+        if (maxInFlight < 0 || target < 0 || interval < 1)
+            throw new IllegalArgumentException("Invalid load shedding limits!");
+
+        this.maxInFlight = maxInFlight;
+        this.target = TimeUnit.MILLISECONDS.toNanos(target);
+        this.interval = TimeUnit.MILLISECONDS.toNanos(interval);
+        this.intervalEnd = System.nanoTime() + this.interval;
+        setRetryAfter(retryAfter);
+    }
+
+    /**
+     * Decide whether a request should be handled. Every request that is admitted must be followed by a call to
+     * {@link LoadShedder#release()} once it has been handled
+     * @param queueDelay How long, in nanoseconds, the request waited before a thread picked it up
+     * @return Whether the request should be handled. If false, the request should be answered with {@link LoadShedder#getRejection()}
+     */
+    public boolean admit(long queueDelay) {
+        if (target > 0 && !admitDelay(queueDelay)) {
+            shed.increment();
+            return false;
+        }
+
+        if (maxInFlight > 0) {
+            if (inFlight.incrementAndGet() > maxInFlight) {
+                inFlight.decrementAndGet();
+                shed.increment();
+                return false;
+            }
+        } else {
+            inFlight.incrementAndGet();
+        }
+        return true;
+    }
+
+    private boolean admitDelay(long queueDelay) {
+        long now = System.nanoTime();
+        if (now - intervalEnd >= 0) {
+            synchronized (this) {
+                if (now - intervalEnd >= 0) {
+                    //An interval without any request tells us nothing, so the last verdict stands
+                    long min = minDelay.getAndSet(Long.MAX_VALUE);
+                    if (min != Long.MAX_VALUE)
+                        overloaded = min > target;
+                    intervalEnd = now + interval;
+                }
+            }
+        }
+
+        long min;
+        while (queueDelay < (min = minDelay.get())) {
+            if (minDelay.compareAndSet(min, queueDelay))
+                break;
+        }
+
+        return queueDelay <= (overloaded ? target : interval);
+    }
+
+    /**
+     * Mark a request admitted by {@link LoadShedder#admit(long)} as handled
+     */
+    public void release() {
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * Count a connection or request that was turned away without asking {@link LoadShedder#admit(long)}
+     */
+    public void countShed() {
+        shed.increment();
+    }
+
+    /**
+     * Get the number of requests being handled right now
+     * @return The number of admitted requests that have not been released
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * Get the number of connections and requests that were turned away
+     * @return The number of shed connections and requests
+     */
+    public long getShedCount() {
+        return shed.sum();
+    }
+
+    /**
+     * Whether the queueing delay stayed above the target for the whole last interval
+     * @return Whether requests are currently shed once they waited longer than the target
+     */
+    public boolean isOverloaded() {
+        return overloaded;
+    }
+
+    /**
+     * Get the complete <code>503 Service Unavailable</code> response sent to clients that are turned away. It closes
+     * the connection and has no body
+     * @return The encoded response. This must not be modified
+     */
+    public byte[] getRejection() {
+        return rejection;
+    }
+
+    /**
+     * Change the <code>Retry-After</code> header of {@link LoadShedder#getRejection()}
+     * @param retryAfter The number of seconds in the <code>Retry-After</code> header
+     */
+    public void setRetryAfter(int retryAfter) {
+        rejection = ("HTTP/1.1 503 Service Unavailable\r\n" +
+                "Retry-After: " + retryAfter + "\r\n" +
+                "Content-Length: 0\r\n" +
+                "Connection: close\r\n" +
+                "\r\n").getBytes(ASCII);
+    }
+}
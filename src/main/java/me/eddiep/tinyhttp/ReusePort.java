@@ -0,0 +1,58 @@
+package me.eddiep.tinyhttp;
+
+import java.io.IOException;
+import java.net.SocketOption;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ServerSocketChannel;
+
+/**
+ * Access to SO_REUSEPORT. This version is used on JVMs older than Java 21. The option was only added to
+ * {@link java.net.StandardSocketOptions} in Java 9, so it is looked up when this class is loaded and is unsupported on
+ * Java 8. The Java 21 version lives in <code>src/main/java21</code> and is packaged under <code>META-INF/versions/21</code>
+ */
+final class ReusePort {
+    private static final SocketOption<Boolean> SO_REUSEPORT = findOption();
+
+    private ReusePort() { }
+
+    /**
+     * Whether or not several sockets can listen on the same port and have the kernel balance connections between them.
+     * Other systems accept SO_REUSEPORT too, but only Linux spreads connections over the sockets
+     * @return Whether this is Linux and the JVM knows SO_REUSEPORT
+     */
+    static boolean isSupported() {
+        return SO_REUSEPORT != null && System.getProperty("os.name", "").startsWith("Linux");
+    }
+
+    /**
+     * Enable SO_REUSEPORT on a socket before it is bound
+     * @param channel The socket to enable SO_REUSEPORT on
+     * @throws IOException If the option could not be set
+     * @throws UnsupportedOperationException If this JVM does not know SO_REUSEPORT
+     */
+    static void enable(ServerSocketChannel channel) throws IOException {
+        if (SO_REUSEPORT == null)
+            throw new UnsupportedOperationException("SO_REUSEPORT requires Java 9 or newer!");
+        channel.setOption(SO_REUSEPORT, true);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static SocketOption<Boolean> findOption() {
+        try {
+            SocketOption<Boolean> option = (SocketOption<Boolean>) StandardSocketOptions.class.getField("SO_REUSEPORT").get(null);
+            ServerSocketChannel channel = ServerSocketChannel.open();
+            try {
+                //The option is only listed when the operating system supports it
+                return channel.supportedOptions().contains(option) ? option : null;
+            } finally {
+                channel.close();
+            }
+        } catch (NoSuchFieldException e) {
+            return null;
+        } catch (IllegalAccessException e) {
+            return null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package me.eddiep.tinyhttp;
+
+/**
+ * The way a {@link TinyHttpServer} handles connections
+ *
+ * @see TinyHttpServer#setServerMode(ServerMode)
+ */
+public enum ServerMode {
+    /**
+     * Every connection is read and written with blocking I/O by its own thread from {@link TinyHttpServer#getWorkerPool()},
+     * see {@link TinyHttpServer#isThreaded()}
+     */
+    THREAD_PER_CONNECTION,
+    /**
+     * Connections are read and written with non-blocking I/O by a small number of event loop threads. Requests are
+     * handled by {@link TinyHttpServer#getWorkerPool()}, so handlers may still block. <br></br>
+     * In this mode the enclosed content of a request is read into memory before the request is handled, up to
+     * {@link TinyHttpServer#getMaxBufferedContentLength()} bytes
+     */
+    EVENT_LOOP
+}
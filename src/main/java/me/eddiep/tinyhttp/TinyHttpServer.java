@@ -4,21 +4,39 @@ import me.eddiep.tinyhttp.annotations.DeleteHandler;
 import me.eddiep.tinyhttp.annotations.GetHandler;
 import me.eddiep.tinyhttp.annotations.PostHandler;
 import me.eddiep.tinyhttp.annotations.PutHandler;
+import me.eddiep.tinyhttp.annotations.Timeout;
+import me.eddiep.tinyhttp.metrics.RouteMetrics;
+import me.eddiep.tinyhttp.metrics.ServerMetrics;
 import me.eddiep.tinyhttp.net.*;
+import me.eddiep.tinyhttp.net.http.FileCache;
 import me.eddiep.tinyhttp.net.http.HttpMethod;
 import me.eddiep.tinyhttp.net.http.MimeTypes;
 import me.eddiep.tinyhttp.net.http.StatusCode;
+import me.eddiep.tinyhttp.routing.AsyncRequestHandler;
+import me.eddiep.tinyhttp.routing.HandlerFactory;
+import me.eddiep.tinyhttp.routing.RequestHandler;
+import me.eddiep.tinyhttp.routing.RouteDispatcher;
 
 import java.io.*;
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.net.ServerSocket;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.nio.file.AccessDeniedException;
 import java.security.InvalidParameterException;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
 
 /**
  * A tinyhttp server. This class can be extended and the start and stop behavior can be modified
@@ -27,15 +45,56 @@ import java.util.*;
 public class TinyHttpServer {
     private boolean serveFileSystem = true;
     private int bufferDataLength = 1024;
+    private long zeroCopyThreshold = 16 * 1024;
+    private int chunkSize = 8 * 1024;
+    private FileCache fileCache = new FileCache();
     private String root = "";
-    private ArrayList<Client> connectedClients = new ArrayList<Client>();
+    private final ConnectionRegistry connections = new ConnectionRegistry();
+    private int idleTimeout = 60000;
+    private final ServerMetrics metrics = new ServerMetrics(this);
+    private boolean jmxEnabled;
+    private String metricsPath;
     private int port;
     private int timeout = 5000;
-    private boolean running;
-    private ServerSocket server;
+    private volatile boolean running;
+    private volatile boolean draining;
+    private ServerSocketChannel[] listeners;
     private boolean threaded = true;
+    private boolean keepAlive = true;
+    private int keepAliveTimeout = 5000;
+    private int maxRequestsPerConnection = 100;
+    private boolean pipelining = true;
+    private int maxPipelinedRequests = 16;
+    private ExecutorService handlerExecutor;
+    private ScheduledThreadPoolExecutor timeouts;
+    private long asyncTimeout = 30000;
+    private ServerMode serverMode = ServerMode.THREAD_PER_CONNECTION;
+    private int eventLoopThreads = Runtime.getRuntime().availableProcessors();
+    private int maxBufferedContentLength = 8 * 1024 * 1024;
+    private int maxHeaderSize = 64 * 1024;
+    private int maxHeaderCount = 100;
+    private long maxMultipartSize = 64 * 1024 * 1024;
+    private int maxMultipartParts = 100;
+    private EventLoopEngine engine;
+    private int workerCoreThreads = 8;
+    private int workerMaxThreads = 256;
+    private int workerQueueSize = 512;
+    private ExecutorService workerExecutor;
+    private WorkerPool workerPool;
+    private WorkerPool[] workerPools;
+    private int acceptorThreads = 1;
+    private boolean reusePort = true;
+    private boolean workerPoolPerAcceptor;
+    private int retryAfter = 1;
+    private int acceptBacklog = 1024;
+    private int maxConnections;
+    private int maxInFlightRequests;
+    private int queueDelayTarget;
+    private int queueDelayInterval = 100;
+    private LoadShedder loadShedder;
+    private ExecutionMode executionMode = ExecutionMode.PLATFORM_THREADS;
     private TinyListener listener;
-    private ArrayList<RequestHolder> toInvoke;
+    private RouteDispatcher<RequestHolder> dispatcher;
 
     /**
      * Create a new instance of a TinyHttpServer with the default http port
@@ -152,6 +211,56 @@ public class TinyHttpServer {
         this.bufferDataLength = length;
     }
 
+    /**
+     * Get the {@link me.eddiep.tinyhttp.net.http.FileCache} used when serving the file system. The cache can be tuned and
+     * monitored through this object
+     * @return The {@link me.eddiep.tinyhttp.net.http.FileCache} of this server
+     */
+    public final FileCache getFileCache() {
+        return fileCache;
+    }
+
+    /**
+     * Get the size, in bytes, at which served files stop being read into memory. Files this size or larger are sent
+     * straight from the file system to the client with {@link java.nio.channels.FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)},
+     * so their content never has to fit in the heap
+     * @return The zero-copy threshold in bytes
+     */
+    public final long getZeroCopyThreshold() {
+        return zeroCopyThreshold;
+    }
+
+    /**
+     * Set the size, in bytes, at which served files stop being read into memory. Files this size or larger are sent
+     * straight from the file system to the client with {@link java.nio.channels.FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)},
+     * so their content never has to fit in the heap
+     * @param zeroCopyThreshold The zero-copy threshold in bytes
+     */
+    public final void setZeroCopyThreshold(long zeroCopyThreshold) {
+        this.zeroCopyThreshold = zeroCopyThreshold;
+    }
+
+    /**
+     * Get the default size, in bytes, of each chunk sent by a {@link me.eddiep.tinyhttp.net.StreamResponse} that has no content length
+     * @return The chunk size in bytes
+     */
+    public final int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Set the default size, in bytes, of each chunk sent by a {@link me.eddiep.tinyhttp.net.StreamResponse} that has no content length.
+     * Larger chunks mean less framing overhead, smaller chunks reach the client sooner
+     * @param chunkSize The chunk size in bytes
+     * @throws java.lang.IllegalArgumentException If the chunk size is not greater than 0
+     */
+    public final void setChunkSize(int chunkSize) {
+        if (chunkSize <= 0)
+            throw new IllegalArgumentException("The chunk size must be greater than 0!");
+
+        this.chunkSize = chunkSize;
+    }
+
     /**
      * The port this http server is listening on
      * @return The port number
@@ -209,18 +318,670 @@ public class TinyHttpServer {
     }
 
     /**
-     * Get an unmodifiable list of currently connected clients.
+     * Set the size of the {@link WorkerPool} this tinyhttp server handles connections and requests with. This must be set
+     * before the server is started <br></br>
+     * New threads are started up to maxThreads before any work is queued, and threads over coreThreads stop after a
+     * minute without work. When every thread is busy, new work waits in a queue of queueSize entries. When the queue is
+     * full too, the client is answered with {@link me.eddiep.tinyhttp.net.http.StatusCode#ServiceUnavailable}
+     * @param coreThreads The number of threads kept alive even when idle
+     * @param maxThreads The largest number of threads the pool will create
+     * @param queueSize The number of connections or requests that may wait for a thread
+     */
+    public final void setWorkerPoolSize(int coreThreads, int maxThreads, int queueSize) {
+        if (running)
+            throw new IllegalStateException("The worker pool can't be changed while the server is running!");
+        if (coreThreads < 0 || maxThreads < 1 || maxThreads < coreThreads || queueSize < 1)
+            throw new IllegalArgumentException("Invalid worker pool size!");
+
+        this.workerCoreThreads = coreThreads;
+        this.workerMaxThreads = maxThreads;
+        this.workerQueueSize = queueSize;
+    }
+
+    /**
+     * Use an existing {@link java.util.concurrent.ExecutorService} to handle connections and requests instead of the
+     * pool created from {@link TinyHttpServer#setWorkerPoolSize(int, int, int)}. The executor should be bounded and throw a
+     * {@link java.util.concurrent.RejectedExecutionException} when it is saturated. It is not shut down when the server stops <br></br>
+     * This must be set before the server is started
+     * @param executor The executor to use, or null to go back to the default pool
+     */
+    public final void setWorkerExecutor(ExecutorService executor) {
+        if (running)
+            throw new IllegalStateException("The worker pool can't be changed while the server is running!");
+        this.workerExecutor = executor;
+    }
+
+    /**
+     * Get the {@link ExecutionMode} this tinyhttp server runs connections and handlers with
+     * @return The {@link ExecutionMode} of this server
+     */
+    public final ExecutionMode getExecutionMode() {
+        return executionMode;
+    }
+
+    /**
+     * Set the {@link ExecutionMode} this tinyhttp server runs connections and handlers with. This must be set before the
+     * server is started <br></br>
+     * {@link ExecutionMode#VIRTUAL_THREADS} is only available on Java 21 and newer, older JVMs fall back to
+     * {@link ExecutionMode#PLATFORM_THREADS}. An executor set with {@link TinyHttpServer#setWorkerExecutor(java.util.concurrent.ExecutorService)}
+     * is always used over virtual threads
+     *
+     * @see TinyHttpServer#isUsingVirtualThreads()
+     * @param executionMode The {@link ExecutionMode} to use
+     */
+    public final void setExecutionMode(ExecutionMode executionMode) {
+        if (running)
+            throw new IllegalStateException("The execution mode can't be changed while the server is running!");
+        this.executionMode = executionMode;
+    }
+
+    /**
+     * Whether or not this tinyhttp server is running connections and handlers on virtual threads. This is only true if
+     * {@link ExecutionMode#VIRTUAL_THREADS} was requested and this JVM supports virtual threads
+     * @return Whether or not virtual threads are in use
+     */
+    public final boolean isUsingVirtualThreads() {
+        return executionMode == ExecutionMode.VIRTUAL_THREADS && VirtualThreads.isSupported();
+    }
+
+    /**
+     * Get the {@link WorkerPool} this tinyhttp server handles connections and requests with. This is only available while
+     * the server is running. The pool can be used to monitor how saturated the server is
+     *
+     * @see WorkerPool#getSaturation()
+     * @return The {@link WorkerPool} of this server
+     */
+    public final WorkerPool getWorkerPool() {
+        return workerPool;
+    }
+
+    /**
+     * Get every {@link WorkerPool} this tinyhttp server handles connections and requests with. There is one pool for every
+     * acceptor thread when {@link TinyHttpServer#isWorkerPoolPerAcceptor()} is set, otherwise this only holds
+     * {@link TinyHttpServer#getWorkerPool()}. This is only available while the server is running
+     * @return An unmodifiable list of the worker pools of this server
+     */
+    public final List<WorkerPool> getWorkerPools() {
+        if (workerPools == null)
+            return Collections.emptyList();
+        return Collections.unmodifiableList(Arrays.asList(workerPools));
+    }
+
+    /**
+     * Get the number of threads accepting new connections
+     * @return The number of acceptor threads
+     */
+    public final int getAcceptorThreads() {
+        return acceptorThreads;
+    }
+
+    /**
+     * Set the number of threads accepting new connections. A single acceptor thread becomes the bottleneck when many
+     * connections are opened every second. <br></br>
+     * When SO_REUSEPORT is enabled and supported, every acceptor thread listens on its own socket bound to the same port,
+     * and the kernel spreads new connections over them. Otherwise the acceptor threads share one socket. This must be set
+     * before the server is started
+     *
+     * @see TinyHttpServer#setReusePort(boolean)
+     * @param acceptorThreads The number of acceptor threads
+     */
+    public final void setAcceptorThreads(int acceptorThreads) {
+        if (running)
+            throw new IllegalStateException("The acceptor threads can't be changed while the server is running!");
+        if (acceptorThreads < 1)
+            throw new IllegalArgumentException("There must be at least one acceptor thread!");
+        this.acceptorThreads = acceptorThreads;
+    }
+
+    /**
+     * Get whether every acceptor thread listens on its own socket with SO_REUSEPORT, when the JVM and the operating system
+     * support it
+     * @return Whether SO_REUSEPORT is used
+     */
+    public final boolean isReusePort() {
+        return reusePort;
+    }
+
+    /**
+     * Set whether every acceptor thread listens on its own socket with SO_REUSEPORT. This is only used with more than one
+     * acceptor thread, and only on Linux with Java 9 or newer, where the kernel balances connections between the sockets.
+     * Note that any process of the same user can then bind the port too. This must be set before the server is started
+     * @param reusePort Whether SO_REUSEPORT is used
+     */
+    public final void setReusePort(boolean reusePort) {
+        if (running)
+            throw new IllegalStateException("SO_REUSEPORT can't be changed while the server is running!");
+        this.reusePort = reusePort;
+    }
+
+    /**
+     * Get whether every acceptor thread has its own {@link WorkerPool}
+     * @return Whether there is a worker pool for every acceptor thread
+     */
+    public final boolean isWorkerPoolPerAcceptor() {
+        return workerPoolPerAcceptor;
+    }
+
+    /**
+     * Set whether every acceptor thread has its own {@link WorkerPool}, sized as set with
+     * {@link TinyHttpServer#setWorkerPoolSize(int, int, int)}. Connections then never contend on the queue of another
+     * acceptor's pool. This is ignored when a worker executor is set or virtual threads are used. This must be set before
+     * the server is started
+     * @param workerPoolPerAcceptor Whether there is a worker pool for every acceptor thread
+     */
+    public final void setWorkerPoolPerAcceptor(boolean workerPoolPerAcceptor) {
+        if (running)
+            throw new IllegalStateException("The worker pool can't be changed while the server is running!");
+        this.workerPoolPerAcceptor = workerPoolPerAcceptor;
+    }
+
+    /**
+     * Get the number of seconds clients are told to wait in the <code>Retry-After</code> header when the server is too busy
+     * to handle them
+     * @return The number of seconds in the <code>Retry-After</code> header
+     */
+    public final int getRetryAfter() {
+        return retryAfter;
+    }
+
+    /**
+     * Set the number of seconds clients are told to wait in the <code>Retry-After</code> header when the server is too busy
+     * to handle them
+     * @param retryAfter The number of seconds in the <code>Retry-After</code> header
+     */
+    public final void setRetryAfter(int retryAfter) {
+        this.retryAfter = retryAfter;
+        if (loadShedder != null)
+            loadShedder.setRetryAfter(retryAfter);
+    }
+
+    /**
+     * Get the number of connections the operating system may queue before they are accepted
+     * @return The accept backlog
+     */
+    public final int getAcceptBacklog() {
+        return acceptBacklog;
+    }
+
+    /**
+     * Set the number of connections the operating system may queue before they are accepted. The operating system may
+     * cap this, on Linux to <code>net.core.somaxconn</code>. This must be set before the server is started
+     * @param acceptBacklog The accept backlog
+     */
+    public final void setAcceptBacklog(int acceptBacklog) {
+        if (running)
+            throw new IllegalStateException("The accept backlog can't be changed while the server is running!");
+        if (acceptBacklog < 1)
+            throw new IllegalArgumentException("The accept backlog must be at least 1!");
+        this.acceptBacklog = acceptBacklog;
+    }
+
+    /**
+     * Get the largest number of connections this tinyhttp server keeps open at once
+     * @return The connection limit, or 0 if there is no limit
+     */
+    public final int getMaxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * Set the largest number of connections this tinyhttp server keeps open at once. A connection accepted while the
+     * limit is reached is answered with {@link me.eddiep.tinyhttp.net.http.StatusCode#ServiceUnavailable} right away and
+     * closed, without reading its request
+     * @param maxConnections The connection limit, or 0 for no limit
+     */
+    public final void setMaxConnections(int maxConnections) {
+        if (maxConnections < 0)
+            throw new IllegalArgumentException("The connection limit can't be negative!");
+        this.maxConnections = maxConnections;
+    }
+
+    /**
+     * Get the largest number of requests this tinyhttp server handles at once
+     * @return The request limit, or 0 if there is no limit
+     */
+    public final int getMaxInFlightRequests() {
+        return maxInFlightRequests;
+    }
+
+    /**
+     * Set the largest number of requests this tinyhttp server handles at once. A request over the limit is answered with
+     * {@link me.eddiep.tinyhttp.net.http.StatusCode#ServiceUnavailable} and its connection is closed. This must be set
+     * before the server is started
+     *
+     * @see LoadShedder
+     * @param maxInFlightRequests The request limit, or 0 for no limit
+     */
+    public final void setMaxInFlightRequests(int maxInFlightRequests) {
+        if (running)
+            throw new IllegalStateException("The request limit can't be changed while the server is running!");
+        if (maxInFlightRequests < 0)
+            throw new IllegalArgumentException("The request limit can't be negative!");
+        this.maxInFlightRequests = maxInFlightRequests;
+    }
+
+    /**
+     * Get the time, in milliseconds, requests should wait for a thread at most while the server is overloaded
+     * @return The queueing delay target, or 0 if requests are never shed because they waited too long
+     */
+    public final int getQueueDelayTarget() {
+        return queueDelayTarget;
+    }
+
+    /**
+     * Set the time, in milliseconds, requests should wait for a thread at most while the server is overloaded. When every
+     * request waited longer than this during a whole {@link TinyHttpServer#getQueueDelayInterval()}, requests that waited
+     * longer are answered with {@link me.eddiep.tinyhttp.net.http.StatusCode#ServiceUnavailable} instead of being handled,
+     * until the queue drains. This must be set before the server is started
+     *
+     * @see LoadShedder
+     * @param queueDelayTarget The queueing delay target, for example 50, or 0 to never shed requests because they waited too long
+     */
+    public final void setQueueDelayTarget(int queueDelayTarget) {
+        if (running)
+            throw new IllegalStateException("The queueing delay target can't be changed while the server is running!");
+        if (queueDelayTarget < 0)
+            throw new IllegalArgumentException("The queueing delay target can't be negative!");
+        this.queueDelayTarget = queueDelayTarget;
+    }
+
+    /**
+     * Get the interval, in milliseconds, the queueing delay is watched over
+     * @return The queueing delay interval
+     */
+    public final int getQueueDelayInterval() {
+        return queueDelayInterval;
+    }
+
+    /**
+     * Set the interval, in milliseconds, the queueing delay is watched over. While the server is not overloaded, requests
+     * may wait up to this long before they are shed. This must be set before the server is started
+     *
+     * @see TinyHttpServer#setQueueDelayTarget(int)
+     * @param queueDelayInterval The queueing delay interval
+     */
+    public final void setQueueDelayInterval(int queueDelayInterval) {
+        if (running)
+            throw new IllegalStateException("The queueing delay interval can't be changed while the server is running!");
+        if (queueDelayInterval < 1)
+            throw new IllegalArgumentException("The queueing delay interval must be at least 1 millisecond!");
+        this.queueDelayInterval = queueDelayInterval;
+    }
+
+    /**
+     * Get the {@link LoadShedder} that decides which requests this tinyhttp server turns away. This is only available
+     * while the server is running
+     * @return The {@link LoadShedder} of this server
+     */
+    public final LoadShedder getLoadShedder() {
+        return loadShedder;
+    }
+
+    /**
+     * Get the {@link ServerMode} this tinyhttp server uses to handle connections
+     * @return The {@link ServerMode} of this server
+     */
+    public final ServerMode getServerMode() {
+        return serverMode;
+    }
+
+    /**
+     * Set the {@link ServerMode} this tinyhttp server uses to handle connections. This must be set before the server is started <br></br>
+     * In {@link ServerMode#EVENT_LOOP} mode, {@link TinyHttpServer#isThreaded()} is ignored and requests are always handled
+     * by {@link TinyHttpServer#getWorkerPool()}
+     * @param serverMode The {@link ServerMode} to use
+     */
+    public final void setServerMode(ServerMode serverMode) {
+        if (running)
+            throw new IllegalStateException("The server mode can't be changed while the server is running!");
+        this.serverMode = serverMode;
+    }
+
+    /**
+     * Get the number of event loop threads used in {@link ServerMode#EVENT_LOOP} mode. By default this is the number of
+     * available processors
+     * @return The number of event loop threads
+     */
+    public final int getEventLoopThreads() {
+        return eventLoopThreads;
+    }
+
+    /**
+     * Set the number of event loop threads used in {@link ServerMode#EVENT_LOOP} mode. This must be set before the server is started
+     * @param eventLoopThreads The number of event loop threads
+     */
+    public final void setEventLoopThreads(int eventLoopThreads) {
+        if (eventLoopThreads < 1)
+            throw new IllegalArgumentException("At least one event loop thread is required!");
+        this.eventLoopThreads = eventLoopThreads;
+    }
+
+    /**
+     * Get the largest enclosed content, in bytes, a request may have in {@link ServerMode#EVENT_LOOP} mode. The content is
+     * read into memory before the request is handled, larger requests are answered with
+     * {@link me.eddiep.tinyhttp.net.http.StatusCode#RequestEntityTooLarge}
+     * @return The largest enclosed content allowed, in bytes
+     */
+    public final int getMaxBufferedContentLength() {
+        return maxBufferedContentLength;
+    }
+
+    /**
+     * Set the largest enclosed content, in bytes, a request may have in {@link ServerMode#EVENT_LOOP} mode. The content is
+     * read into memory before the request is handled, larger requests are answered with
+     * {@link me.eddiep.tinyhttp.net.http.StatusCode#RequestEntityTooLarge}
+     * @param maxBufferedContentLength The largest enclosed content allowed, in bytes
+     */
+    public final void setMaxBufferedContentLength(int maxBufferedContentLength) {
+        this.maxBufferedContentLength = maxBufferedContentLength;
+    }
+
+    /**
+     * Get the most bytes the request line and headers of a request may take up together. A request line that is too long
+     * is answered with {@link me.eddiep.tinyhttp.net.http.StatusCode#RequestURITooLong}, headers that are too large with
+     * {@link me.eddiep.tinyhttp.net.http.StatusCode#RequestHeaderFieldsTooLarge}
+     * @return The largest request head allowed, in bytes
+     */
+    public final int getMaxHeaderSize() {
+        return maxHeaderSize;
+    }
+
+    /**
+     * Set the most bytes the request line and headers of a request may take up together. A request line that is too long
+     * is answered with {@link me.eddiep.tinyhttp.net.http.StatusCode#RequestURITooLong}, headers that are too large with
+     * {@link me.eddiep.tinyhttp.net.http.StatusCode#RequestHeaderFieldsTooLarge}
+     * @param maxHeaderSize The largest request head allowed, in bytes
+     * @throws java.lang.IllegalArgumentException If the size is not greater than 0
+     */
+    public final void setMaxHeaderSize(int maxHeaderSize) {
+        if (maxHeaderSize <= 0)
+            throw new IllegalArgumentException("The max header size must be greater than 0!");
+
+        this.maxHeaderSize = maxHeaderSize;
+    }
+
+    /**
+     * Get the most headers a request may have. Requests with more headers are answered with
+     * {@link me.eddiep.tinyhttp.net.http.StatusCode#RequestHeaderFieldsTooLarge}
+     * @return The most headers allowed
+     */
+    public final int getMaxHeaderCount() {
+        return maxHeaderCount;
+    }
+
+    /**
+     * Set the most headers a request may have. Requests with more headers are answered with
+     * {@link me.eddiep.tinyhttp.net.http.StatusCode#RequestHeaderFieldsTooLarge}
+     * @param maxHeaderCount The most headers allowed
+     * @throws java.lang.IllegalArgumentException If the count is not greater than 0
+     */
+    public final void setMaxHeaderCount(int maxHeaderCount) {
+        if (maxHeaderCount <= 0)
+            throw new IllegalArgumentException("The max header count must be greater than 0!");
+
+        this.maxHeaderCount = maxHeaderCount;
+    }
+
+    /**
+     * Get the largest size, in bytes, the parts of a <code>multipart/form-data</code> request may have together. Every
+     * {@link me.eddiep.tinyhttp.net.http.MultipartReader} starts with this limit
+     * @return The largest total size of the parts, or -1 if there is no limit
+     */
+    public final long getMaxMultipartSize() {
+        return maxMultipartSize;
+    }
+
+    /**
+     * Set the largest size, in bytes, the parts of a <code>multipart/form-data</code> request may have together. Larger
+     * content makes the {@link me.eddiep.tinyhttp.net.http.MultipartReader} throw a
+     * {@link me.eddiep.tinyhttp.net.http.MultipartException} with
+     * {@link me.eddiep.tinyhttp.net.http.StatusCode#RequestEntityTooLarge}
+     * @param maxMultipartSize The largest total size of the parts, or -1 for no limit
+     */
+    public final void setMaxMultipartSize(long maxMultipartSize) {
+        this.maxMultipartSize = maxMultipartSize;
+    }
+
+    /**
+     * Get the most parts a <code>multipart/form-data</code> request may have. Every
+     * {@link me.eddiep.tinyhttp.net.http.MultipartReader} starts with this limit
+     * @return The most parts allowed, or -1 if there is no limit
+     */
+    public final int getMaxMultipartParts() {
+        return maxMultipartParts;
+    }
+
+    /**
+     * Set the most parts a <code>multipart/form-data</code> request may have. More parts make the
+     * {@link me.eddiep.tinyhttp.net.http.MultipartReader} throw a {@link me.eddiep.tinyhttp.net.http.MultipartException}
+     * with {@link me.eddiep.tinyhttp.net.http.StatusCode#RequestEntityTooLarge}
+     * @param maxMultipartParts The most parts allowed, or -1 for no limit
+     */
+    public final void setMaxMultipartParts(int maxMultipartParts) {
+        this.maxMultipartParts = maxMultipartParts;
+    }
+
+    /**
+     * Whether or not this tinyhttp server keeps connections open after a response so the client can send more
+     * requests on the same connection (HTTP/1.1 persistent connections). <br></br>
+     * Connections are only kept alive when the server is threaded, see {@link TinyHttpServer#isThreaded()}
+     * @return Whether or not keep-alive is enabled
+     */
+    public final boolean isKeepAliveEnabled() {
+        return keepAlive;
+    }
+
+    /**
+     * Set whether or not this tinyhttp server keeps connections open after a response so the client can send more
+     * requests on the same connection (HTTP/1.1 persistent connections). <br></br>
+     * Connections are only kept alive when the server is threaded, see {@link TinyHttpServer#isThreaded()}
+     * @param keepAlive Whether or not keep-alive is enabled
+     */
+    public final void setKeepAliveEnabled(boolean keepAlive) {
+        this.keepAlive = keepAlive;
+    }
+
+    /**
+     * Get how long, in milliseconds, a persistent connection may sit idle between requests before it is closed
+     * @return The keep-alive idle timeout in milliseconds
+     */
+    public final int getKeepAliveTimeout() {
+        return keepAliveTimeout;
+    }
+
+    /**
+     * Set how long, in milliseconds, a persistent connection may sit idle between requests before it is closed
+     * @param keepAliveTimeout The keep-alive idle timeout in milliseconds
+     */
+    public final void setKeepAliveTimeout(int keepAliveTimeout) {
+        this.keepAliveTimeout = keepAliveTimeout;
+    }
+
+    /**
+     * Get the maximum number of requests a client may send on a single connection before it is closed.
+     * A value of 0 means there is no limit
+     * @return The maximum number of requests per connection
+     */
+    public final int getMaxRequestsPerConnection() {
+        return maxRequestsPerConnection;
+    }
+
+    /**
+     * Set the maximum number of requests a client may send on a single connection before it is closed.
+     * A value of 0 means there is no limit
+     * @param maxRequestsPerConnection The maximum number of requests per connection
+     */
+    public final void setMaxRequestsPerConnection(int maxRequestsPerConnection) {
+        this.maxRequestsPerConnection = maxRequestsPerConnection;
+    }
+
+    /**
+     * Whether or not requests pipelined on a persistent connection are handled at the same time. When enabled, requests
+     * without any enclosed content are read ahead of the request currently being handled and handed to
+     * {@link TinyHttpServer#getHandlerExecutor()}. Responses are always written in the order the requests were received
+     * @return Whether or not pipelined requests are handled at the same time
+     */
+    public final boolean isPipeliningEnabled() {
+        return pipelining;
+    }
+
+    /**
+     * Set whether or not requests pipelined on a persistent connection are handled at the same time. When enabled, requests
+     * without any enclosed content are read ahead of the request currently being handled and handed to
+     * {@link TinyHttpServer#getHandlerExecutor()}. Responses are always written in the order the requests were received
+     * @param pipelining Whether or not pipelined requests are handled at the same time
+     */
+    public final void setPipeliningEnabled(boolean pipelining) {
+        this.pipelining = pipelining;
+    }
+
+    /**
+     * Get the maximum number of requests a single connection may have waiting for a response before the server stops
+     * reading ahead on that connection
+     * @return The maximum number of pipelined requests per connection
+     */
+    public final int getMaxPipelinedRequests() {
+        return maxPipelinedRequests;
+    }
+
+    /**
+     * Set the maximum number of requests a single connection may have waiting for a response before the server stops
+     * reading ahead on that connection
+     * @param maxPipelinedRequests The maximum number of pipelined requests per connection
+     */
+    public final void setMaxPipelinedRequests(int maxPipelinedRequests) {
+        if (maxPipelinedRequests < 1)
+            throw new IllegalArgumentException("At least one request must be allowed per connection!");
+        this.maxPipelinedRequests = maxPipelinedRequests;
+    }
+
+    /**
+     * Get the {@link java.util.concurrent.ExecutorService} used to handle pipelined requests and to write the responses of
+     * asynchronous handlers. Each connection has at most {@link TinyHttpServer#getMaxPipelinedRequests()} requests in
+     * this executor at once. It is bounded by the same sizes as the worker pool, see
+     * {@link TinyHttpServer#setWorkerPoolSize(int, int, int)}, and pipelined requests it has no room for are answered
+     * with {@link me.eddiep.tinyhttp.net.http.StatusCode#ServiceUnavailable}. This is only available while the server is running
+     * @return The {@link java.util.concurrent.ExecutorService} handling pipelined requests
+     */
+    public final ExecutorService getHandlerExecutor() {
+        return handlerExecutor;
+    }
+
+    /**
+     * Get how long, in milliseconds, handlers returning a {@link java.util.concurrent.CompletionStage} may take to complete
+     * it, unless they set their own {@link me.eddiep.tinyhttp.annotations.Timeout}
+     * @return The default timeout in milliseconds, or 0 if handlers never time out
+     */
+    public final long getAsyncTimeout() {
+        return asyncTimeout;
+    }
+
+    /**
+     * Set how long, in milliseconds, handlers returning a {@link java.util.concurrent.CompletionStage} may take to complete
+     * it, unless they set their own {@link me.eddiep.tinyhttp.annotations.Timeout}. Requests that take longer are answered
+     * with {@link me.eddiep.tinyhttp.net.http.StatusCode#ServiceUnavailable} and their connection is closed
+     * @param asyncTimeout The default timeout in milliseconds, or 0 to never time out
+     */
+    public final void setAsyncTimeout(long asyncTimeout) {
+        if (asyncTimeout < 0)
+            throw new IllegalArgumentException("The async timeout can't be negative!");
+        this.asyncTimeout = asyncTimeout;
+    }
+
+    /**
+     * Get an unmodifiable list of currently connected clients. <br></br>
+     * The list is a snapshot, it does not change when clients connect or disconnect afterwards. Use
+     * {@link me.eddiep.tinyhttp.net.Client#getBytesRead()}, {@link me.eddiep.tinyhttp.net.Client#getBytesWritten()},
+     * {@link me.eddiep.tinyhttp.net.Client#getRequestCount()} and {@link me.eddiep.tinyhttp.net.Client#getLastActivity()}
+     * to inspect a connection
      *
-     * @see Collections#unmodifiableList(java.util.List)
+     * @see me.eddiep.tinyhttp.net.ConnectionRegistry#snapshot()
      * @return An unmodifiable list of currently connected clients
      */
     public final List<Client> getConnectedClients() {
-        return Collections.unmodifiableList(connectedClients);
+        return connections.snapshot();
+    }
+
+    /**
+     * Get the number of currently connected clients. This is cheaper than taking the size of {@link TinyHttpServer#getConnectedClients()}
+     * @return The number of connected clients
+     */
+    public final int getConnectionCount() {
+        return connections.size();
+    }
+
+    /**
+     * Get how long, in milliseconds, a connection may go without reading or writing anything before it is closed
+     * @return The idle timeout in milliseconds, or 0 if idle connections are never closed
+     */
+    public final int getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    /**
+     * Set how long, in milliseconds, a connection may go without reading or writing anything before it is closed. <br></br>
+     * Connections whose handler is still busy are left alone, but a response the client stopped reading counts as idle.
+     * This catches what {@link TinyHttpServer#getTimeout()} can't, since socket timeouts only apply to reads. In
+     * {@link me.eddiep.tinyhttp.ServerMode#EVENT_LOOP} the event loops close idle connections themselves
+     * @param idleTimeout The idle timeout in milliseconds, or 0 to never close idle connections
+     */
+    public final void setIdleTimeout(int idleTimeout) {
+        if (idleTimeout < 0)
+            throw new IllegalArgumentException("The idle timeout can't be negative!");
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * Get the request counters and latency histograms of this server
+     * @return The {@link me.eddiep.tinyhttp.metrics.ServerMetrics} of this server
+     */
+    public final ServerMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Get whether the metrics of this server are registered as MBeans while it is running
+     * @return Whether JMX is enabled
+     */
+    public final boolean isJmxEnabled() {
+        return jmxEnabled;
+    }
+
+    /**
+     * Set whether the metrics of this server are registered as MBeans with the platform {@link javax.management.MBeanServer}
+     * while it is running. The object names are in the {@link me.eddiep.tinyhttp.metrics.ServerMetrics#JMX_DOMAIN} domain
+     * and are named after the port. This must be set before the server is started
+     * @param jmxEnabled Whether JMX is enabled
+     */
+    public final void setJmxEnabled(boolean jmxEnabled) {
+        if (running)
+            throw new IllegalStateException("JMX can't be enabled or disabled while the server is running!");
+        this.jmxEnabled = jmxEnabled;
+    }
+
+    /**
+     * Get the path the metrics of this server are served from
+     * @return The path, or null if the metrics are not served
+     */
+    public final String getMetricsPath() {
+        return metricsPath;
+    }
+
+    /**
+     * Set the path the metrics of this server are served from, in the Prometheus text format. A GET request for this path
+     * is answered with the metrics before any handler is looked up. By default the metrics are not served
+     * @param metricsPath The path, for example <code>/metrics</code>, or null to stop serving the metrics
+     */
+    public final void setMetricsPath(String metricsPath) {
+        if (metricsPath != null && !metricsPath.startsWith("/"))
+            throw new IllegalArgumentException("The metrics path must start with a /!");
+        this.metricsPath = metricsPath;
     }
 
     /**
      * Start this tinyhttp server and listen for new clients. <br></br>
-     * This will block the calling thead until the server is stopped with {@link TinyHttpServer#stop()}
+     * This will block the calling thead until the server is stopped with {@link TinyHttpServer#stop()}. With more than one
+     * acceptor thread, the calling thread is one of them
      * @throws IOException If there was an error starting the server
      */
     public final void start() throws IOException {
@@ -229,29 +990,133 @@ public class TinyHttpServer {
 
         onStart();
 
-        if (toInvoke == null) {
+        if (dispatcher == null) {
             throw new IllegalStateException("super.onStart() was not invoked!");
         }
 
-        server = new ServerSocket(port);
+        //Accepting through a channel lets static files be sent with FileChannel.transferTo
+        final ServerSocketChannel[] channels = bind();
+        listeners = channels;
+        if (serverMode == ServerMode.EVENT_LOOP)
+            engine = new EventLoopEngine(this, eventLoopThreads);
+        else
+            connections.startReaper("tinyhttp-reaper");
         running = true;
+        if (jmxEnabled)
+            metrics.registerMBeans("" + port);
 
-        Socket connection;
-        while (running) {
-            if (server.isClosed())
+        Thread[] acceptors = new Thread[acceptorThreads - 1];
+        for (int i = 0; i < acceptors.length; i++) {
+            final int acceptor = i + 1;
+            acceptors[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    accept(channels[acceptor % channels.length], workerPools[acceptor % workerPools.length]);
+                }
+            }, "tinyhttp-acceptor-" + acceptor);
+            acceptors[i].start();
+        }
+
+        accept(channels[0], workerPools[0]);
+
+        for (Thread acceptor : acceptors) {
+            try {
+                acceptor.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
                 break;
+            }
+        }
+    }
+
+    /**
+     * Open the listening sockets. Every acceptor thread gets its own socket when SO_REUSEPORT can be used, otherwise they
+     * all share one
+     */
+    private ServerSocketChannel[] bind() throws IOException {
+        int count = acceptorThreads > 1 && reusePort && ReusePort.isSupported() ? acceptorThreads : 1;
+        ServerSocketChannel[] channels = new ServerSocketChannel[count];
+        try {
+            for (int i = 0; i < count; i++) {
+                channels[i] = ServerSocketChannel.open();
+                if (count > 1)
+                    ReusePort.enable(channels[i]);
+                channels[i].bind(new InetSocketAddress(port), acceptBacklog);
+            }
+        } catch (IOException e) {
+            for (ServerSocketChannel channel : channels) {
+                if (channel != null)
+                    channel.close();
+            }
+            throw e;
+        }
+        return channels;
+    }
+
+    private void accept(ServerSocketChannel channel, WorkerPool pool) {
+        EventLoopEngine engine = this.engine;
+        while (running) {
             try {
-                connection = server.accept();
-                connection.setSoTimeout(timeout);
-                Client client = new Client(connection, this);
-                connectedClients.add(client);
-                client.start();
+                SocketChannel connection = channel.accept();
+                if (maxConnections > 0 && connections.size() >= maxConnections) {
+                    rejectConnection(connection.socket());
+                    continue;
+                }
+
+                if (engine != null) {
+                    Client client = engine.createClient(connection, pool);
+                    connections.register(client);
+                    engine.register(client);
+                } else {
+                    Socket socket = connection.socket();
+                    socket.setSoTimeout(timeout);
+                    //A response head followed by a file is two writes, Nagle would hold the second one back for a delayed ACK
+                    socket.setTcpNoDelay(true);
+                    Client client = new Client(socket, this, pool);
+                    connections.register(client);
+                    client.start();
+                }
+            } catch (ClosedChannelException e) {
+                break;
             } catch (Throwable t) {
                 t.printStackTrace();
             }
         }
     }
 
+    private void closeListeners() throws IOException {
+        IOException error = null;
+        for (ServerSocketChannel channel : listeners) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                error = e;
+            }
+        }
+        if (error != null)
+            throw error;
+    }
+
+    /**
+     * Answer a connection over {@link TinyHttpServer#getMaxConnections()} and close it. The connection is fresh, so the
+     * rejection fits in its send buffer and this never blocks the accept loop
+     */
+    private void rejectConnection(Socket connection) {
+        loadShedder.countShed();
+        try {
+            OutputStream out = connection.getOutputStream();
+            out.write(loadShedder.getRejection());
+            out.flush();
+            connection.shutdownOutput();
+        } catch (IOException e) {
+            //The client is being turned away anyway
+        } finally {
+            try {
+                connection.close();
+            } catch (IOException ignored) { }
+        }
+    }
+
     /**
      * Stop this tinyhttp server.
      */
@@ -265,18 +1130,129 @@ public class TinyHttpServer {
         }
     }
 
+    /**
+     * Stop this tinyhttp server gracefully. New connections are refused right away, requests that are already being
+     * handled are left to finish and persistent connections are closed as soon as they are between requests. Whatever is
+     * still open when the drain timeout runs out is closed, then the server stops as with {@link TinyHttpServer#stop()} <br></br>
+     * This does not block, the connections are drained on their own thread
+     * @param drainTimeout How long to wait for open connections to finish
+     * @return A future that completes once the server has stopped
+     */
+    public final CompletableFuture<Void> stop(Duration drainTimeout) {
+        if (!running)
+            throw new IllegalStateException("This server is not running!");
+        if (drainTimeout.isNegative())
+            throw new IllegalArgumentException("The drain timeout can't be negative!");
+        if (draining)
+            throw new IllegalStateException("This server is already stopping!");
+
+        draining = true;
+        final long deadline = System.nanoTime() + drainTimeout.toNanos();
+        try {
+            closeListeners();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        final CompletableFuture<Void> stopped = new CompletableFuture<Void>();
+        Thread drain = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    connections.drain(deadline);
+                    if (running)
+                        stop();
+                    stopped.complete(null);
+                } catch (Throwable t) {
+                    stopped.completeExceptionally(t);
+                }
+            }
+        }, "tinyhttp-drain");
+        drain.start();
+        return stopped;
+    }
+
+    /**
+     * Get whether this tinyhttp server is draining its connections after {@link TinyHttpServer#stop(java.time.Duration)}.
+     * While draining, responses no longer keep their connection alive
+     * @return Whether the server is draining
+     */
+    public final boolean isDraining() {
+        return draining;
+    }
+
     protected void onStop() throws IOException {
-        server.close();
+        closeListeners();
+        connections.stopReaper();
+        metrics.unregisterMBeans();
+        if (engine != null) {
+            engine.shutdown();
+            engine = null;
+        }
+        handlerExecutor.shutdown();
+        timeouts.shutdownNow();
+        if (workerExecutor == null) {
+            for (WorkerPool pool : workerPools) {
+                pool.shutdown();
+            }
+        }
         running = false;
+        draining = false;
     }
 
+    /**
+     * Invoked when this server starts. This builds the route table for the {@link me.eddiep.tinyhttp.TinyListener} class,
+     * so overriding methods must invoke super.onStart() <br></br>
+     * Handler methods are registered sorted by name, so routes that share the same precedence in
+     * {@link me.eddiep.tinyhttp.routing.RouteDispatcher} resolve the same way every time the server starts
+     */
     protected void onStart() {
-        toInvoke = new ArrayList<RequestHolder>();
+        dispatcher = new RouteDispatcher<RequestHolder>();
+        boolean virtual = isUsingVirtualThreads();
+        if (executionMode == ExecutionMode.VIRTUAL_THREADS && !virtual) {
+            System.err.println("Virtual threads were requested, but this JVM is older than Java 21 or TinyHttp was built " +
+                    "without JDK 21. Falling back to platform threads");
+        }
+        if (virtual)
+            handlerExecutor = VirtualThreads.newExecutor("tinyhttp-pipeline-");
+        else
+            handlerExecutor = new WorkerPool(0, workerMaxThreads, workerQueueSize).getExecutor();
+        timeouts = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "tinyhttp-timeouts");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        //Most handlers finish in time, so cancelled timeouts should not pile up in the queue
+        timeouts.setRemoveOnCancelPolicy(true);
+
+        if (workerExecutor != null)
+            workerPool = new WorkerPool(workerExecutor);
+        else if (virtual)
+            workerPool = new WorkerPool(VirtualThreads.newExecutor("tinyhttp-virtual-worker-"));
+        else
+            workerPool = new WorkerPool(workerCoreThreads, workerMaxThreads, workerQueueSize);
+
+        boolean poolPerAcceptor = workerPoolPerAcceptor && workerExecutor == null && !virtual;
+        workerPools = new WorkerPool[poolPerAcceptor ? acceptorThreads : 1];
+        workerPools[0] = workerPool;
+        for (int i = 1; i < workerPools.length; i++) {
+            workerPools[i] = new WorkerPool(workerCoreThreads, workerMaxThreads, workerQueueSize);
+        }
+        loadShedder = new LoadShedder(maxInFlightRequests, queueDelayTarget, queueDelayInterval, retryAfter);
 
         if (listener == null)
             return;
 
         Method[] methods = listener.getClass().getDeclaredMethods();
+        Arrays.sort(methods, new Comparator<Method>() {
+            @Override
+            public int compare(Method o1, Method o2) {
+                return o1.getName().compareTo(o2.getName());
+            }
+        });
         for (Method m : methods) {
             if (m.getParameterTypes().length != 2 || m.getParameterTypes()[0] != me.eddiep.tinyhttp.net.Request.class || m.getParameterTypes()[1] != Response.class) continue;
 
@@ -285,86 +1261,189 @@ public class TinyHttpServer {
             PostHandler post = m.getAnnotation(PostHandler.class);
             PutHandler put = m.getAnnotation(PutHandler.class);
 
+            if (get == null && delete == null && post == null && put == null)
+                continue;
+
+            RequestHandler handler = null;
+            AsyncRequestHandler asyncHandler = null;
+            try {
+                if (CompletionStage.class.isAssignableFrom(m.getReturnType()))
+                    asyncHandler = HandlerFactory.createAsyncHandler(listener, m);
+                else
+                    handler = HandlerFactory.createHandler(listener, m);
+            } catch (IllegalAccessException e) {
+                throw new RuntimeException("Could not access handler method " + m.getName() + "!", e);
+            }
+            Timeout timeout = m.getAnnotation(Timeout.class);
+
             if (get != null) {
                 RequestHolder request = new RequestHolder();
-                m.setAccessible(true);
-                request.invoke = m;
+                request.handler = handler;
+                request.asyncHandler = asyncHandler;
+                request.timeout = timeout != null ? timeout.value() : -1;
                 request.requestPath = get.requestPath();
                 request.method = HttpMethod.GET;
-                toInvoke.add(request);
+                request.metrics = metrics.getRoute(request.method, request.requestPath);
+                dispatcher.register(request.method, request.requestPath, request);
             }
             if (delete != null) {
                 RequestHolder request = new RequestHolder();
-                m.setAccessible(true);
-                request.invoke = m;
+                request.handler = handler;
+                request.asyncHandler = asyncHandler;
+                request.timeout = timeout != null ? timeout.value() : -1;
                 request.requestPath = delete.requestPath();
                 request.method = HttpMethod.DELETE;
-                toInvoke.add(request);
+                request.metrics = metrics.getRoute(request.method, request.requestPath);
+                dispatcher.register(request.method, request.requestPath, request);
             }
             if (post != null) {
                 RequestHolder request = new RequestHolder();
-                m.setAccessible(true);
-                request.invoke = m;
+                request.handler = handler;
+                request.asyncHandler = asyncHandler;
+                request.timeout = timeout != null ? timeout.value() : -1;
                 request.requestPath = post.requestPath();
                 request.method = HttpMethod.POST;
-                toInvoke.add(request);
+                request.metrics = metrics.getRoute(request.method, request.requestPath);
+                dispatcher.register(request.method, request.requestPath, request);
             }
             if (put != null) {
                 RequestHolder request = new RequestHolder();
-                m.setAccessible(true);
-                request.invoke = m;
+                request.handler = handler;
+                request.asyncHandler = asyncHandler;
+                request.timeout = timeout != null ? timeout.value() : -1;
                 request.requestPath = put.requestPath();
                 request.method = HttpMethod.PUT;
-                toInvoke.add(request);
+                request.metrics = metrics.getRoute(request.method, request.requestPath);
+                dispatcher.register(request.method, request.requestPath, request);
             }
         }
     }
 
-    private String currentDate() {
-        DateFormat df = new SimpleDateFormat("EEE, WW MMMM yyyy HH:mm:ss zzz");
-        Date today = Calendar.getInstance().getTime();
-        return df.format(today);
-    }
-
     /**
-     * Handle a requestPath sent by a client
+     * Handle a requestPath sent by a client. A handler that returns a {@link java.util.concurrent.CompletionStage} is
+     * waited for
      * @param request The requestPath info sent by the client
      * @return The response created by either the {@link me.eddiep.tinyhttp.TinyListener} object or by this tinyhttp server
      */
     public Response invokeForRequest(Request request, Response respond) {
+        CompletableFuture<Response> result = invokeForRequestAsync(request, respond).toCompletableFuture();
+        try {
+            return result.join();
+        } catch (RuntimeException e) {
+            //The handler timed out
+            respond.setStatusCode(StatusCode.ServiceUnavailable);
+            return respond;
+        }
+    }
+
+    /**
+     * Handle a requestPath sent by a client without waiting for handlers that return a {@link java.util.concurrent.CompletionStage}.
+     * Every other request is handled before this returns, and the returned stage is already complete <br></br>
+     * The returned stage never completes with the exception of a handler, those requests are answered with
+     * {@link me.eddiep.tinyhttp.net.http.StatusCode#InternalServerError}. It completes with a
+     * {@link java.util.concurrent.TimeoutException} if the handler took longer than its {@link me.eddiep.tinyhttp.annotations.Timeout}
+     * @param request The requestPath info sent by the client
+     * @param respond The response to fill in
+     * @return A stage that completes with the response once it has been filled in
+     */
+    public CompletionStage<Response> invokeForRequestAsync(Request request, Response respond) {
         if (request.getClient() == null)
             throw new InvalidParameterException("No client specified in the requestPath!");
 
-        respond.addHeader("Date", currentDate());
-        respond.addHeader("Server", "TinyHttpServer/1.0 (" + System.getProperty("os.name") + ")");
-
-        for (RequestHolder temp : toInvoke) {
-            if (temp.method == request.getRequestMethod()) {
-                if (request.getRequestPath().matches(temp.requestPath)) {
-                    try {
-                        temp.invoke.invoke(listener, request, respond);
-                    } catch (IllegalAccessException e) {
-                        respond.setStatusCode(StatusCode.InternalServerError);
-                        e.printStackTrace();
-                    } catch (InvocationTargetException e) {
-                        respond.setStatusCode(StatusCode.InternalServerError);
-                        e.printStackTrace();
-                    } catch (Throwable e) {
-                        respond.setStatusCode(StatusCode.InternalServerError);
-                        e.printStackTrace();
-                    }
-                    return respond;
+        if (metricsPath != null && request.getRequestMethod() == HttpMethod.GET && metricsPath.equals(request.getRequestPath())) {
+            respond.setContentType("text/plain; version=0.0.4; charset=UTF-8");
+            respond.echo(metrics.toPrometheusText());
+            return CompletableFuture.completedFuture(respond);
+        }
+
+        long start = System.nanoTime();
+        RouteMetrics route = null;
+        boolean async = false;
+        metrics.requestStarted();
+        try {
+            RequestHolder temp = dispatcher.lookup(request.getRequestMethod(), request.getRequestPath());
+            if (temp != null) {
+                route = temp.metrics;
+                if (temp.asyncHandler != null) {
+                    CompletionStage<Response> result = invokeAsync(temp, request, respond, start);
+                    async = true; //The request is recorded once the handler completes
+                    return result;
+                }
+
+                try {
+                    temp.handler.handle(request, respond);
+                } catch (Throwable e) {
+                    respond.setStatusCode(StatusCode.InternalServerError);
+                    e.printStackTrace();
                 }
+            } else if (serveFileSystem) {
+                route = metrics.getStaticFilesRoute(request.getRequestMethod());
+                String path = request.getRequestPath().substring(1);
+                respond = request.serveFile(path, respond);
+            } else {
+                route = metrics.getUnmatchedRoute(request.getRequestMethod());
+                respond.setStatusCode(StatusCode.NotFound);
+            }
+        } finally {
+            if (!async) {
+                if (route == null)
+                    route = metrics.getUnmatchedRoute(request.getRequestMethod());
+                metrics.requestFinished(route, respond.getStatusCode(), System.nanoTime() - start);
             }
         }
+        return CompletableFuture.completedFuture(respond);
+    }
+
+    private CompletionStage<Response> invokeAsync(RequestHolder holder, Request request, final Response respond, final long start) {
+        final RouteMetrics route = holder.metrics;
+        final CompletableFuture<Response> result = new CompletableFuture<Response>();
 
-        if (serveFileSystem) {
-            String path = request.getRequestPath().substring(1);
-            return request.serveFile(path, respond);
+        CompletionStage<?> stage;
+        try {
+            stage = holder.asyncHandler.handle(request, respond);
+        } catch (Throwable e) {
+            respond.setStatusCode(StatusCode.InternalServerError);
+            e.printStackTrace();
+            stage = null;
+        }
+        if (stage == null) {
+            metrics.requestFinished(route, respond.getStatusCode(), System.nanoTime() - start);
+            result.complete(respond);
+            return result;
         }
 
-        respond.setStatusCode(StatusCode.NotFound);
-        return respond;
+        long timeout = holder.timeout >= 0 ? holder.timeout : asyncTimeout;
+        final ScheduledFuture<?> timer;
+        if (timeout > 0) {
+            final String path = request.getRequestPath();
+            timer = timeouts.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    if (result.completeExceptionally(new TimeoutException(path + " did not complete in time")))
+                        metrics.requestFinished(route, StatusCode.ServiceUnavailable, System.nanoTime() - start);
+                }
+            }, timeout, TimeUnit.MILLISECONDS);
+        } else {
+            timer = null;
+        }
+
+        stage.whenComplete(new BiConsumer<Object, Throwable>() {
+            @Override
+            public void accept(Object value, Throwable error) {
+                if (timer != null)
+                    timer.cancel(false);
+                if (result.isDone())
+                    return; //The handler timed out, its response is not used
+
+                if (error != null) {
+                    respond.setStatusCode(StatusCode.InternalServerError);
+                    error.printStackTrace();
+                }
+                if (result.complete(respond))
+                    metrics.requestFinished(route, respond.getStatusCode(), System.nanoTime() - start);
+            }
+        });
+        return result;
     }
 
     /**
@@ -373,13 +1452,16 @@ public class TinyHttpServer {
      */
     public void closeClient(Client client) {
         client.close();
-        connectedClients.remove(client);
+        connections.unregister(client);
     }
 
     private class RequestHolder {
         public String requestPath;
         public HttpMethod method;
-        public Method invoke;
+        public RequestHandler handler;
+        public AsyncRequestHandler asyncHandler;
+        public long timeout;
+        public RouteMetrics metrics;
 
         @Override
         public boolean equals(Object o) {
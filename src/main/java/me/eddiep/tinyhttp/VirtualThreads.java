@@ -0,0 +1,30 @@
+package me.eddiep.tinyhttp;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Access to virtual threads. This version is used on JVMs older than Java 21, which don't have virtual threads. The
+ * Java 21 version lives in <code>src/main/java21</code> and is packaged under <code>META-INF/versions/21</code>
+ */
+final class VirtualThreads {
+
+    private VirtualThreads() { }
+
+    /**
+     * Whether or not this JVM supports virtual threads
+     * @return Always false on this JVM
+     */
+    static boolean isSupported() {
+        return false;
+    }
+
+    /**
+     * Create an executor that starts a new virtual thread for every task
+     * @param name The prefix for the name of each thread
+     * @return Never returns on this JVM
+     * @throws UnsupportedOperationException Always, because this JVM does not support virtual threads
+     */
+    static ExecutorService newExecutor(String name) {
+        throw new UnsupportedOperationException("Virtual threads require Java 21 or newer!");
+    }
+}
@@ -0,0 +1,220 @@
+package me.eddiep.tinyhttp;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The pool of worker threads a {@link TinyHttpServer} handles connections and requests with. The pool is bounded, so a
+ * spike of connections queues up (and is eventually rejected) instead of creating a new thread for every connection. <br></br>
+ * Unlike a plain {@link java.util.concurrent.ThreadPoolExecutor}, the pool starts new threads up to its maximum before
+ * it queues anything. A persistent connection holds on to its thread between requests, so waiting for the queue to fill
+ * up first would leave new connections stuck behind idle ones. <br></br>
+ * Rejected connections are answered with {@link me.eddiep.tinyhttp.net.http.StatusCode#ServiceUnavailable} and a
+ * <code>Retry-After</code> header, see {@link TinyHttpServer#setRetryAfter(int)}
+ */
+public class WorkerPool {
+    private ExecutorService executor;
+    private ThreadPoolExecutor pool;
+    private AtomicLong rejected = new AtomicLong();
+
+    /**
+     * Create a new bounded worker pool
+     * @param coreThreads The number of threads kept alive even when idle
+     * @param maxThreads The largest number of threads this pool will create
+     * @param queueSize The number of tasks that may wait for a thread before new tasks are rejected
+     */
+    public WorkerPool(int coreThreads, int maxThreads, int queueSize) {
+        if (coreThreads < 0 || maxThreads < 1 || maxThreads < coreThreads)
+            throw new IllegalArgumentException("Invalid worker pool size!");
+        if (queueSize < 1)
+            throw new IllegalArgumentException("The worker queue must hold at least one task!");
+
+        WorkerQueue queue = new WorkerQueue(queueSize);
+        GrowingExecutor growing = new GrowingExecutor(coreThreads, maxThreads, queue);
+        queue.pool = growing;
+        pool = growing;
+        executor = pool;
+    }
+
+    /**
+     * Create a worker pool backed by an existing {@link java.util.concurrent.ExecutorService}. The executor is responsible
+     * for bounding itself, and should throw a {@link java.util.concurrent.RejectedExecutionException} when it is saturated. <br></br>
+     * Thread and queue statistics are only available if the executor is a {@link java.util.concurrent.ThreadPoolExecutor}
+     * @param executor The executor to run work on
+     */
+    public WorkerPool(ExecutorService executor) {
+        this.executor = executor;
+        if (executor instanceof ThreadPoolExecutor)
+            pool = (ThreadPoolExecutor) executor;
+    }
+
+    /**
+     * Run a task on this pool
+     * @param task The task to run
+     * @throws RejectedExecutionException If the pool is saturated
+     */
+    public void execute(Runnable task) {
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            throw e;
+        }
+    }
+
+    /**
+     * Get the {@link java.util.concurrent.ExecutorService} backing this pool
+     * @return The executor backing this pool
+     */
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Get the number of threads currently running a task
+     * @return The number of active threads, or -1 if unknown
+     */
+    public int getActiveCount() {
+        return pool != null ? pool.getActiveCount() : -1;
+    }
+
+    /**
+     * Get the number of threads currently in this pool
+     * @return The number of threads, or -1 if unknown
+     */
+    public int getPoolSize() {
+        return pool != null ? pool.getPoolSize() : -1;
+    }
+
+    /**
+     * Get the largest number of threads this pool will create
+     * @return The maximum number of threads, or -1 if unknown
+     */
+    public int getMaxThreads() {
+        return pool != null ? pool.getMaximumPoolSize() : -1;
+    }
+
+    /**
+     * Get the number of tasks waiting for a thread
+     * @return The number of queued tasks, or -1 if unknown
+     */
+    public int getQueueSize() {
+        return pool != null ? pool.getQueue().size() : -1;
+    }
+
+    /**
+     * Get the number of tasks the queue can hold
+     * @return The queue capacity, or -1 if unknown
+     */
+    public int getQueueCapacity() {
+        return pool != null ? pool.getQueue().size() + pool.getQueue().remainingCapacity() : -1;
+    }
+
+    /**
+     * Get the number of tasks that were rejected because this pool was saturated
+     * @return The number of rejected tasks
+     */
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    /**
+     * Get how close this pool is to rejecting work, from 0 (idle) to 1 (every thread busy and the queue full)
+     * @return The saturation of this pool, or -1 if unknown
+     */
+    public double getSaturation() {
+        if (pool == null)
+            return -1;
+
+        int capacity = pool.getMaximumPoolSize() + getQueueCapacity();
+        return (double) (pool.getActiveCount() + pool.getQueue().size()) / capacity;
+    }
+
+    /**
+     * Stop accepting new work. Tasks already running are left to finish
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * A {@link java.util.concurrent.ThreadPoolExecutor} that counts the tasks it has been given but not finished, so
+     * its {@link WorkerQueue} can tell whether an idle thread is around to take a new task
+     */
+    private static class GrowingExecutor extends ThreadPoolExecutor {
+        private final AtomicInteger submitted = new AtomicInteger();
+
+        GrowingExecutor(int coreThreads, int maxThreads, final WorkerQueue queue) {
+            super(coreThreads, maxThreads, 60, TimeUnit.SECONDS, queue, new WorkerThreadFactory(), new RejectedExecutionHandler() {
+                @Override
+                public void rejectedExecution(Runnable task, ThreadPoolExecutor executor) {
+                    //Another task took the last thread between the queue turning this one down and a thread being started
+                    if (executor.isShutdown() || !queue.force(task))
+                        throw new RejectedExecutionException("The worker pool is saturated");
+                }
+            });
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            submitted.incrementAndGet();
+            try {
+                super.execute(command);
+            } catch (RejectedExecutionException e) {
+                submitted.decrementAndGet();
+                throw e;
+            }
+        }
+
+        @Override
+        protected void afterExecute(Runnable r, Throwable t) {
+            submitted.decrementAndGet();
+        }
+    }
+
+    /**
+     * A work queue that turns tasks down while the pool can still start a thread for them, which makes the
+     * {@link java.util.concurrent.ThreadPoolExecutor} start one
+     */
+    private static class WorkerQueue extends LinkedBlockingQueue<Runnable> {
+        private static final long serialVersionUID = 1L;
+
+        private transient GrowingExecutor pool;
+
+        WorkerQueue(int capacity) {
+            super(capacity);
+        }
+
+        @Override
+        public boolean offer(Runnable task) {
+            //An idle thread is waiting for this task
+            if (pool.submitted.get() <= pool.getPoolSize())
+                return super.offer(task);
+            if (pool.getPoolSize() < pool.getMaximumPoolSize())
+                return false;
+            return super.offer(task);
+        }
+
+        boolean force(Runnable task) {
+            return super.offer(task);
+        }
+    }
+
+    private static class WorkerThreadFactory implements ThreadFactory {
+        private static final AtomicInteger POOL_NUMBER = new AtomicInteger();
+        private final int pool = POOL_NUMBER.incrementAndGet();
+        private final AtomicInteger thread = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            return new Thread(r, "tinyhttp-" + pool + "-worker-" + thread.incrementAndGet());
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package me.eddiep.tinyhttp.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+
+/**
+ * This annotation sets how long, in milliseconds, a handler method returning a {@link java.util.concurrent.CompletionStage}
+ * may take to complete it. Requests that take longer are answered with
+ * {@link me.eddiep.tinyhttp.net.http.StatusCode#ServiceUnavailable}. Without this annotation
+ * {@link me.eddiep.tinyhttp.TinyHttpServer#getAsyncTimeout()} is used. A value of 0 means the handler never times out
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Timeout {
+    long value();
+}
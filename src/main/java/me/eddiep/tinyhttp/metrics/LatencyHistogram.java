@@ -0,0 +1,136 @@
+package me.eddiep.tinyhttp.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of latencies that many threads can record into at once without contending. <br></br>
+ * Latencies are counted in microseconds, in buckets whose width grows with the value: every power of two is split into
+ * eight buckets, so any percentile is accurate to within 12.5%. Latencies longer than about 9 minutes are counted in the
+ * last bucket
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 29; //2^29 microseconds is a little under 9 minutes
+    private static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    private final LongAdder[] counts = new LongAdder[BUCKETS];
+    private final LongAdder sum = new LongAdder();
+
+    public LatencyHistogram() {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Record a latency
+     * @param nanos The latency in nanoseconds
+     */
+    public void record(long nanos) {
+        if (nanos < 0)
+            nanos = 0;
+        counts[bucketOf(nanos / 1000)].increment();
+        sum.add(nanos);
+    }
+
+    /**
+     * Copy the counts of this histogram. Latencies recorded while the copy is taken may or may not be part of it
+     * @return A {@link LatencyHistogram.Snapshot} of this histogram
+     */
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts[i].sum();
+            count += copy[i];
+        }
+        return new Snapshot(copy, count, sum.sum());
+    }
+
+    static int bucketOf(long micros) {
+        if (micros < SUB_BUCKETS)
+            return (int) micros;
+
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        if (exponent > MAX_EXPONENT)
+            return BUCKETS - 1;
+
+        int sub = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * The largest latency, in microseconds, that falls in a bucket
+     */
+    static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS)
+            return bucket;
+
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long sub = bucket % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        return (SUB_BUCKETS + sub) * width + width - 1;
+    }
+
+    /**
+     * The counts of a {@link LatencyHistogram} at one point in time
+     */
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+
+        private Snapshot(long[] counts, long count, long sum) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+        }
+
+        /**
+         * Get the number of latencies recorded
+         * @return The number of latencies
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Get the sum of every latency recorded
+         * @return The sum in nanoseconds
+         */
+        public long getSumNanos() {
+            return sum;
+        }
+
+        /**
+         * Get the average latency
+         * @return The average in nanoseconds, or 0 if nothing was recorded
+         */
+        public double getMeanNanos() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        /**
+         * Get the latency below which a fraction of all recorded latencies fall, for example 0.99 for the 99th percentile
+         * @param quantile The fraction, from 0 to 1
+         * @return The latency in nanoseconds, or 0 if nothing was recorded
+         */
+        public long getValueAtQuantile(double quantile) {
+            if (count == 0)
+                return 0;
+
+            long rank = (long) Math.ceil(quantile * count);
+            if (rank < 1)
+                rank = 1;
+
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank)
+                    return upperBoundOf(i) * 1000;
+            }
+            return upperBoundOf(counts.length - 1) * 1000;
+        }
+    }
+}
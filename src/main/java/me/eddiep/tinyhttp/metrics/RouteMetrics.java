@@ -0,0 +1,117 @@
+package me.eddiep.tinyhttp.metrics;
+
+import me.eddiep.tinyhttp.net.http.StatusCode;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The number of requests, by status code, and the latency of a single route. A route is either a handler method of a
+ * {@link me.eddiep.tinyhttp.TinyListener}, identified by its method and request path pattern, or one of the routes the
+ * server uses for requests no handler matched, see {@link ServerMetrics#STATIC_FILES} and {@link ServerMetrics#UNMATCHED}
+ */
+public final class RouteMetrics implements RouteMetricsMBean {
+    private static final StatusCode[] STATUS_CODES = StatusCode.values();
+
+    private final String method;
+    private final String route;
+    private final LongAdder[] statuses = new LongAdder[STATUS_CODES.length];
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    RouteMetrics(String method, String route) {
+        this.method = method;
+        this.route = route;
+        for (int i = 0; i < statuses.length; i++) {
+            statuses[i] = new LongAdder();
+        }
+    }
+
+    void record(StatusCode status, long nanos) {
+        statuses[status.ordinal()].increment();
+        latency.record(nanos);
+    }
+
+    /**
+     * Get the HTTP method of this route
+     * @return The name of the method, for example <code>GET</code>
+     */
+    @Override
+    public String getMethod() {
+        return method;
+    }
+
+    /**
+     * Get the request path pattern of this route
+     * @return The request path pattern
+     */
+    @Override
+    public String getRoute() {
+        return route;
+    }
+
+    /**
+     * Get the number of requests answered with a status code
+     * @param status The status code
+     * @return The number of requests
+     */
+    public long getRequestCount(StatusCode status) {
+        return statuses[status.ordinal()].sum();
+    }
+
+    /**
+     * Get the number of requests handled by this route
+     * @return The number of requests
+     */
+    @Override
+    public long getRequestCount() {
+        long count = 0;
+        for (LongAdder status : statuses) {
+            count += status.sum();
+        }
+        return count;
+    }
+
+    /**
+     * Get the number of requests answered with a 5xx status code
+     * @return The number of failed requests
+     */
+    @Override
+    public long getErrorCount() {
+        return ServerMetrics.countErrors(statuses);
+    }
+
+    /**
+     * Get the histogram of the time spent handling requests for this route
+     * @return The {@link LatencyHistogram} of this route
+     */
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    @Override
+    public double getMeanLatencyMillis() {
+        return latency.snapshot().getMeanNanos() / 1000000.0;
+    }
+
+    @Override
+    public double getLatencyP50Millis() {
+        return latency.snapshot().getValueAtQuantile(0.5) / 1000000.0;
+    }
+
+    @Override
+    public double getLatencyP99Millis() {
+        return latency.snapshot().getValueAtQuantile(0.99) / 1000000.0;
+    }
+
+    @Override
+    public double getLatencyP999Millis() {
+        return latency.snapshot().getValueAtQuantile(0.999) / 1000000.0;
+    }
+
+    long[] statusCounts() {
+        long[] counts = new long[statuses.length];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = statuses[i].sum();
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,22 @@
+package me.eddiep.tinyhttp.metrics;
+
+/**
+ * The JMX view of a {@link RouteMetrics}
+ */
+public interface RouteMetricsMBean {
+    String getMethod();
+
+    String getRoute();
+
+    long getRequestCount();
+
+    long getErrorCount();
+
+    double getMeanLatencyMillis();
+
+    double getLatencyP50Millis();
+
+    double getLatencyP99Millis();
+
+    double getLatencyP999Millis();
+}
@@ -0,0 +1,390 @@
+package me.eddiep.tinyhttp.metrics;
+
+import me.eddiep.tinyhttp.LoadShedder;
+import me.eddiep.tinyhttp.TinyHttpServer;
+import me.eddiep.tinyhttp.WorkerPool;
+import me.eddiep.tinyhttp.net.http.HttpMethod;
+import me.eddiep.tinyhttp.net.http.StatusCode;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latency histograms for a {@link me.eddiep.tinyhttp.TinyHttpServer}. <br></br>
+ * Everything is recorded into {@link java.util.concurrent.atomic.LongAdder}s, so threads handling requests at the same
+ * time never wait on each other to update a counter. Reading a value sums the adders, which is cheap enough for a
+ * monitoring system polling every few seconds. <br></br>
+ * The metrics can be read directly, through JMX once {@link me.eddiep.tinyhttp.TinyHttpServer#setJmxEnabled(boolean)} is
+ * set, or in the Prometheus text format from the path given to {@link me.eddiep.tinyhttp.TinyHttpServer#setMetricsPath(String)}
+ */
+public final class ServerMetrics implements ServerMetricsMBean {
+    /**
+     * The route of requests that were answered with a file from the root directory
+     */
+    public static final String STATIC_FILES = "(static)";
+    /**
+     * The route of requests that no handler matched while the file system is not served
+     */
+    public static final String UNMATCHED = "(unmatched)";
+    /**
+     * The JMX domain the MBeans are registered in
+     */
+    public static final String JMX_DOMAIN = "me.eddiep.tinyhttp";
+
+    private static final StatusCode[] STATUS_CODES = StatusCode.values();
+    private static final double[] QUANTILES = { 0.5, 0.99, 0.999 };
+
+    private final TinyHttpServer server;
+    private final CopyOnWriteArrayList<RouteMetrics> routes = new CopyOnWriteArrayList<RouteMetrics>();
+    private final RouteMetrics[] staticFiles = new RouteMetrics[HttpMethod.values().length];
+    private final RouteMetrics[] unmatched = new RouteMetrics[HttpMethod.values().length];
+
+    private final LongAdder[] statuses = new LongAdder[STATUS_CODES.length];
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder activeRequests = new LongAdder();
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+
+    private ArrayList<ObjectName> registered;
+    private String jmxName;
+
+    public ServerMetrics(TinyHttpServer server) {
+        this.server = server;
+        for (int i = 0; i < statuses.length; i++) {
+            statuses[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Get the metrics of a route, creating them the first time the route is asked for
+     * @param method The HTTP method of the route
+     * @param route The request path pattern of the route
+     * @return The {@link RouteMetrics} of the route
+     */
+    public synchronized RouteMetrics getRoute(HttpMethod method, String route) {
+        for (RouteMetrics metrics : routes) {
+            if (metrics.getMethod().equals(method.name()) && metrics.getRoute().equals(route))
+                return metrics;
+        }
+
+        RouteMetrics metrics = new RouteMetrics(method.name(), route);
+        routes.add(metrics);
+        if (registered != null)
+            register(metrics);
+        return metrics;
+    }
+
+    /**
+     * Get the metrics of requests answered with a file from the root directory
+     * @param method The HTTP method of the request
+     * @return The {@link RouteMetrics} for static files
+     */
+    public RouteMetrics getStaticFilesRoute(HttpMethod method) {
+        RouteMetrics metrics = staticFiles[method.ordinal()];
+        if (metrics == null) {
+            metrics = getRoute(method, STATIC_FILES);
+            staticFiles[method.ordinal()] = metrics;
+        }
+        return metrics;
+    }
+
+    /**
+     * Get the metrics of requests that no handler matched
+     * @param method The HTTP method of the request
+     * @return The {@link RouteMetrics} for unmatched requests
+     */
+    public RouteMetrics getUnmatchedRoute(HttpMethod method) {
+        RouteMetrics metrics = unmatched[method.ordinal()];
+        if (metrics == null) {
+            metrics = getRoute(method, UNMATCHED);
+            unmatched[method.ordinal()] = metrics;
+        }
+        return metrics;
+    }
+
+    /**
+     * Get the metrics of every route that has been seen so far
+     * @return An unmodifiable list of {@link RouteMetrics}
+     */
+    public List<RouteMetrics> getRoutes() {
+        return Collections.unmodifiableList(routes);
+    }
+
+    /**
+     * Record the start of a request. This is invoked by the server
+     */
+    public void requestStarted() {
+        activeRequests.increment();
+    }
+
+    /**
+     * Record a request that has been handled. This is invoked by the server
+     * @param route The route that handled the request
+     * @param status The status code the request was answered with
+     * @param nanos The time spent handling the request, in nanoseconds
+     */
+    public void requestFinished(RouteMetrics route, StatusCode status, long nanos) {
+        activeRequests.decrement();
+        statuses[status.ordinal()].increment();
+        latency.record(nanos);
+        route.record(status, nanos);
+    }
+
+    /**
+     * Count bytes read from a connection. This is invoked by the server
+     * @param length The number of bytes read
+     */
+    public void addBytesRead(long length) {
+        bytesRead.add(length);
+    }
+
+    /**
+     * Count bytes written to a connection. This is invoked by the server
+     * @param length The number of bytes written
+     */
+    public void addBytesWritten(long length) {
+        bytesWritten.add(length);
+    }
+
+    /**
+     * Get the number of requests answered with a status code
+     * @param status The status code
+     * @return The number of requests
+     */
+    public long getRequestCount(StatusCode status) {
+        return statuses[status.ordinal()].sum();
+    }
+
+    @Override
+    public long getRequestCount() {
+        long count = 0;
+        for (LongAdder status : statuses) {
+            count += status.sum();
+        }
+        return count;
+    }
+
+    @Override
+    public long getErrorCount() {
+        return countErrors(statuses);
+    }
+
+    @Override
+    public long getActiveRequests() {
+        return activeRequests.sum();
+    }
+
+    @Override
+    public int getActiveConnections() {
+        return server.getConnectionCount();
+    }
+
+    /**
+     * Get the number of connections or requests waiting for a thread in {@link me.eddiep.tinyhttp.TinyHttpServer#getWorkerPools()}
+     * @return The number of waiting tasks, or -1 if unknown
+     */
+    @Override
+    public int getQueueDepth() {
+        int depth = 0;
+        for (WorkerPool pool : server.getWorkerPools()) {
+            int size = pool.getQueueSize();
+            if (size == -1)
+                return -1;
+            depth += size;
+        }
+        return depth;
+    }
+
+    @Override
+    public long getRejectedCount() {
+        long rejected = 0;
+        for (WorkerPool pool : server.getWorkerPools()) {
+            rejected += pool.getRejectedCount();
+        }
+        return rejected;
+    }
+
+    @Override
+    public long getShedCount() {
+        LoadShedder shedder = server.getLoadShedder();
+        return shedder != null ? shedder.getShedCount() : 0;
+    }
+
+    @Override
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return bytesWritten.sum();
+    }
+
+    /**
+     * Get the histogram of the time spent handling requests on every route
+     * @return The {@link LatencyHistogram} of the server
+     */
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    @Override
+    public double getMeanLatencyMillis() {
+        return latency.snapshot().getMeanNanos() / 1000000.0;
+    }
+
+    @Override
+    public double getLatencyP50Millis() {
+        return latency.snapshot().getValueAtQuantile(0.5) / 1000000.0;
+    }
+
+    @Override
+    public double getLatencyP99Millis() {
+        return latency.snapshot().getValueAtQuantile(0.99) / 1000000.0;
+    }
+
+    @Override
+    public double getLatencyP999Millis() {
+        return latency.snapshot().getValueAtQuantile(0.999) / 1000000.0;
+    }
+
+    /**
+     * Register an MBean for the server and one for every route with the platform {@link javax.management.MBeanServer}.
+     * Routes seen later are registered as they appear
+     * @param name The value of the <code>name</code> key of the object names, which tells servers in the same JVM apart
+     */
+    public synchronized void registerMBeans(String name) {
+        if (registered != null)
+            return;
+
+        jmxName = ObjectName.quote(name);
+        registered = new ArrayList<ObjectName>();
+        try {
+            ObjectName objectName = new ObjectName(JMX_DOMAIN + ":type=Server,name=" + jmxName);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            registered.add(objectName);
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+        for (RouteMetrics route : routes) {
+            register(route);
+        }
+    }
+
+    /**
+     * Unregister every MBean registered by {@link ServerMetrics#registerMBeans(String)}
+     */
+    public synchronized void unregisterMBeans() {
+        if (registered == null)
+            return;
+
+        MBeanServer mbeans = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName objectName : registered) {
+            try {
+                mbeans.unregisterMBean(objectName);
+            } catch (JMException e) {
+                e.printStackTrace();
+            }
+        }
+        registered = null;
+    }
+
+    private void register(RouteMetrics route) {
+        try {
+            ObjectName objectName = new ObjectName(JMX_DOMAIN + ":type=Route,name=" + jmxName + ",method=" +
+                    route.getMethod() + ",route=" + ObjectName.quote(route.getRoute()));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(route, objectName);
+            registered.add(objectName);
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Write every metric in the Prometheus text exposition format. Routes that have not handled a request yet are left out
+     * @return The metrics as text
+     */
+    public String toPrometheusText() {
+        StringBuilder out = new StringBuilder(4096);
+        List<RouteMetrics> routes = this.routes;
+
+        out.append("# HELP tinyhttp_requests_total Requests handled, by route and status code\n");
+        out.append("# TYPE tinyhttp_requests_total counter\n");
+        for (RouteMetrics route : routes) {
+            long[] counts = route.statusCounts();
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] == 0)
+                    continue;
+                out.append("tinyhttp_requests_total{");
+                appendRouteLabels(out, route);
+                out.append(",status=\"").append(STATUS_CODES[i].getCode()).append("\"} ").append(counts[i]).append('\n');
+            }
+        }
+
+        out.append("# HELP tinyhttp_request_duration_seconds Time spent handling requests, by route\n");
+        out.append("# TYPE tinyhttp_request_duration_seconds summary\n");
+        for (RouteMetrics route : routes) {
+            LatencyHistogram.Snapshot snapshot = route.getLatency().snapshot();
+            if (snapshot.getCount() == 0)
+                continue;
+            for (double quantile : QUANTILES) {
+                out.append("tinyhttp_request_duration_seconds{");
+                appendRouteLabels(out, route);
+                out.append(",quantile=\"").append(quantile).append("\"} ")
+                        .append(snapshot.getValueAtQuantile(quantile) / 1e9).append('\n');
+            }
+            out.append("tinyhttp_request_duration_seconds_sum{");
+            appendRouteLabels(out, route);
+            out.append("} ").append(snapshot.getSumNanos() / 1e9).append('\n');
+            out.append("tinyhttp_request_duration_seconds_count{");
+            appendRouteLabels(out, route);
+            out.append("} ").append(snapshot.getCount()).append('\n');
+        }
+
+        appendMetric(out, "tinyhttp_requests_active", "gauge", "Requests being handled right now", getActiveRequests());
+        appendMetric(out, "tinyhttp_connections_active", "gauge", "Open connections", getActiveConnections());
+        appendMetric(out, "tinyhttp_worker_queue_depth", "gauge", "Tasks waiting for a worker thread", getQueueDepth());
+        appendMetric(out, "tinyhttp_worker_rejected_total", "counter", "Tasks rejected because the worker pool was saturated", getRejectedCount());
+        appendMetric(out, "tinyhttp_shed_total", "counter", "Connections and requests answered with 503 because the server was overloaded", getShedCount());
+        appendMetric(out, "tinyhttp_bytes_read_total", "counter", "Bytes read from connections", getBytesRead());
+        appendMetric(out, "tinyhttp_bytes_written_total", "counter", "Bytes written to connections", getBytesWritten());
+        return out.toString();
+    }
+
+    private static void appendMetric(StringBuilder out, String name, String type, String help, long value) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void appendRouteLabels(StringBuilder out, RouteMetrics route) {
+        out.append("method=\"").append(route.getMethod()).append("\",route=\"");
+        String value = route.getRoute();
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' || c == '"')
+                out.append('\\').append(c);
+            else if (c == '\n')
+                out.append("\\n");
+            else
+                out.append(c);
+        }
+        out.append('"');
+    }
+
+    static long countErrors(LongAdder[] statuses) {
+        long count = 0;
+        for (int i = 0; i < statuses.length; i++) {
+            if (STATUS_CODES[i].getCode() >= 500)
+                count += statuses[i].sum();
+        }
+        return count;
+    }
+}
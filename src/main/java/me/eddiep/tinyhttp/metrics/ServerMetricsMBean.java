@@ -0,0 +1,32 @@
+package me.eddiep.tinyhttp.metrics;
+
+/**
+ * The JMX view of a {@link ServerMetrics}
+ */
+public interface ServerMetricsMBean {
+    long getRequestCount();
+
+    long getErrorCount();
+
+    long getActiveRequests();
+
+    int getActiveConnections();
+
+    int getQueueDepth();
+
+    long getRejectedCount();
+
+    long getShedCount();
+
+    long getBytesRead();
+
+    long getBytesWritten();
+
+    double getMeanLatencyMillis();
+
+    double getLatencyP50Millis();
+
+    double getLatencyP99Millis();
+
+    double getLatencyP999Millis();
+}
@@ -0,0 +1,532 @@
+package me.eddiep.tinyhttp.net;
+
+import me.eddiep.tinyhttp.WorkerPool;
+import me.eddiep.tinyhttp.net.http.HttpMethod;
+import me.eddiep.tinyhttp.net.http.StatusCode;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A {@link Client} whose connection is driven by an {@link EventLoop}. The request line, headers and enclosed content
+ * are read without blocking, then the request is handed to {@link me.eddiep.tinyhttp.TinyHttpServer#getWorkerPool()}.
+ * Responses are written straight to the channel when possible, anything the socket can't take right away is queued and
+ * written by the event loop
+ */
+class ChannelClient extends Client {
+    private static final int INITIAL_BUFFER_LENGTH = 8192;
+    private static final long HIGH_WATER_MARK = 1024 * 1024;
+
+    private SocketChannel channel;
+    private EventLoop loop;
+    private SelectionKey key;
+    private ByteBuffer readBuffer;
+    private RequestParser parser;
+
+    private final ArrayDeque<PendingWrite> pending = new ArrayDeque<PendingWrite>();
+    private final ReentrantLock pendingLock = new ReentrantLock();
+    private final Condition pendingDrained = pendingLock.newCondition();
+    private long pendingBytes;
+    private ChannelOutputStream out = new ChannelOutputStream();
+
+    private volatile boolean closed;
+    private boolean inFlight;
+    private boolean closeAfterWrite;
+    private boolean keepAlive;
+    private Request bodyRequest;
+    private byte[] body;
+    private int bodyRead;
+
+    ChannelClient(SocketChannel channel, EventLoop loop, WorkerPool workerPool) {
+        super(channel.socket(), loop.getServer(), workerPool);
+        this.channel = channel;
+        this.loop = loop;
+        this.readBuffer = ByteBuffer.allocate(Math.min(INITIAL_BUFFER_LENGTH, getServer().getMaxHeaderSize()));
+        this.parser = new RequestParser(getServer().getMaxHeaderSize(), getServer().getMaxHeaderCount());
+        markStarted(loop.getThread());
+    }
+
+    SocketChannel getChannel() {
+        return channel;
+    }
+
+    EventLoop getLoop() {
+        return loop;
+    }
+
+    void setKey(SelectionKey key) {
+        this.key = key;
+    }
+
+    @Override
+    OutputStream getResponseStream() {
+        return out;
+    }
+
+    @Override
+    protected void onClose() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    void onReadable() throws IOException {
+        int read = channel.read(readBuffer);
+        if (read == -1) {
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+            if (inFlight || hasPending())
+                closeAfterWrite = true;
+            else
+                closeConnection();
+            return;
+        }
+
+        onRead(read);
+        processInput();
+    }
+
+    private void processInput() throws IOException {
+        while (!inFlight && !closed) {
+            if (bodyRequest != null) {
+                readBuffer.flip();
+                int length = Math.min(readBuffer.remaining(), body.length - bodyRead);
+                readBuffer.get(body, bodyRead, length);
+                readBuffer.compact();
+                bodyRead += length;
+
+                if (bodyRead < body.length)
+                    return;
+
+                Request request = bodyRequest;
+                byte[] content = body;
+                bodyRequest = null;
+                body = null;
+                dispatch(request, content);
+                continue;
+            }
+
+            Request request;
+            long length;
+            try {
+                int end = parser.parse(readBuffer.array(), 0, readBuffer.position());
+                if (end == -1) {
+                    if (!readBuffer.hasRemaining()) {
+                        //The parser enforces the head limit, so the buffer only has to grow up to it
+                        ByteBuffer bigger = ByteBuffer.allocate(Math.min(readBuffer.capacity() * 2, getServer().getMaxHeaderSize()));
+                        readBuffer.flip();
+                        bigger.put(readBuffer);
+                        readBuffer = bigger;
+                    }
+                    return;
+                }
+
+                RequestHead head = parser.createHead(readBuffer.array(), 0, end);
+                parser.reset();
+                readBuffer.flip();
+                readBuffer.position(end);
+                readBuffer.compact();
+
+                request = createRequest(head);
+                length = head.getContentLength();
+            } catch (HttpParseException e) {
+                sendErrorAndClose(e.getStatusCode());
+                return;
+            }
+
+            keepAlive = shouldKeepAlive(request);
+
+            if (length > getServer().getMaxBufferedContentLength()) {
+                sendErrorAndClose(StatusCode.RequestEntityTooLarge);
+                return;
+            }
+            if (length > 0) {
+                if (expectsContinue(request))
+                    out.write(CONTINUE);
+
+                bodyRequest = request;
+                body = new byte[(int) length];
+                bodyRead = 0;
+                continue;
+            }
+
+            dispatch(request, null);
+        }
+    }
+
+    private void dispatch(final Request request, byte[] content) {
+        inFlight = true;
+        key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+
+        if (content != null && (request.getRequestMethod() == HttpMethod.POST || request.getRequestMethod() == HttpMethod.PUT))
+            request.setContent(new ByteArrayInputStream(content), content.length);
+
+        final boolean keepAlive = this.keepAlive;
+        final Response respond = createResponse(keepAlive);
+
+        try {
+            getWorkerPool().execute(new Runnable() {
+                @Override
+                public void run() {
+                    Runnable done = new Runnable() {
+                        @Override
+                        public void run() {
+                            loop.execute(new Runnable() {
+                                @Override
+                                public void run() {
+                                    requestDone(keepAlive);
+                                }
+                            });
+                        }
+                    };
+
+                    CompletableFuture<Void> pending = null;
+                    try {
+                        pending = handleRequest(request, respond);
+                    } catch (IOException e) {
+                        if (!closed)
+                            e.printStackTrace();
+                    } finally {
+                        //An asynchronous handler keeps the connection from reading its next request until it completes
+                        if (pending != null)
+                            pending.thenRun(done);
+                        else
+                            done.run();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight = false;
+            getServer().getLoadShedder().countShed();
+            try {
+                out.write(getServer().getLoadShedder().getRejection());
+                closeWhenWritten();
+            } catch (IOException e1) {
+                closeConnection();
+            }
+        }
+    }
+
+    private void requestDone(boolean keepAlive) {
+        inFlight = false;
+        markActivity();
+        if (closed)
+            return;
+
+        if (!keepAlive || isClosing() || closeAfterWrite) {
+            closeAfterWrite = true;
+            if (!hasPending())
+                closeConnection();
+            return;
+        }
+
+        key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+        try {
+            processInput();
+        } catch (IOException e) {
+            closeConnection();
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            closeConnection();
+        }
+    }
+
+    private void sendErrorAndClose(StatusCode code) throws IOException {
+        Response respond = createResponse(false);
+        respond.setStatusCode(code);
+        sendResponseAndClose(respond);
+    }
+
+    private void sendResponseAndClose(Response respond) throws IOException {
+        writeResponse(respond);
+        closeWhenWritten();
+    }
+
+    private void closeWhenWritten() {
+        closeAfterWrite = true;
+        if (!hasPending())
+            closeConnection();
+        else
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+    }
+
+    void onWritable() throws IOException {
+        boolean drained;
+        pendingLock.lock();
+        try {
+            while (!pending.isEmpty()) {
+                PendingWrite write = pending.peek();
+                long written = write.writeTo(channel);
+                pendingBytes -= written;
+                onWrite(written);
+                if (!write.isDone())
+                    break;
+                pending.poll();
+            }
+            drained = pending.isEmpty();
+            if (drained)
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+            pendingDrained.signalAll();
+        } finally {
+            pendingLock.unlock();
+        }
+
+        if (drained && closeAfterWrite && !inFlight)
+            closeConnection();
+    }
+
+    private boolean hasPending() {
+        pendingLock.lock();
+        try {
+            return !pending.isEmpty();
+        } finally {
+            pendingLock.unlock();
+        }
+    }
+
+    /**
+     * Whether this connection has been waiting on the client for longer than the server allows
+     */
+    @Override
+    boolean isIdle(long now) {
+        if (inFlight)
+            return false;
+
+        int limit;
+        if (getRequestCount() > 0 && bodyRequest == null && readBuffer.position() == 0 && !hasPending())
+            limit = getServer().getKeepAliveTimeout();
+        else
+            limit = getServer().getTimeout();
+
+        return now - getLastActivity() > limit;
+    }
+
+    @Override
+    void closeIfIdle() {
+        loop.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (!inFlight && getRequestCount() > 0 && bodyRequest == null && readBuffer.position() == 0 && !hasPending())
+                    closeConnection();
+            }
+        });
+    }
+
+    @Override
+    void closeIdle() {
+        loop.execute(new Runnable() {
+            @Override
+            public void run() {
+                closeConnection();
+            }
+        });
+    }
+
+    void closeConnection() {
+        if (closed)
+            return;
+        closed = true;
+
+        pendingLock.lock();
+        try {
+            pending.clear();
+            pendingBytes = 0;
+            pendingDrained.signalAll();
+        } finally {
+            pendingLock.unlock();
+        }
+        if (key != null)
+            key.cancel();
+
+        getServer().closeClient(this);
+    }
+
+    private void enableWrite() {
+        if (closed || key == null || !key.isValid())
+            return;
+        key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+    }
+
+    /**
+     * Send part of a file with {@link java.nio.channels.FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}.
+     * Whatever the socket can't take right away is left to the event loop, and this blocks until the whole file has been
+     * sent, so the caller can close the file afterwards
+     */
+    @Override
+    void writeFile(FileChannel file, long position, long length) throws IOException {
+        if (closed)
+            throw new IOException("The connection has been closed");
+
+        FileWrite write = new FileWrite(file, position, length);
+        pendingLock.lock();
+        try {
+            if (pending.isEmpty())
+                onWrite(write.writeTo(channel));
+            if (write.isDone())
+                return;
+
+            pending.add(write);
+            pendingBytes += write.remaining;
+        } finally {
+            pendingLock.unlock();
+        }
+
+        if (loop.inLoop())
+            throw new IllegalStateException("Files can't be sent from the event loop thread!");
+        loop.execute(ENABLE_WRITE);
+
+        pendingLock.lock();
+        try {
+            while (!write.isDone() && !closed) {
+                pendingDrained.await();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while sending a file");
+        } finally {
+            pendingLock.unlock();
+        }
+
+        if (!write.isDone())
+            throw new IOException("The connection was closed before the whole file was sent");
+    }
+
+    private interface PendingWrite {
+        /**
+         * Write as much as the channel will take right now
+         * @return The number of bytes written
+         */
+        long writeTo(SocketChannel channel) throws IOException;
+
+        boolean isDone();
+    }
+
+    private static class BufferWrite implements PendingWrite {
+        private ByteBuffer buffer;
+
+        BufferWrite(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public long writeTo(SocketChannel channel) throws IOException {
+            return channel.write(buffer);
+        }
+
+        @Override
+        public boolean isDone() {
+            return !buffer.hasRemaining();
+        }
+    }
+
+    private static class FileWrite implements PendingWrite {
+        private FileChannel file;
+        private long position;
+        private long remaining;
+
+        FileWrite(FileChannel file, long position, long length) {
+            this.file = file;
+            this.position = position;
+            this.remaining = length;
+        }
+
+        @Override
+        public long writeTo(SocketChannel channel) throws IOException {
+            long written = 0;
+            while (remaining > 0) {
+                long sent = file.transferTo(position, remaining, channel);
+                if (sent <= 0) {
+                    if (position >= file.size())
+                        throw new EOFException("The file ended before the whole response was sent!");
+                    break;
+                }
+                position += sent;
+                remaining -= sent;
+                written += sent;
+            }
+            return written;
+        }
+
+        @Override
+        public boolean isDone() {
+            return remaining == 0;
+        }
+    }
+
+    private final Runnable ENABLE_WRITE = new Runnable() {
+        @Override
+        public void run() {
+            enableWrite();
+        }
+    };
+
+    /**
+     * Writes straight to the channel while nothing is queued, and queues whatever the socket can't take right away.
+     * Writers are blocked while too much data is queued, so a slow client can't make a handler buffer a whole response
+     */
+    private class ChannelOutputStream extends OutputStream {
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (closed)
+                throw new IOException("The connection has been closed");
+            if (len == 0)
+                return;
+
+            pendingLock.lock();
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+                if (pending.isEmpty()) {
+                    onWrite(channel.write(buffer));
+                    if (!buffer.hasRemaining())
+                        return;
+                }
+
+                ByteBuffer copy = ByteBuffer.allocate(buffer.remaining());
+                copy.put(buffer);
+                copy.flip();
+                pending.add(new BufferWrite(copy));
+                pendingBytes += copy.remaining();
+            } finally {
+                pendingLock.unlock();
+            }
+
+            if (loop.inLoop())
+                enableWrite();
+            else
+                loop.execute(ENABLE_WRITE);
+
+            if (loop.inLoop())
+                return;
+
+            pendingLock.lock();
+            try {
+                while (pendingBytes > HIGH_WATER_MARK && !closed) {
+                    pendingDrained.await();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the client to read the response");
+            } finally {
+                pendingLock.unlock();
+            }
+
+            if (closed)
+                throw new IOException("The connection has been closed");
+        }
+    }
+}
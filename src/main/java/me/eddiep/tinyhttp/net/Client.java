@@ -1,22 +1,80 @@
 package me.eddiep.tinyhttp.net;
 
+import me.eddiep.tinyhttp.LoadShedder;
+import me.eddiep.tinyhttp.ServerMode;
 import me.eddiep.tinyhttp.TinyHttpServer;
+import me.eddiep.tinyhttp.WorkerPool;
 import me.eddiep.tinyhttp.net.http.HttpMethod;
+import me.eddiep.tinyhttp.net.http.MimeTypes;
+import me.eddiep.tinyhttp.net.http.StatusCode;
 
 import java.io.*;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.Charset;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
 
 public class Client {
+    static final byte[] CONTINUE = "HTTP/1.1 100 Continue\r\n\r\n".getBytes(Charset.forName("ASCII"));
+    private static final long TRANSFER_CHUNK = 1024 * 1024;
+
     private boolean started;
-    private Thread thread;
+    private volatile Thread thread;
     private Socket client;
     private TinyHttpServer server;
-    private BufferedReader reader;
+    private WorkerPool workerPool;
+    private RequestInputStream input;
+    private int requestCount;
+    private long nextSequence;
+    private long writeSequence;
+    private volatile boolean closing;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final Condition written = writeLock.newCondition();
+    private OutputStream responseStream;
+    private final Executor writeExecutor = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            try {
+                server.getHandlerExecutor().execute(command);
+            } catch (RejectedExecutionException e) {
+                command.run(); //The executor is saturated or stopping, the response still has to take its turn
+            }
+        }
+    };
+
+    private final long connectedAt = System.currentTimeMillis();
+    private long queuedAt = System.nanoTime();
+    private volatile long lastActivity = connectedAt;
+    private volatile long bytesRead;
+    private volatile long bytesWritten;
+    private volatile boolean writing;
+    private volatile boolean awaitingRequest;
+    private final AtomicInteger activeRequests = new AtomicInteger();
 
     public Client(Socket client, TinyHttpServer server) {
+        this(client, server, null);
+    }
+
+    /**
+     * Create a client whose connection and requests run on a specific {@link me.eddiep.tinyhttp.WorkerPool}
+     * @param client The socket of the connection
+     * @param server The {@link me.eddiep.tinyhttp.TinyHttpServer} the connection was accepted by
+     * @param workerPool The pool to run on, or null for {@link me.eddiep.tinyhttp.TinyHttpServer#getWorkerPool()}
+     */
+    public Client(Socket client, TinyHttpServer server, WorkerPool workerPool) {
         this.client = client;
         this.server = server;
+        this.workerPool = workerPool;
     }
 
     /**
@@ -35,6 +93,14 @@ public class Client {
         return server;
     }
 
+    /**
+     * Get the {@link me.eddiep.tinyhttp.WorkerPool} this client's connection and requests run on
+     * @return The worker pool of this client
+     */
+    public WorkerPool getWorkerPool() {
+        return workerPool != null ? workerPool : server.getWorkerPool();
+    }
+
     /**
      * Get the {@link java.lang.Thread} handling this client's requestPath
      * @return The {@link java.lang.Thread} object handling this client's requestPath
@@ -51,24 +117,45 @@ public class Client {
             throw new IllegalStateException("This clients' requestPath is either already being handled or has already been handled.");
 
         onStart();
-        if (thread == null)
+        if (!started)
             throw new IllegalStateException("super.onStart() was not invoked!");
 
-        if (server.isThreaded())
-            thread.start();
-        else
+        if (server.isThreaded()) {
+            queuedAt = System.nanoTime();
+            try {
+                getWorkerPool().execute(HANDLE_RUNNABLE);
+            } catch (RejectedExecutionException e) {
+                reject();
+            }
+        } else {
             HANDLE_RUNNABLE.run();
+        }
     }
 
     protected void onStart() {
         started = true;
 
-        if (server.isThreaded())
-            thread = new Thread(HANDLE_RUNNABLE);
-        else
+        if (!server.isThreaded())
             thread = Thread.currentThread();
     }
 
+    /**
+     * Answer this client with {@link me.eddiep.tinyhttp.net.http.StatusCode#ServiceUnavailable} and disconnect it, because
+     * the server has no room to handle it
+     */
+    private void reject() {
+        server.getLoadShedder().countShed();
+        try {
+            OutputStream out = getResponseStream();
+            out.write(server.getLoadShedder().getRejection());
+            out.flush();
+        } catch (IOException e) {
+            //The client is being turned away anyway
+        } finally {
+            server.closeClient(this);
+        }
+    }
+
     /**
      * Disconnect and dispose this client
      */
@@ -83,7 +170,8 @@ public class Client {
 
     protected void onClose() {
         try {
-            reader.close();
+            if (input != null)
+                input.close();
 
             client.close();
         } catch (IOException e) {
@@ -91,97 +179,673 @@ public class Client {
         }
     }
 
+    /**
+     * Get the number of requests this client has sent on this connection
+     * @return The number of requests handled so far
+     */
+    public int getRequestCount() {
+        return requestCount;
+    }
+
+    /**
+     * Get the time this client connected
+     * @return The time in milliseconds since the epoch
+     */
+    public long getConnectedAt() {
+        return connectedAt;
+    }
+
+    /**
+     * Get the last time anything was read from or written to this client
+     * @return The time in milliseconds since the epoch
+     */
+    public long getLastActivity() {
+        return lastActivity;
+    }
+
+    /**
+     * Get the number of bytes read from this client, including request heads
+     * @return The number of bytes read so far
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * Get the number of bytes written to this client, including response heads
+     * @return The number of bytes written so far
+     */
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * Count bytes read from the connection. Only the thread reading requests calls this
+     */
+    void onRead(long length) {
+        bytesRead += length;
+        lastActivity = System.currentTimeMillis();
+        server.getMetrics().addBytesRead(length);
+    }
+
+    void markActivity() {
+        lastActivity = System.currentTimeMillis();
+    }
+
+    /**
+     * Count bytes written to the connection. Writes never overlap, see {@link Client#awaitWriteTurn(long)}
+     */
+    void onWrite(long length) {
+        bytesWritten += length;
+        lastActivity = System.currentTimeMillis();
+        server.getMetrics().addBytesWritten(length);
+    }
+
+    /**
+     * Whether this connection should be closed by the reaper of {@link me.eddiep.tinyhttp.TinyHttpServer}. A connection is
+     * idle when nothing has been read or written for longer than {@link me.eddiep.tinyhttp.TinyHttpServer#getIdleTimeout()},
+     * unless a handler is busy with one of its requests. A write the client stopped reading from counts as idle
+     */
+    boolean isIdle(long now) {
+        int idleTimeout = server.getIdleTimeout();
+        if (idleTimeout <= 0 || !started)
+            return false;
+        if (activeRequests.get() > 0 && !writing)
+            return false;
+        return now - lastActivity > idleTimeout;
+    }
+
+    /**
+     * Close this connection because it has been idle for too long. Errors caused by the close are expected, so they are
+     * not reported
+     */
+    void closeIdle() {
+        closing = true;
+        server.closeClient(this);
+    }
+
+    /**
+     * Close this connection if it is waiting for the next request on a persistent connection and has no response left
+     * to write. A connection that has not sent its first request yet is left alone, that request may already be on its
+     * way, and so is one whose asynchronous or pipelined handlers are still running
+     */
+    void closeIfIdle() {
+        if (awaitingRequest && activeRequests.get() == 0)
+            closeIdle();
+    }
+
+    /**
+     * Decide whether this connection should stay open after responding to a request. HTTP/1.1 connections are
+     * persistent unless the client sends <code>Connection: close</code>, HTTP/1.0 connections are closed unless the client
+     * sends <code>Connection: keep-alive</code>
+     */
+    boolean shouldKeepAlive(Request request) {
+        if (!server.isKeepAliveEnabled() || server.isDraining())
+            return false;
+        if (!server.isThreaded() && server.getServerMode() == ServerMode.THREAD_PER_CONNECTION)
+            return false;
+        if (server.getMaxRequestsPerConnection() > 0 && requestCount >= server.getMaxRequestsPerConnection())
+            return false;
+        RequestHead head = request.getHead();
+        if (head.indexOf(RequestHead.TRANSFER_ENCODING) != -1)
+            return false; //We can't find the end of a chunked body, so we can't find the start of the next request
+
+        if ("HTTP/1.0".equals(request.getHttpVersion()))
+            return head.valueEqualsIgnoreCase(RequestHead.CONNECTION, "keep-alive");
+
+        return !head.valueEqualsIgnoreCase(RequestHead.CONNECTION, "close");
+    }
+
     private final Runnable HANDLE_RUNNABLE = new Runnable() {
         @Override
         public void run() {
+            thread = Thread.currentThread();
             try {
-                /*byte[] test = new byte[65536];
-                int i = client.getInputStream().read(test);
-                for (int z = 0; z < i; z++) {
-                    System.out.print((char)test[z]);
-                }*/
-
-                reader = new BufferedReader(new InputStreamReader(client.getInputStream()));
-
-                int readCount = 0;
-                String request = reader.readLine();
-                if (request == null) {
-                    server.closeClient(Client.this);
-                    return;
-                }
-                readCount += request.length();
-                String[] info = request.split(" ");
-                if (info.length != 3) {
-                    server.closeClient(Client.this);
-                    return;
-                }
+                input = new RequestInputStream(client.getInputStream(), server.getMaxHeaderSize(), Client.this);
+                RequestParser parser = new RequestParser(server.getMaxHeaderSize(), server.getMaxHeaderCount());
+
+                boolean keepAlive = true;
+                while (keepAlive) {
+                    if (requestCount > 0) {
+                        //Wait for the next request with the idle timeout, then go back to the normal timeout
+                        client.setSoTimeout(server.getKeepAliveTimeout());
+                        awaitingRequest = true;
+                        try {
+                            if (!input.awaitData())
+                                break;
+                        } catch (SocketTimeoutException e) {
+                            break;
+                        } finally {
+                            awaitingRequest = false;
+                        }
+                        client.setSoTimeout(server.getTimeout());
+                    }
 
-                Request requestInfo = new Request(info[1], HttpMethod.toHttpMethod(info[0]), info[2], Client.this, server);
+                    Request requestInfo;
+                    ContentInputStream content = null;
+                    try {
+                        RequestHead head = input.readHead(parser);
+                        if (head == null)
+                            break;
 
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    if (line.trim().equals(""))
+                        requestInfo = createRequest(head);
+
+                        long length = head.getContentLength();
+                        if (length != -1) {
+                            content = new ContentInputStream(input, length);
+
+                            if (requestInfo.getRequestMethod() == HttpMethod.POST || requestInfo.getRequestMethod() == HttpMethod.PUT)
+                                requestInfo.setContent(content, length);
+                        }
+                    } catch (HttpParseException e) {
+                        sendError(e.getStatusCode());
                         break;
-                    if (line.split(":").length > 1) {
-                        String property = line.split(":")[0].trim();
-                        String value = line.split(":")[1].trim();
+                    }
+
+                    keepAlive = shouldKeepAlive(requestInfo);
 
-                        requestInfo.addHeader(property, value);
+                    Response respond = createResponse(keepAlive);
+                    if (requestCount == 1)
+                        respond.queuedAt = queuedAt; //The first request waited as long as the connection did
+
+                    if (content != null && expectsContinue(requestInfo)) {
+                        //The client waits for this before it sends the content
+                        awaitWriteTurn(respond.sequence);
+                        OutputStream out = getResponseStream();
+                        out.write(CONTINUE);
+                        out.flush();
                     }
-                    readCount += line.length();
-                }
 
-                if ((requestInfo.getRequestMethod() == HttpMethod.POST || requestInfo.getRequestMethod() == HttpMethod.PUT) && requestInfo.hasHeader("Content-Length")) {
-                    requestInfo.setRawContentStream(reader);
+                    if (keepAlive && content == null && server.isPipeliningEnabled() && input.buffered() > 0) {
+                        //The client already sent its next request, so let a worker handle this one while we parse the next one
+                        awaitPipelineSpace();
+                        try {
+                            server.getHandlerExecutor().execute(new PipelinedRequest(requestInfo, respond));
+                        } catch (RejectedExecutionException e) {
+                            rejectPipelined(requestInfo, respond);
+                        }
+                    } else {
+                        CompletableFuture<Void> pending = handleRequest(requestInfo, respond);
+
+                        if (content != null) {
+                            //An asynchronous handler may still be reading the content
+                            if (pending != null)
+                                pending.join();
+                            content.drain();
+                        }
+                    }
+
+                    if (closing)
+                        break;
                 }
 
-                String encoding = "utf-8";
-                if (requestInfo.hasHeader("Accept-Charset"))
-                    encoding = requestInfo.getHeaderValue("Accept-Charset");
+                awaitWriteTurn(nextSequence);
+            } catch (SocketTimeoutException e) {
+                //The client took too long to send its request
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException e) {
+                if (!closing)
+                    e.printStackTrace();
+            } finally {
+                server.closeClient(Client.this);
+            }
+        }
+    };
 
-                Response respond = new Response(Client.this);
+    /**
+     * Whether the client sent <code>Expect: 100-continue</code> and is waiting for the interim response before sending
+     * the enclosed content
+     */
+    boolean expectsContinue(Request request) {
+        return !"HTTP/1.0".equals(request.getHttpVersion()) &&
+                request.getHead().valueEqualsIgnoreCase(RequestHead.EXPECT, "100-continue");
+    }
 
-                respond = server.invokeForRequest(requestInfo, respond);
+    /**
+     * Create the {@link Request} for a request head that was just read from this connection
+     */
+    Request createRequest(RequestHead head) {
+        requestCount++;
+        return new Request(head, this, server);
+    }
 
-                if (respond instanceof StreamResponse && ((StreamResponse)respond).getOutputStream() != null) {
-                    ((StreamResponse)respond).getOutputStream().flush();
-                } else if (respond.streamResponse != null && respond.streamResponse.getOutputStream() != null) {
-                    respond.streamResponse.getOutputStream().flush();
-                } else {
-                    if (!respond.hasHeader("Content-Type"))
-                        respond.addHeader("Content-Type", "text/html; charset=UTF-8");
+    /**
+     * Answer a request that could not be parsed, once every earlier response has been written. The connection is
+     * closed afterwards
+     */
+    private void sendError(StatusCode code) throws IOException, InterruptedException {
+        Response respond = createResponse(false);
+        respond.setStatusCode(code);
+        awaitWriteTurn(respond.sequence);
+        closing = true;
+        try {
+            writeResponse(respond);
+        } finally {
+            finishWrite(respond.sequence);
+        }
+    }
 
-                    if (respond.rawContents != null)
-                        respond.addHeader("Content-Length", "" + respond.rawContents.length);
-                    else
-                        respond.addHeader("Content-Length", "" + respond.getContent().length());
+    /**
+     * Create the response for the next request on this connection
+     * @param keepAlive Whether or not this connection will stay open after the response
+     */
+    Response createResponse(boolean keepAlive) {
+        Response respond = new Response(this);
+        respond.sequence = nextSequence++;
+        respond.queuedAt = System.nanoTime();
+        if (keepAlive) {
+            respond.addHeader("Connection", "keep-alive");
+            respond.addHeader("Keep-Alive", "timeout=" + (server.getKeepAliveTimeout() / 1000));
+        } else {
+            respond.addHeader("Connection", "close");
+        }
+        return respond;
+    }
 
-                    String raw = "HTTP/1.1 " + respond.getStatusCode().getCode() + " " + respond.getStatusCode().getName() + "\r\n";
-                    for (String property : respond.getHeaders().keySet()) {
-                        raw += property + ": " + respond.getHeaders().get(property) + "\r\n";
-                    }
-                    raw += "\r\n";
+    /**
+     * Whether this connection will be closed once the responses already in progress have been written
+     */
+    boolean isClosing() {
+        return closing;
+    }
 
-                    if (respond.rawContents != null) {
-                        byte[] rawHeaderData = raw.getBytes(Charset.forName("ASCII"));
+    /**
+     * Close this connection once the response being written is done, because the client can't tell where that
+     * response ends
+     */
+    void closeAfterResponse() throws IOException {
+        closing = true;
+        if (!client.isClosed() && !client.isInputShutdown())
+            client.shutdownInput(); //Wake up the request loop so it stops reading
+    }
 
-                        client.getOutputStream().write(rawHeaderData);
-                        client.getOutputStream().write(respond.rawContents);
-                    } else {
-                        byte[] rawHeaderData = raw.getBytes(Charset.forName("ASCII"));
-                        byte[] rawContent = respond.getContent().getBytes(Charset.forName(encoding));
+    /**
+     * Get the stream responses to this client are written to
+     */
+    OutputStream getResponseStream() throws IOException {
+        if (responseStream == null)
+            responseStream = new ConnectionOutputStream(client.getOutputStream());
+        return responseStream;
+    }
 
-                        client.getOutputStream().write(rawHeaderData);
-                        client.getOutputStream().write(rawContent);
-                    }
+    /**
+     * Mark this client as started by something other than {@link Client#start()}
+     */
+    void markStarted(Thread thread) {
+        this.started = true;
+        this.thread = thread;
+    }
+
+    /**
+     * Invoke the server for a request and write the response once every earlier response on this connection has been written. <br></br>
+     * A handler that returns a {@link java.util.concurrent.CompletionStage} does not hold up the calling thread, its
+     * response is written from {@link me.eddiep.tinyhttp.TinyHttpServer#getHandlerExecutor()} once the stage completes
+     * @return null if the response has been written, otherwise a future that completes once it has been
+     */
+    CompletableFuture<Void> handleRequest(final Request request, final Response respond) throws IOException {
+        respond.chunkingSupported = !"HTTP/1.0".equals(request.getHttpVersion());
+        activeRequests.incrementAndGet();
+        final boolean admitted = server.getLoadShedder().admit(System.nanoTime() - respond.queuedAt);
+
+        CompletableFuture<Response> result = null;
+        boolean invoked = false;
+        try {
+            if (admitted)
+                result = server.invokeForRequestAsync(request, respond).toCompletableFuture();
+            invoked = true;
+        } finally {
+            if (!invoked)
+                finishRequest(request, respond, admitted);
+        }
 
-                    client.getOutputStream().flush();
+        if (result == null || result.isDone()) {
+            writeHandled(request, respond, result);
+            return null;
+        }
+
+        final CompletableFuture<Response> handled = result;
+        final CompletableFuture<Void> done = new CompletableFuture<Void>();
+        handled.whenCompleteAsync(new BiConsumer<Response, Throwable>() {
+            @Override
+            public void accept(Response response, Throwable error) {
+                try {
+                    writeHandled(request, respond, handled);
+                } catch (IOException e) {
+                    if (!closing)
+                        e.printStackTrace();
+                } finally {
+                    done.complete(null);
                 }
+            }
+        }, writeExecutor);
+        return done;
+    }
+
+    /**
+     * Write the response to a request once every earlier response has been written
+     * @param respond The response the request was handled with
+     * @param result The result of {@link me.eddiep.tinyhttp.TinyHttpServer#invokeForRequestAsync(Request, Response)},
+     *               or null if the request was shed
+     */
+    private void writeHandled(Request request, Response respond, CompletableFuture<Response> result) throws IOException {
+        Response response = respond;
+        try {
+            if (result == null) {
+                shed(respond);
+                return;
+            }
+
+            try {
+                response = result.join();
+            } catch (CompletionException e) {
+                writeTimeout(respond);
+                return;
+            }
+
+            awaitWriteTurn(response.sequence);
+            if (closing)
+                return;
+
+            //The server started draining while this request was handled
+            if (server.isDraining() && !"close".equalsIgnoreCase(response.getHeaders().get("Connection"))) {
+                response.removeHeader("Keep-Alive");
+                response.addHeader("Connection", "close");
+            }
+
+            //The handler may have asked for the connection to be closed
+            if ("close".equalsIgnoreCase(response.getHeaders().get("Connection")))
+                closing = true;
+
+            writeResponse(response);
+
+            if (closing && !client.isClosed() && !client.isInputShutdown())
+                client.shutdownInput(); //Wake up the request loop so it stops reading
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            closing = true;
+        } catch (IOException e) {
+            closing = true;
+            throw e;
+        } finally {
+            if (response != respond)
+                response.discard();
+            finishRequest(request, respond, result != null);
+        }
+    }
+
+    private void finishRequest(Request request, Response respond, boolean admitted) {
+        if (admitted)
+            server.getLoadShedder().release();
+        //Whatever was not written, because the request was shed, timed out or the connection failed, is never sent now
+        respond.discard();
+        finishWrite(respond.sequence);
+        request.dispose();
+        activeRequests.decrementAndGet();
+    }
+
+    /**
+     * Answer a request whose handler did not complete in time, once every earlier response has been written. The
+     * handler may still be filling in its response, so a new one is sent and the connection is closed afterwards
+     */
+    private void writeTimeout(Response respond) throws IOException, InterruptedException {
+        awaitWriteTurn(respond.sequence);
+        if (closing)
+            return;
+
+        closing = true;
+        Response timeout = new Response(this);
+        timeout.sequence = respond.sequence;
+        timeout.setStatusCode(StatusCode.ServiceUnavailable);
+        timeout.addHeader("Connection", "close");
+        writeResponse(timeout);
+        if (!client.isClosed())
+            client.shutdownInput(); //Wake up the request loop so it stops reading
+    }
+
+    /**
+     * Answer a request the {@link me.eddiep.tinyhttp.LoadShedder} turned away, once every earlier response has been written.
+     * The connection is closed afterwards
+     */
+    private void shed(Response respond) throws IOException, InterruptedException {
+        awaitWriteTurn(respond.sequence);
+        if (closing)
+            return;
+
+        closing = true;
+        OutputStream out = getResponseStream();
+        out.write(server.getLoadShedder().getRejection());
+        out.flush();
+        if (!client.isClosed())
+            client.shutdownInput(); //Wake up the request loop so it stops reading
+    }
+
+    /**
+     * Answer a pipelined request {@link me.eddiep.tinyhttp.TinyHttpServer#getHandlerExecutor()} had no room for, the
+     * same way the {@link me.eddiep.tinyhttp.LoadShedder} answers requests it turns away
+     */
+    private void rejectPipelined(Request request, Response respond) throws IOException, InterruptedException {
+        server.getLoadShedder().countShed();
+        try {
+            shed(respond);
+        } finally {
+            finishWrite(respond.sequence);
+            request.dispose();
+        }
+    }
+
+    /**
+     * Block until it is this response's turn to be written to the client. Responses are always written in the same order
+     * their requests were received, even when pipelined requests are handled at the same time
+     * @param sequence The sequence number of the response
+     * @throws InterruptedException If the thread was interrupted while waiting
+     */
+    void awaitWriteTurn(long sequence) throws InterruptedException {
+        writeLock.lock();
+        try {
+            while (writeSequence < sequence) {
+                written.await();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Wait until every response handed out so far was written
+     * @throws InterruptedIOException If the thread was interrupted while waiting
+     */
+    void awaitResponses() throws InterruptedIOException {
+        try {
+            awaitWriteTurn(nextSequence);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the responses to be written");
+        }
+    }
+
+    private void finishWrite(long sequence) {
+        writeLock.lock();
+        try {
+            if (writeSequence <= sequence)
+                writeSequence = sequence + 1;
+            written.signalAll();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void awaitPipelineSpace() throws InterruptedException {
+        writeLock.lock();
+        try {
+            while (nextSequence - writeSequence > server.getMaxPipelinedRequests()) {
+                written.await();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private class PipelinedRequest implements Runnable {
+        private Request request;
+        private Response respond;
+
+        PipelinedRequest(Request request, Response respond) {
+            this.request = request;
+            this.respond = respond;
+        }
+
+        @Override
+        public void run() {
+            try {
+                handleRequest(request, respond);
             } catch (IOException e) {
                 e.printStackTrace();
+                try {
+                    client.close();
+                } catch (IOException ignored) { }
+            }
+        }
+    }
+
+    void writeResponse(Response respond) throws IOException {
+        if (respond instanceof StreamResponse && ((StreamResponse)respond).getOutputStream() != null) {
+            ((StreamResponse)respond).finishStream();
+        } else if (respond.streamResponse != null && respond.streamResponse.getOutputStream() != null) {
+            respond.streamResponse.finishStream();
+        } else if (respond.fileContents != null) {
+            FileChannel file = respond.fileContents;
+            try {
+                if (!respond.hasHeader("Content-Type"))
+                    respond.addHeader("Content-Type", "application/octet-stream");
+                respond.addHeader("Content-Length", "" + respond.fileLength);
+
+                OutputStream out = getResponseStream();
+                HeaderWriter.write(respond, out);
+                if (respond.fileRanges == null) {
+                    out.flush();
+                    writeFile(file, respond.filePosition, respond.fileLength);
+                } else {
+                    for (int i = 0; i < respond.fileRanges.length; i++) {
+                        out.write(respond.filePartHeaders[i]);
+                        out.flush();
+                        writeFile(file, respond.fileRanges[i].getStart(), respond.fileRanges[i].getLength());
+                    }
+                    out.write(respond.fileClosing);
+                    out.flush();
+                }
             } finally {
-                server.closeClient(Client.this);
+                respond.fileContents = null;
+                file.close();
+            }
+        } else if (respond.getStatusCode() == StatusCode.NotModified || respond.getStatusCode() == StatusCode.NoContent) {
+            //These responses never have a body
+            OutputStream out = getResponseStream();
+            HeaderWriter.write(respond, out);
+            out.flush();
+        } else {
+            if (!respond.hasHeader("Content-Type"))
+                respond.addHeader("Content-Type", "text/html; charset=UTF-8");
+
+            OutputStream out = getResponseStream();
+            if (respond.rawContents != null) {
+                respond.addHeader("Content-Length", "" + respond.rawContents.length);
+                HeaderWriter.write(respond, out, respond.rawContents, 0, respond.rawContents.length);
+            } else if (respond.body == null) {
+                respond.addHeader("Content-Length", "0");
+                HeaderWriter.write(respond, out);
+            } else if (isUtf8(respond.getHeaders().get("Content-Type"))) {
+                //The body is already UTF-8, so it is written straight from its buffer
+                ResponseBuffer body = respond.body;
+                respond.addHeader("Content-Length", "" + body.size());
+                respond.body = null;
+                try {
+                    HeaderWriter.write(respond, out, body.array(), 0, body.size());
+                } finally {
+                    body.release();
+                }
+            } else {
+                //The handler asked for another charset, so the body is encoded again
+                Charset charset = MimeTypes.getCharset(respond.getHeaders().get("Content-Type"), ResponseBuffer.UTF_8);
+                byte[] rawContent = respond.getContent().getBytes(charset);
+                respond.addHeader("Content-Length", "" + rawContent.length);
+                HeaderWriter.write(respond, out, rawContent, 0, rawContent.length);
             }
+            out.flush();
         }
-    };
+    }
+
+    private static boolean isUtf8(String contentType) {
+        return MimeTypes.getCharset(contentType, ResponseBuffer.UTF_8).equals(ResponseBuffer.UTF_8);
+    }
+
+    /**
+     * Send part of a file to this client. When the socket has a channel this uses
+     * {@link java.nio.channels.FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}, so the operating
+     * system copies the file to the socket without it passing through the heap
+     * @param file The file to send
+     * @param position The position in the file to start at
+     * @param length The number of bytes to send
+     */
+    void writeFile(FileChannel file, long position, long length) throws IOException {
+        WritableByteChannel target = client.getChannel();
+        if (target == null) {
+            //Writes to the response stream are counted by the stream itself
+            target = Channels.newChannel(getResponseStream());
+        }
+        boolean counted = target == client.getChannel();
+
+        long end = position + length;
+        writing = true;
+        try {
+            while (position < end) {
+                //Large files are sent a piece at a time so the reaper can tell a slow client from one that stopped reading
+                long sent = file.transferTo(position, Math.min(end - position, TRANSFER_CHUNK), target);
+                if (sent <= 0 && position >= file.size())
+                    throw new EOFException("The file ended before the whole response was sent!");
+                position += sent;
+                if (counted && sent > 0)
+                    onWrite(sent);
+            }
+        } finally {
+            writing = false;
+        }
+    }
+
+    /**
+     * Counts the bytes written to a blocking connection
+     */
+    private class ConnectionOutputStream extends OutputStream {
+        private final OutputStream out;
+
+        ConnectionOutputStream(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            writing = true;
+            try {
+                out.write(b, off, len);
+            } finally {
+                writing = false;
+            }
+            onWrite(len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
 }
@@ -0,0 +1,149 @@
+package me.eddiep.tinyhttp.net;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The set of connections a {@link me.eddiep.tinyhttp.TinyHttpServer} currently has open. Connections are added and
+ * removed in constant time from any thread without a global lock. <br></br>
+ * {@link ConnectionRegistry#snapshot()} builds a list of the connections only when the set changed since the last
+ * snapshot, so polling it is cheap. <br></br>
+ * A reaper thread can be started to close connections that have been idle for longer than
+ * {@link me.eddiep.tinyhttp.TinyHttpServer#getIdleTimeout()}
+ */
+public final class ConnectionRegistry {
+    private static final long REAP_INTERVAL = 1000;
+    private static final long DRAIN_INTERVAL = 50;
+
+    private final Set<Client> clients = Collections.newSetFromMap(new ConcurrentHashMap<Client, Boolean>());
+    private final AtomicInteger version = new AtomicInteger();
+    private volatile Snapshot snapshot;
+    private volatile Thread reaper;
+
+    /**
+     * Add a connection
+     * @param client The connection to add
+     */
+    public void register(Client client) {
+        if (clients.add(client))
+            version.incrementAndGet();
+    }
+
+    /**
+     * Remove a connection. Removing a connection that is not registered does nothing
+     * @param client The connection to remove
+     */
+    public void unregister(Client client) {
+        if (clients.remove(client))
+            version.incrementAndGet();
+    }
+
+    /**
+     * Get the number of open connections
+     * @return The number of connections
+     */
+    public int size() {
+        return clients.size();
+    }
+
+    /**
+     * Get an unmodifiable list of the open connections. The list does not change when connections are added or removed
+     * afterwards, and the same list is returned until they are
+     * @return The open connections
+     */
+    public List<Client> snapshot() {
+        //Read the version first, so a change made while copying makes the next call copy again
+        int current = version.get();
+        Snapshot last = snapshot;
+        if (last != null && last.version == current)
+            return last.clients;
+
+        List<Client> copy = Collections.unmodifiableList(new ArrayList<Client>(clients));
+        snapshot = new Snapshot(current, copy);
+        return copy;
+    }
+
+    /**
+     * Start a daemon thread that closes idle connections once a second
+     * @param name The name of the thread
+     */
+    public synchronized void startReaper(String name) {
+        if (reaper != null)
+            throw new IllegalStateException("The reaper is already running!");
+
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                reap();
+            }
+        }, name);
+        thread.setDaemon(true);
+        reaper = thread;
+        thread.start();
+    }
+
+    /**
+     * Stop the reaper thread, if it is running
+     */
+    public synchronized void stopReaper() {
+        if (reaper != null) {
+            reaper.interrupt();
+            reaper = null;
+        }
+    }
+
+    /**
+     * Wait for every connection to close. Persistent connections are closed as soon as they are waiting for their next
+     * request, the others are left to finish the request they are handling. Whatever is still open at the deadline is closed
+     * @param deadline When to stop waiting, in {@link System#nanoTime()}
+     * @throws InterruptedException If the thread was interrupted while waiting
+     */
+    public void drain(long deadline) throws InterruptedException {
+        long remaining;
+        while (!clients.isEmpty() && (remaining = deadline - System.nanoTime()) > 0) {
+            for (Client client : clients) {
+                client.closeIfIdle();
+            }
+            Thread.sleep(Math.min(DRAIN_INTERVAL, Math.max(1, remaining / 1000000)));
+        }
+
+        for (Client client : clients) {
+            client.closeIdle();
+        }
+    }
+
+    private void reap() {
+        Thread self = Thread.currentThread();
+        while (reaper == self) {
+            try {
+                Thread.sleep(REAP_INTERVAL);
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            long now = System.currentTimeMillis();
+            for (Client client : clients) {
+                try {
+                    if (client.isIdle(now))
+                        client.closeIdle();
+                } catch (Throwable t) {
+                    t.printStackTrace();
+                }
+            }
+        }
+    }
+
+    private static final class Snapshot {
+        private final int version;
+        private final List<Client> clients;
+
+        Snapshot(int version, List<Client> clients) {
+            this.version = version;
+            this.clients = clients;
+        }
+    }
+}
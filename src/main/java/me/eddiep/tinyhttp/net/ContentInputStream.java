@@ -0,0 +1,85 @@
+package me.eddiep.tinyhttp.net;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An {@link java.io.InputStream} that only allows the enclosed content of a single request to be read, so the next
+ * request on a persistent connection is never consumed by the handler of the current one
+ */
+class ContentInputStream extends InputStream {
+    private InputStream in;
+    private long remaining;
+
+    ContentInputStream(InputStream in, long length) {
+        this.in = in;
+        this.remaining = length;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (remaining <= 0)
+            return -1;
+
+        int read = in.read();
+        if (read == -1) {
+            remaining = 0;
+            return -1;
+        }
+        remaining--;
+        return read;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (remaining <= 0)
+            return -1;
+        if (len == 0)
+            return 0;
+
+        int read = in.read(b, off, (int) Math.min(len, remaining));
+        if (read == -1) {
+            remaining = 0;
+            return -1;
+        }
+        remaining -= read;
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = in.skip(Math.min(n, remaining));
+        if (skipped > 0)
+            remaining -= skipped;
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return (int) Math.min(in.available(), remaining);
+    }
+
+    /**
+     * Skip whatever content the handler did not read
+     * @throws IOException If there was an error reading the content
+     */
+    void drain() throws IOException {
+        while (remaining > 0) {
+            long skipped = in.skip(remaining);
+            if (skipped <= 0) {
+                if (in.read() == -1)
+                    break;
+                skipped = 1;
+            }
+            remaining -= skipped;
+        }
+    }
+
+    /**
+     * Closing the content does not close the connection, it only skips the rest of the content
+     */
+    @Override
+    public void close() throws IOException {
+        drain();
+    }
+}
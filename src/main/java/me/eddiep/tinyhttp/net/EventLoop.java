@@ -0,0 +1,141 @@
+package me.eddiep.tinyhttp.net;
+
+import me.eddiep.tinyhttp.TinyHttpServer;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A single event loop thread. All reads, request parsing and selector updates for the connections registered to this
+ * loop happen on this thread, other threads hand it work with {@link EventLoop#execute(Runnable)}
+ */
+class EventLoop implements Runnable {
+    private static final long REAP_INTERVAL = 1000;
+
+    private TinyHttpServer server;
+    private Selector selector;
+    private Thread thread;
+    private volatile boolean running = true;
+    private ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+    private long lastReap;
+
+    EventLoop(TinyHttpServer server, String name) throws IOException {
+        this.server = server;
+        this.selector = Selector.open();
+        this.thread = new Thread(this, name);
+        this.thread.setDaemon(true);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    TinyHttpServer getServer() {
+        return server;
+    }
+
+    Thread getThread() {
+        return thread;
+    }
+
+    boolean inLoop() {
+        return Thread.currentThread() == thread;
+    }
+
+    /**
+     * Run a task on this event loop
+     */
+    void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    void register(final ChannelClient client) {
+        execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    client.setKey(client.getChannel().register(selector, SelectionKey.OP_READ, client));
+                } catch (ClosedChannelException e) {
+                    client.closeConnection();
+                }
+            }
+        });
+    }
+
+    void shutdown() {
+        running = false;
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                selector.select(REAP_INTERVAL);
+
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    try {
+                        task.run();
+                    } catch (Throwable t) {
+                        t.printStackTrace();
+                    }
+                }
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+
+                    ChannelClient client = (ChannelClient) key.attachment();
+                    try {
+                        if (key.isValid() && key.isWritable())
+                            client.onWritable();
+                        if (key.isValid() && key.isReadable())
+                            client.onReadable();
+                    } catch (IOException e) {
+                        client.closeConnection();
+                    } catch (Throwable t) {
+                        t.printStackTrace();
+                        client.closeConnection();
+                    }
+                }
+
+                long now = System.currentTimeMillis();
+                if (now - lastReap >= REAP_INTERVAL) {
+                    lastReap = now;
+                    reapIdle(now);
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            for (SelectionKey key : new ArrayList<SelectionKey>(selector.keys())) {
+                ((ChannelClient) key.attachment()).closeConnection();
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void reapIdle(long now) {
+        ArrayList<ChannelClient> idle = new ArrayList<ChannelClient>();
+        for (SelectionKey key : selector.keys()) {
+            ChannelClient client = (ChannelClient) key.attachment();
+            if (client.isIdle(now))
+                idle.add(client);
+        }
+        for (ChannelClient client : idle) {
+            client.closeConnection();
+        }
+    }
+}
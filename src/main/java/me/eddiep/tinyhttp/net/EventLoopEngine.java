@@ -0,0 +1,81 @@
+package me.eddiep.tinyhttp.net;
+
+import me.eddiep.tinyhttp.TinyHttpServer;
+import me.eddiep.tinyhttp.WorkerPool;
+
+import java.io.IOException;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the event loops used by {@link me.eddiep.tinyhttp.ServerMode#EVENT_LOOP}. Accepted connections are spread
+ * across the event loops round-robin, and each event loop reads, parses and writes its connections with non-blocking I/O
+ */
+public class EventLoopEngine {
+    private EventLoop[] loops;
+    private AtomicInteger next = new AtomicInteger();
+
+    /**
+     * Create and start the event loops for a server
+     * @param server The server the event loops are for
+     * @param threads The number of event loop threads to run
+     * @throws IOException If there was an error opening a {@link java.nio.channels.Selector}
+     */
+    public EventLoopEngine(TinyHttpServer server, int threads) throws IOException {
+        if (threads < 1)
+            throw new IllegalArgumentException("At least one event loop thread is required!");
+
+        loops = new EventLoop[threads];
+        for (int i = 0; i < threads; i++) {
+            loops[i] = new EventLoop(server, "tinyhttp-eventloop-" + i);
+        }
+        for (EventLoop loop : loops) {
+            loop.start();
+        }
+    }
+
+    /**
+     * Create a client for a newly accepted connection. The client is not read from until it is passed to
+     * {@link EventLoopEngine#register(Client)}
+     * @param channel The accepted connection
+     * @return The client for this connection
+     * @throws IOException If the connection could not be configured
+     */
+    public Client createClient(SocketChannel channel) throws IOException {
+        return createClient(channel, null);
+    }
+
+    /**
+     * Create a client for a newly accepted connection whose requests are handled on a specific {@link me.eddiep.tinyhttp.WorkerPool}.
+     * The client is not read from until it is passed to {@link EventLoopEngine#register(Client)}
+     * @param channel The accepted connection
+     * @param workerPool The pool to handle requests on, or null for {@link me.eddiep.tinyhttp.TinyHttpServer#getWorkerPool()}
+     * @return The client for this connection
+     * @throws IOException If the connection could not be configured
+     */
+    public Client createClient(SocketChannel channel, WorkerPool workerPool) throws IOException {
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+
+        EventLoop loop = loops[(next.getAndIncrement() & Integer.MAX_VALUE) % loops.length];
+        return new ChannelClient(channel, loop, workerPool);
+    }
+
+    /**
+     * Start reading requests from a client created with {@link EventLoopEngine#createClient(java.nio.channels.SocketChannel)}
+     * @param client The client to start reading from
+     */
+    public void register(Client client) {
+        ChannelClient channelClient = (ChannelClient) client;
+        channelClient.getLoop().register(channelClient);
+    }
+
+    /**
+     * Stop all event loops. Any connection still open is closed
+     */
+    public void shutdown() {
+        for (EventLoop loop : loops) {
+            loop.shutdown();
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package me.eddiep.tinyhttp.net;
+
+import me.eddiep.tinyhttp.net.http.HttpDate;
+import me.eddiep.tinyhttp.net.http.StatusCode;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes the status line and headers of a {@link Response} as bytes. Status lines and the names of common headers are
+ * encoded once, values are copied into a pooled {@link ResponseBuffer} one byte per character, and every line ends
+ * with CRLF. <br></br>
+ * Responses get a <code>Date</code> and <code>Server</code> header unless the handler set its own. The date is shared
+ * by every response written within the same second
+ */
+final class HeaderWriter {
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    /**
+     * The largest content that is copied behind the headers so both go out in one write
+     */
+    private static final int COALESCE_LENGTH = 4096;
+
+    private static final byte[] CRLF = { '\r', '\n' };
+    private static final byte[] SEPARATOR = { ':', ' ' };
+    private static final byte[] SERVER_LINE = encode("Server: TinyHttpServer/1.0 (" + System.getProperty("os.name") + ")\r\n");
+    private static final byte[][] STATUS_LINES;
+    private static final HashMap<String, byte[]> NAMES = new HashMap<String, byte[]>();
+
+    private static volatile DateLine dateLine;
+
+    static {
+        StatusCode[] codes = StatusCode.values();
+        STATUS_LINES = new byte[codes.length][];
+        for (StatusCode code : codes) {
+            STATUS_LINES[code.ordinal()] = encode("HTTP/1.1 " + code.getCode() + " " + code.getName() + "\r\n");
+        }
+
+        String[] common = {
+                "Content-Type", "Content-Length", "Connection", "Keep-Alive", "Transfer-Encoding", "Trailer",
+                "Accept-Ranges", "Content-Range", "ETag", "Last-Modified", "Cache-Control", "Location", "Retry-After",
+                "Set-Cookie", "Content-Encoding", "Vary"
+        };
+        for (String name : common) {
+            NAMES.put(name, encode(name + ": "));
+        }
+    }
+
+    private HeaderWriter() { }
+
+    /**
+     * Write the status line and headers of a response
+     * @param respond The response to write the head of
+     * @param out The stream to write to
+     */
+    static void write(Response respond, OutputStream out) throws IOException {
+        ResponseBuffer head = encodeHead(respond);
+        try {
+            head.writeTo(out);
+        } finally {
+            head.release();
+        }
+    }
+
+    /**
+     * Write the status line and headers of a response followed by its content. Small content is copied behind the
+     * headers so the whole response is handed to the socket at once
+     * @param respond The response to write the head of
+     * @param out The stream to write to
+     * @param content The array holding the content
+     * @param offset The offset of the content in the array
+     * @param length The length of the content
+     */
+    static void write(Response respond, OutputStream out, byte[] content, int offset, int length) throws IOException {
+        ResponseBuffer head = encodeHead(respond);
+        try {
+            if (length <= COALESCE_LENGTH) {
+                head.write(content, offset, length);
+                head.writeTo(out);
+            } else {
+                head.writeTo(out);
+                out.write(content, offset, length);
+            }
+        } finally {
+            head.release();
+        }
+    }
+
+    private static ResponseBuffer encodeHead(Response respond) {
+        ResponseBuffer head = new ResponseBuffer();
+        byte[] status = STATUS_LINES[respond.getStatusCode().ordinal()];
+        head.write(status, 0, status.length);
+
+        Map<String, String> headers = respond.getHeaders();
+        if (!headers.containsKey("Date")) {
+            byte[] date = currentDateLine();
+            head.write(date, 0, date.length);
+        }
+        if (!headers.containsKey("Server"))
+            head.write(SERVER_LINE, 0, SERVER_LINE.length);
+
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            byte[] name = NAMES.get(header.getKey());
+            if (name != null) {
+                head.write(name, 0, name.length);
+            } else {
+                head.appendLatin1(header.getKey());
+                head.write(SEPARATOR, 0, SEPARATOR.length);
+            }
+            head.appendLatin1(header.getValue());
+            head.write(CRLF, 0, CRLF.length);
+        }
+        head.write(CRLF, 0, CRLF.length);
+        return head;
+    }
+
+    private static byte[] currentDateLine() {
+        String date = HttpDate.current();
+        DateLine line = dateLine;
+        //HttpDate hands out the same String for the whole second, so the encoded line only changes when it does
+        if (line == null || line.date != date) {
+            line = new DateLine(date, encode("Date: " + date + "\r\n"));
+            dateLine = line;
+        }
+        return line.bytes;
+    }
+
+    private static byte[] encode(String text) {
+        return text.getBytes(ASCII);
+    }
+
+    private static final class DateLine {
+        private final String date;
+        private final byte[] bytes;
+
+        DateLine(String date, byte[] bytes) {
+            this.date = date;
+            this.bytes = bytes;
+        }
+    }
+}
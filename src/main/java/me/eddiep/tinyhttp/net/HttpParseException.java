@@ -0,0 +1,28 @@
+package me.eddiep.tinyhttp.net;
+
+import me.eddiep.tinyhttp.net.http.StatusCode;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a request can't be parsed. The {@link me.eddiep.tinyhttp.net.http.StatusCode} says how the client
+ * should be answered before the connection is closed
+ */
+class HttpParseException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    private final StatusCode statusCode;
+
+    HttpParseException(StatusCode statusCode, String message) {
+        super(message);
+        this.statusCode = statusCode;
+    }
+
+    /**
+     * Get the status code the client should be answered with
+     * @return The {@link me.eddiep.tinyhttp.net.http.StatusCode} for this error
+     */
+    StatusCode getStatusCode() {
+        return statusCode;
+    }
+}
@@ -1,15 +1,22 @@
 package me.eddiep.tinyhttp.net;
 
 import me.eddiep.tinyhttp.TinyHttpServer;
+import me.eddiep.tinyhttp.net.http.ByteRange;
+import me.eddiep.tinyhttp.net.http.FileCache;
+import me.eddiep.tinyhttp.net.http.HttpDate;
 import me.eddiep.tinyhttp.net.http.HttpMethod;
 import me.eddiep.tinyhttp.net.http.MimeTypes;
+import me.eddiep.tinyhttp.net.http.MultipartReader;
 import me.eddiep.tinyhttp.net.http.StatusCode;
 
 import java.io.*;
 import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.Charset;
 import java.nio.file.AccessDeniedException;
-import java.util.HashMap;
+import java.util.List;
 
 public class Request {
     private Client client;
@@ -17,15 +24,19 @@ public class Request {
     private HttpMethod method;
     private String httpVersion;
     private TinyHttpServer server;
-    private HashMap<String, String> headers = new HashMap<String, String>();
+    private RequestHead head;
+    private InputStream content;
+    private long contentLength;
     private BufferedReader contentStream;
+    private MultipartReader multipart;
 
-    Request(String requestPath, HttpMethod method, String httpVersion, Client client, TinyHttpServer server) {
-        this.requestPath = requestPath;
-        this.method = method;
-        this.httpVersion = httpVersion;
+    Request(RequestHead head, Client client, TinyHttpServer server) {
+        this.head = head;
+        this.requestPath = head.getTarget();
+        this.method = head.getMethod();
+        this.httpVersion = head.getVersion();
         this.client = client;
-        this.server =server;
+        this.server = server;
     }
 
     /**
@@ -79,93 +90,249 @@ public class Request {
         return requestPath;
     }
 
-    void addHeader(String property, String value) {
-        if (!headers.containsKey(property))
-            headers.put(property, value);
+    RequestHead getHead() {
+        return head;
     }
 
-    void setRawContentStream(BufferedReader stream) {
-        this.contentStream = stream;
+    void setContent(InputStream content, long length) {
+        this.content = content;
+        this.contentLength = length;
     }
 
     /**
-     * Get the {@link java.io.InputStream} used for reading the enclosed content of this request.
+     * Get the length of the enclosed content of this request, as given by the <code>Content-Length</code> header
+     * @return The length of the enclosed content in bytes, or -1 if no content exists
+     */
+    public long getContentLength() {
+        return content == null ? -1 : contentLength;
+    }
+
+    /**
+     * Get the {@link java.io.InputStream} used for reading the enclosed content of this request. The stream returns the
+     * content exactly as it was sent and ends after <code>Content-Length</code> bytes, whatever the handler does not read is
+     * skipped once the handler returns. <br></br>
      * If no content is enclosed in this request, then this method will return null
      * @return The {@link java.io.InputStream} used for reading the enclosed content or null if no content exists
      */
+    public InputStream getInputStream() {
+        return content;
+    }
+
+    /**
+     * Get a {@link java.io.BufferedReader} for reading the enclosed content of this request as text. Every byte is read as
+     * one ISO-8859-1 character, use {@link Request#getInputStream()} for binary content. <br></br>
+     * If no content is enclosed in this request, then this method will return null
+     * @return The {@link java.io.BufferedReader} used for reading the enclosed content or null if no content exists
+     */
     public BufferedReader getContentStream() {
+        if (contentStream == null && content != null)
+            contentStream = new BufferedReader(new InputStreamReader(content, Charset.forName("ISO-8859-1")));
         return contentStream;
     }
 
     /**
-     * Read the enclosed content of this request as a {@link java.lang.String}
+     * Read as much of the enclosed content as fits into a {@link java.nio.ByteBuffer}. This blocks until at least one
+     * byte was read or the content has ended
+     * @param dst The buffer to read the content into
+     * @return The number of bytes read, or -1 if no content is left or no content exists
+     * @throws IOException If there was an error reading the content
+     */
+    public int readContent(ByteBuffer dst) throws IOException {
+        if (content == null)
+            return -1;
+        if (!dst.hasRemaining())
+            return 0;
+
+        if (dst.hasArray()) {
+            int read = content.read(dst.array(), dst.arrayOffset() + dst.position(), dst.remaining());
+            if (read > 0)
+                dst.position(dst.position() + read);
+            return read;
+        }
+
+        byte[] data = new byte[Math.min(dst.remaining(), server.getBufferDataLength())];
+        int read = content.read(data, 0, data.length);
+        if (read > 0)
+            dst.put(data, 0, read);
+        return read;
+    }
+
+    /**
+     * Write the rest of the enclosed content to a {@link java.nio.channels.WritableByteChannel}, for example to save an upload
+     * to a {@link java.nio.channels.FileChannel} without holding it in memory
+     * @param target The channel to write the content to
+     * @return The number of bytes written
+     * @throws IOException If there was an error reading the content or writing to the channel
+     */
+    public long transferContentTo(WritableByteChannel target) throws IOException {
+        if (content == null)
+            return 0;
+
+        ByteBuffer buffer = ByteBuffer.allocate(Math.max(server.getBufferDataLength(), 8192));
+        long total = 0;
+        while (readContent(buffer) != -1) {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                total += target.write(buffer);
+            }
+            buffer.clear();
+        }
+        return total;
+    }
+
+    /**
+     * Read the rest of the enclosed content of this request into a byte array
+     * @return The enclosed content of this request, or null if no content exists
+     * @throws IOException This exception is thrown if there was an error reading the content, or if the content is too large to fit in an array
+     */
+    public byte[] getContentAsBytes() throws IOException {
+        if (content == null)
+            return null;
+        if (contentLength > Integer.MAX_VALUE - 8)
+            throw new IOException("The enclosed content is too large to read into memory (" + contentLength + " bytes)!");
+
+        byte[] data = new byte[(int) contentLength];
+        int offset = 0;
+        while (offset < data.length) {
+            int read = content.read(data, offset, data.length - offset);
+            if (read == -1)
+                break;
+            offset += read;
+        }
+
+        if (offset < data.length) {
+            //Either part of the content was already read, or the client closed the connection early
+            byte[] trimmed = new byte[offset];
+            System.arraycopy(data, 0, trimmed, 0, offset);
+            return trimmed;
+        }
+        return data;
+    }
+
+    /**
+     * Read the enclosed content of this request as a {@link java.lang.String}. The content is decoded with the charset given
+     * in the <code>Content-Type</code> header, or UTF-8 if there is none
      * @return The enclosed content of this request, or null if no content exists
      * @throws IOException This exception is thrown if there was an error reading the content
      */
     public String getContentAsString() throws IOException {
-        if (contentStream != null) {
-            long length = Long.parseLong(getHeaderValue("Content-Length"));
-            if (length >= Integer.MAX_VALUE) {
-                Charset ASCII = Charset.forName("ASCII");
-                char[] data = new char[server.getBufferDataLength()];
-                StringBuilder builder = new StringBuilder();
-                while (contentStream.read(data) != -1) {
-                    builder.append(new String(data, 0, data.length));
-                }
-                return builder.toString();
-            } else {
-                byte[] data = new byte[(int)length];
-                for (int i = 0; i < length; i++) {
-                    int read = contentStream.read();
-                    if (read == -1)
-                        break;
-                    data[i] = (byte)read;
-                }
-                return new String(data, Charset.forName("ASCII"));
+        byte[] data = getContentAsBytes();
+        if (data == null)
+            return null;
+
+        return new String(data, MimeTypes.getCharset(head.get(RequestHead.CONTENT_TYPE), Charset.forName("UTF-8")));
+    }
+
+    /**
+     * Get a {@link me.eddiep.tinyhttp.net.http.MultipartReader} for reading the parts of a <code>multipart/form-data</code>
+     * request, for example a form with file uploads. Parts are read from the stream of the request one at a time, and
+     * the temporary files of large parts are deleted once the handler has returned. The reader starts with the limits
+     * set by {@link me.eddiep.tinyhttp.TinyHttpServer#setMaxMultipartSize(long)} and
+     * {@link me.eddiep.tinyhttp.TinyHttpServer#setMaxMultipartParts(int)}, they can be changed before the first part is read. <br></br>
+     * The same reader is returned every time this method is invoked
+     * @return The reader, or null if this request has no <code>multipart/form-data</code> content
+     */
+    public MultipartReader getMultipartReader() {
+        if (multipart == null && content != null) {
+            String boundary = MultipartReader.getBoundary(head.get(RequestHead.CONTENT_TYPE));
+            if (boundary != null && !boundary.isEmpty() && boundary.length() <= 70) {
+                multipart = new MultipartReader(content, boundary);
+                multipart.setMaxTotalSize(server.getMaxMultipartSize());
+                multipart.setMaxParts(server.getMaxMultipartParts());
             }
         }
-        return null;
+        return multipart;
     }
 
     /**
-     * Check whether the client sent a specific header
+     * Release everything this request holds on to once it has been handled
+     */
+    void dispose() {
+        if (multipart != null)
+            multipart.close();
+    }
+
+    /**
+     * Check whether the client sent a specific header. Header names are not case sensitive
      * @param property The property name to check for. Example: 'Host'
      * @return If the client sent the header,
      */
     public boolean hasHeader(String property) {
-        return headers.containsKey(property);
+        return head.indexOf(property) != -1;
     }
 
     /**
      * Get the value of a header the client <b>may</b> have sent. If no header is found, then a null
-     * value is returned
+     * value is returned. Header names are not case sensitive, and if the client sent a header more than once
+     * the first value is returned
      * @param header The property name to get the value for. Example: 'Host'
      * @return The value for that property or null if no header was found.
      */
     public String getHeaderValue(String header) {
-        return headers.get(header);
+        int index = head.indexOf(header);
+        return index == -1 ? null : head.getValue(index);
     }
 
     public Response serveFile(String filePath, Response respond) {
         if (filePath == null || filePath.isEmpty())
             filePath = "index.html";
 
-        String path = server.getRootDirectoryAsString() + filePath;
-
-        File file = new File(path);
+        String root = server.getRootDirectoryAsString();
+        File file = root.isEmpty() ? new File(filePath) : new File(root, filePath);
         return serveFile(file, respond);
     }
 
     public Response serveFile(File file, Response respond) {
+        FileCache cache = server.getFileCache();
+
+        //Revalidations are answered from the file's metadata, before any of the file is read
+        FileCache.Entry cached = cache.peek(file);
+        List<ByteRange> ranges = null;
+        if (cached != null) {
+            if (isNotModified(cached.getETag(), cached.getLastModified(), cached.getLastModifiedHeader(), respond))
+                return respond;
+            ranges = getRanges(cached.getContent().length, cached.getETag(), cached.getLastModified());
+        } else if (file.isFile()) {
+            long length = file.length();
+            long lastModified = file.lastModified();
+            String etag = FileCache.createETag(length, lastModified);
+            if (isNotModified(etag, lastModified, null, respond))
+                return respond;
+
+            ranges = getRanges(length, etag, lastModified);
+            if (ranges == null) {
+                try {
+                    cached = cache.get(file);
+                } catch (IOException e) {
+                    //Fall back to reading the file directly, which reports the error properly
+                }
+            }
+        }
+
+        if (ranges == null && cached != null) {
+            respond.setStatusCode(StatusCode.OK);
+            respond.setContentType(cached.getMimeType());
+            respond.addHeader("Accept-Ranges", "bytes");
+            respond.setRawContent(cached.getContent());
+            return respond;
+        }
+
         if (file.exists()) {
             try {
                 String mime = MimeTypes.getMimeTypeFor(file);
                 if (mime == null)
                     mime = "application/octet-stream";
 
-                respond.setStatusCode(StatusCode.OK);
-                respond.setContentType(mime);
-                readIntoResponse(file, respond);
+                if (file.isFile())
+                    respond.addHeader("Accept-Ranges", "bytes");
+
+                if (ranges != null) {
+                    readRangesIntoResponse(file, mime, ranges, respond);
+                } else {
+                    respond.setStatusCode(StatusCode.OK);
+                    respond.setContentType(mime);
+                    readIntoResponse(file, respond);
+                }
             } catch (AccessDeniedException e) {
                 respond.setStatusCode(StatusCode.Forbidden);
                 System.err.println("Error serving request for " + getClient().getSocket().getInetAddress() + " requesting " + getRequestPath());
@@ -183,23 +350,125 @@ public class Request {
         return respond;
     }
 
-    protected void readIntoResponse(File file, Response respond) throws IOException {
-        if (file.length() >= Integer.MAX_VALUE) {
-            StreamResponse streamResponse = respond.createStreamResponse(file.length());
+    /**
+     * Get the byte ranges this request asks for out of a representation of the given length. The <code>Range</code>
+     * header is only honored for GET requests, and only when an <code>If-Range</code> header (if any) still matches
+     * the given validators <br></br>
+     * See {@link me.eddiep.tinyhttp.net.http.ByteRange#parse(String, long)} for how the header is parsed
+     * @param length The total length of the representation, in bytes
+     * @param etag The current ETag of the representation, or null if it has none
+     * @param lastModified The time the representation was last modified, or -1 if unknown
+     * @return The ranges to send, an empty list if none of them can be satisfied, or null if the full representation should be sent
+     */
+    public List<ByteRange> getRanges(long length, String etag, long lastModified) {
+        if (method != HttpMethod.GET)
+            return null;
 
-            byte[] buffer = new byte[server.getBufferDataLength()];
-            InputStream ios = new FileInputStream(file);
-            OutputStream out = streamResponse.startStream();
-            int read;
-            while ((read = ios.read(buffer)) != -1)
-                out.write(buffer, 0, read);
-            ios.close();
+        String range = getHeaderValue("Range");
+        if (range == null)
+            return null;
+
+        String ifRange = getHeaderValue("If-Range");
+        if (ifRange != null) {
+            ifRange = ifRange.trim();
+            if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+                //If-Range uses the strong comparison, so a weak tag never matches
+                if (etag == null || !ifRange.equals(etag))
+                    return null;
+            } else {
+                long date = HttpDate.parse(ifRange);
+                if (date == -1 || lastModified == -1 || lastModified / 1000 != date / 1000)
+                    return null;
+            }
+        }
+
+        return ByteRange.parse(range, length);
+    }
+
+    private void readRangesIntoResponse(File file, String mime, List<ByteRange> ranges, Response respond) throws IOException {
+        long length = file.length();
+        if (ranges.isEmpty()) {
+            respond.setStatusCode(StatusCode.RequestedRangeNotSatisfiable);
+            respond.addHeader("Content-Range", "bytes */" + length);
+            return;
+        }
+
+        FileChannel channel = new FileInputStream(file).getChannel();
+        respond.setStatusCode(StatusCode.PartialContent);
+        if (ranges.size() == 1) {
+            ByteRange range = ranges.get(0);
+            respond.setContentType(mime);
+            respond.addHeader("Content-Range", range.toContentRange(length));
+            respond.setFileContent(channel, range.getStart(), range.getLength());
+        } else {
+            respond.setFileContent(channel, ranges, mime, length);
+        }
+    }
+
+    /**
+     * Add the validators for a file to the response, then check them against the conditional headers of this request.
+     * <code>If-None-Match</code> is checked first, <code>If-Modified-Since</code> is only used when it is missing
+     * @return True if the client's copy is current and the response was turned into a {@link StatusCode#NotModified}
+     */
+    private boolean isNotModified(String etag, long lastModified, String lastModifiedHeader, Response respond) {
+        respond.addHeader("ETag", etag);
+        respond.addHeader("Last-Modified", lastModifiedHeader != null ? lastModifiedHeader : HttpDate.format(lastModified));
+
+        if (method != HttpMethod.GET)
+            return false;
+
+        boolean notModified;
+        String ifNoneMatch = getHeaderValue("If-None-Match");
+        if (ifNoneMatch != null) {
+            notModified = matchesETag(ifNoneMatch, etag);
         } else {
-            byte[] buffer = new byte[(int) file.length()];
+            String ifModifiedSince = getHeaderValue("If-Modified-Since");
+            if (ifModifiedSince == null)
+                return false;
+
+            long since = HttpDate.parse(ifModifiedSince);
+            //HTTP dates only have a precision of one second
+            notModified = since != -1 && lastModified / 1000 <= since / 1000;
+        }
+
+        if (notModified)
+            respond.setStatusCode(StatusCode.NotModified);
+        return notModified;
+    }
+
+    private static boolean matchesETag(String header, String etag) {
+        for (String tag : header.split(",")) {
+            tag = tag.trim();
+            if (tag.equals("*"))
+                return true;
+            if (tag.startsWith("W/"))
+                tag = tag.substring(2);
+            if (tag.equals(etag))
+                return true;
+        }
+        return false;
+    }
+
+    protected void readIntoResponse(File file, Response respond) throws IOException {
+        long length = file.length();
+        if (length >= server.getZeroCopyThreshold()) {
+            //Large files are sent straight from the file system to the socket when the response is written
+            FileChannel channel = new FileInputStream(file).getChannel();
+            respond.setFileContent(channel, 0, channel.size());
+        } else {
+            byte[] buffer = new byte[(int) length];
             InputStream ios = new FileInputStream(file);
-            if (ios.read(buffer) == -1)
-                throw new IOException("EOF reached while trying to read whole file!");
-            ios.close();
+            try {
+                int offset = 0;
+                while (offset < buffer.length) {
+                    int read = ios.read(buffer, offset, buffer.length - offset);
+                    if (read == -1)
+                        throw new IOException("EOF reached while trying to read whole file!");
+                    offset += read;
+                }
+            } finally {
+                ios.close();
+            }
 
             respond.setRawContent(buffer);
         }
@@ -0,0 +1,288 @@
+package me.eddiep.tinyhttp.net;
+
+import me.eddiep.tinyhttp.net.http.HttpMethod;
+import me.eddiep.tinyhttp.net.http.StatusCode;
+
+import java.nio.charset.Charset;
+import java.util.HashMap;
+
+/**
+ * A compact view of a request line and its headers, created by {@link RequestParser}. <br></br>
+ * The raw bytes of the head are kept together with the offsets of each part. Header names and values are only decoded
+ * into {@link java.lang.String}s the first time they are asked for, and common headers are found by their id
+ * instead of by comparing names. Header names are matched without regard to case, when a header is sent more than
+ * once the first value is used (except for <code>Content-Length</code>, see {@link RequestHead#getContentLength()})
+ */
+final class RequestHead {
+    static final int UNKNOWN = -1;
+    static final int HOST = 0;
+    static final int CONNECTION = 1;
+    static final int CONTENT_LENGTH = 2;
+    static final int CONTENT_TYPE = 3;
+    static final int TRANSFER_ENCODING = 4;
+    static final int ACCEPT_CHARSET = 5;
+    static final int RANGE = 6;
+    static final int IF_RANGE = 7;
+    static final int IF_NONE_MATCH = 8;
+    static final int IF_MODIFIED_SINCE = 9;
+    static final int EXPECT = 10;
+    static final int ACCEPT = 11;
+    static final int ACCEPT_ENCODING = 12;
+    static final int USER_AGENT = 13;
+    static final int COOKIE = 14;
+    static final int AUTHORIZATION = 15;
+
+    private static final String[] KNOWN_NAMES = {
+            "Host", "Connection", "Content-Length", "Content-Type", "Transfer-Encoding", "Accept-Charset", "Range",
+            "If-Range", "If-None-Match", "If-Modified-Since", "Expect", "Accept", "Accept-Encoding", "User-Agent",
+            "Cookie", "Authorization"
+    };
+    private static final byte[][] KNOWN_LOWERCASE = new byte[KNOWN_NAMES.length][];
+    private static final HashMap<String, Integer> KNOWN_IDS = new HashMap<String, Integer>();
+
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+    private static final HttpMethod[] METHODS = HttpMethod.values();
+    private static final String HTTP_1_0 = "HTTP/1.0";
+    private static final String HTTP_1_1 = "HTTP/1.1";
+
+    static {
+        for (int i = 0; i < KNOWN_NAMES.length; i++) {
+            KNOWN_LOWERCASE[i] = KNOWN_NAMES[i].toLowerCase().getBytes(ISO_8859_1);
+            KNOWN_IDS.put(KNOWN_NAMES[i], i);
+        }
+    }
+
+    private final byte[] data;
+    private final int targetStart, targetEnd;
+    private final int versionStart, versionEnd;
+    private final int[] fields;
+    private final int[] ids;
+    private final int count;
+    private final HttpMethod method;
+
+    private String target;
+    private String version;
+    private String[] values;
+
+    RequestHead(byte[] data, int methodStart, int methodEnd, int targetStart, int targetEnd, int versionStart, int versionEnd,
+                int[] fields, int[] ids, int count) {
+        this.data = data;
+        this.targetStart = targetStart;
+        this.targetEnd = targetEnd;
+        this.versionStart = versionStart;
+        this.versionEnd = versionEnd;
+        this.fields = fields;
+        this.ids = ids;
+        this.count = count;
+        this.method = findMethod(data, methodStart, methodEnd);
+    }
+
+    /**
+     * Get the {@link me.eddiep.tinyhttp.net.http.HttpMethod} of the request
+     */
+    HttpMethod getMethod() {
+        return method;
+    }
+
+    /**
+     * Get the path of the request, exactly as it was sent
+     */
+    String getTarget() {
+        if (target == null)
+            target = new String(data, targetStart, targetEnd - targetStart, ISO_8859_1);
+        return target;
+    }
+
+    /**
+     * Get the HTTP version of the request, for example <code>HTTP/1.1</code>
+     */
+    String getVersion() {
+        if (version == null) {
+            if (regionEquals(versionStart, versionEnd, HTTP_1_1))
+                version = HTTP_1_1;
+            else if (regionEquals(versionStart, versionEnd, HTTP_1_0))
+                version = HTTP_1_0;
+            else
+                version = new String(data, versionStart, versionEnd - versionStart, ISO_8859_1);
+        }
+        return version;
+    }
+
+    /**
+     * Get the number of headers in the request
+     */
+    int size() {
+        return count;
+    }
+
+    /**
+     * Get the name of a header, as it was sent
+     * @param index The index of the header, between 0 and {@link RequestHead#size()}
+     */
+    String getName(int index) {
+        return new String(data, fields[index * 4], fields[index * 4 + 1] - fields[index * 4], ISO_8859_1);
+    }
+
+    /**
+     * Get the value of a header, without any surrounding whitespace
+     * @param index The index of the header, between 0 and {@link RequestHead#size()}
+     */
+    String getValue(int index) {
+        if (values == null)
+            values = new String[count];
+
+        String value = values[index];
+        if (value == null) {
+            int start = fields[index * 4 + 2];
+            value = new String(data, start, fields[index * 4 + 3] - start, ISO_8859_1);
+            values[index] = value;
+        }
+        return value;
+    }
+
+    /**
+     * Find the first header with one of the known ids
+     * @return The index of the header, or -1 if the request does not have it
+     */
+    int indexOf(int id) {
+        for (int i = 0; i < count; i++) {
+            if (ids[i] == id)
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Find the first header with a name, ignoring case
+     * @return The index of the header, or -1 if the request does not have it
+     */
+    int indexOf(String name) {
+        Integer id = KNOWN_IDS.get(name);
+        if (id != null)
+            return indexOf(id);
+
+        for (int i = 0; i < count; i++) {
+            int start = fields[i * 4];
+            int end = fields[i * 4 + 1];
+            if (regionEqualsIgnoreCase(start, end, name))
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Get the value of the first header with one of the known ids
+     * @return The value, or null if the request does not have the header
+     */
+    String get(int id) {
+        int index = indexOf(id);
+        return index == -1 ? null : getValue(index);
+    }
+
+    /**
+     * Check whether the value of a header equals a string, ignoring case, without decoding the value
+     */
+    boolean valueEqualsIgnoreCase(int id, String expected) {
+        int index = indexOf(id);
+        return index != -1 && regionEqualsIgnoreCase(fields[index * 4 + 2], fields[index * 4 + 3], expected);
+    }
+
+    /**
+     * Read the <code>Content-Length</code> header straight from its bytes. Unlike other headers, every
+     * <code>Content-Length</code> is checked, because a proxy that reads a different one than the server does can be
+     * made to smuggle a request past it
+     * @return The length of the enclosed content, or -1 if the request does not have a <code>Content-Length</code> header
+     * @throws HttpParseException If the header is not a valid length, is sent more than once with different lengths,
+     * or is sent together with <code>Transfer-Encoding</code>
+     */
+    long getContentLength() throws HttpParseException {
+        long length = -1;
+        for (int i = 0; i < count; i++) {
+            if (ids[i] != CONTENT_LENGTH)
+                continue;
+
+            long value = parseContentLength(i);
+            if (length != -1 && value != length)
+                throw new HttpParseException(StatusCode.BadRequest, "Conflicting Content-Length headers");
+            length = value;
+        }
+
+        if (length != -1 && indexOf(TRANSFER_ENCODING) != -1)
+            throw new HttpParseException(StatusCode.BadRequest, "Both Content-Length and Transfer-Encoding were sent");
+        return length;
+    }
+
+    private long parseContentLength(int index) throws HttpParseException {
+        int start = fields[index * 4 + 2];
+        int end = fields[index * 4 + 3];
+        if (start == end || end - start > 18)
+            throw new HttpParseException(StatusCode.BadRequest, "Invalid Content-Length");
+
+        long length = 0;
+        for (int i = start; i < end; i++) {
+            byte b = data[i];
+            if (b < '0' || b > '9')
+                throw new HttpParseException(StatusCode.BadRequest, "Invalid Content-Length");
+            length = length * 10 + (b - '0');
+        }
+        return length;
+    }
+
+    /**
+     * Find the id of a header name, without creating a {@link java.lang.String}
+     * @return The id of the header, or {@link RequestHead#UNKNOWN}
+     */
+    static int findKnownHeader(byte[] data, int start, int end) {
+        int length = end - start;
+        for (int id = 0; id < KNOWN_LOWERCASE.length; id++) {
+            byte[] known = KNOWN_LOWERCASE[id];
+            if (known.length != length)
+                continue;
+
+            int i = 0;
+            while (i < length && toLowerCase(data[start + i]) == known[i]) {
+                i++;
+            }
+            if (i == length)
+                return id;
+        }
+        return UNKNOWN;
+    }
+
+    private static HttpMethod findMethod(byte[] data, int start, int end) {
+        for (HttpMethod method : METHODS) {
+            if (method != HttpMethod.UNKNOWN && regionEqualsIgnoreCase(data, start, end, method.name()))
+                return method;
+        }
+        return HttpMethod.UNKNOWN;
+    }
+
+    private boolean regionEquals(int start, int end, String expected) {
+        if (end - start != expected.length())
+            return false;
+        for (int i = 0; i < expected.length(); i++) {
+            if (data[start + i] != expected.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    private boolean regionEqualsIgnoreCase(int start, int end, String expected) {
+        return regionEqualsIgnoreCase(data, start, end, expected);
+    }
+
+    private static boolean regionEqualsIgnoreCase(byte[] data, int start, int end, String expected) {
+        if (end - start != expected.length())
+            return false;
+        for (int i = 0; i < expected.length(); i++) {
+            char c = expected.charAt(i);
+            if (c > 0x7F || toLowerCase(data[start + i]) != toLowerCase((byte) c))
+                return false;
+        }
+        return true;
+    }
+
+    private static byte toLowerCase(byte b) {
+        return b >= 'A' && b <= 'Z' ? (byte) (b + 32) : b;
+    }
+}
@@ -0,0 +1,170 @@
+package me.eddiep.tinyhttp.net;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The buffered {@link java.io.InputStream} of a blocking connection. Request heads are parsed by a {@link RequestParser}
+ * straight out of the buffer, and whatever follows the head (enclosed content or the next pipelined request) is read
+ * from the same buffer, so no byte is lost between requests. The buffer is reused for every request on the connection
+ */
+class RequestInputStream extends InputStream {
+    private static final int INITIAL_BUFFER_LENGTH = 8192;
+
+    private final InputStream in;
+    private final Client client;
+    private final int maxBufferLength;
+    private byte[] buffer;
+    private int position;
+    private int limit;
+
+    /**
+     * @param in The stream of the connection
+     * @param maxHeadLength The most bytes a request head may take up, the buffer grows up to this size when needed
+     * @param client The client every byte read is counted for
+     */
+    RequestInputStream(InputStream in, int maxHeadLength, Client client) {
+        this.in = in;
+        this.client = client;
+        this.maxBufferLength = Math.max(maxHeadLength, INITIAL_BUFFER_LENGTH);
+        this.buffer = new byte[Math.min(INITIAL_BUFFER_LENGTH, maxBufferLength)];
+    }
+
+    /**
+     * Block until at least one byte is buffered
+     * @return False if the connection was closed before any byte arrived
+     * @throws IOException If there was an error reading from the connection
+     */
+    boolean awaitData() throws IOException {
+        return position < limit || fillHead() > 0;
+    }
+
+    /**
+     * The number of bytes already read from the connection that were not consumed yet. Unlike {@link #available()} this
+     * does not ask the connection, which can't tell for the sockets of channels
+     */
+    int buffered() {
+        return limit - position;
+    }
+
+    /**
+     * Read and parse the next request head
+     * @param parser The parser to use, it is reset before this method returns
+     * @return The head of the next request, or null if the connection was closed before a whole head arrived
+     * @throws HttpParseException If the request is malformed or too large
+     * @throws IOException If there was an error reading from the connection
+     */
+    RequestHead readHead(RequestParser parser) throws IOException {
+        try {
+            while (true) {
+                int end = parser.parse(buffer, position, limit);
+                if (end != -1) {
+                    RequestHead head = parser.createHead(buffer, position, end);
+                    position = end;
+                    return head;
+                }
+
+                if (fillHead() == -1)
+                    return null;
+            }
+        } finally {
+            parser.reset();
+        }
+    }
+
+    /**
+     * Read more of the next request once every response handed out so far was written. Before Java 9 a blocking read
+     * of a channel's socket holds the lock its writes need, so a response written by another thread would otherwise wait
+     * until the client sends more
+     */
+    private int fillHead() throws IOException {
+        client.awaitResponses();
+        return fill();
+    }
+
+    private int fill() throws IOException {
+        if (limit == buffer.length) {
+            if (position > 0) {
+                //Move the unread bytes to the front so the head being parsed stays in one piece
+                System.arraycopy(buffer, position, buffer, 0, limit - position);
+                limit -= position;
+                position = 0;
+            } else if (buffer.length < maxBufferLength) {
+                byte[] bigger = new byte[Math.min(buffer.length * 2, maxBufferLength)];
+                System.arraycopy(buffer, 0, bigger, 0, limit);
+                buffer = bigger;
+            }
+        }
+
+        int read = in.read(buffer, limit, buffer.length - limit);
+        if (read > 0) {
+            limit += read;
+            client.onRead(read);
+        }
+        return read;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (position == limit) {
+            position = limit = 0;
+            if (fill() == -1)
+                return -1;
+        }
+        return buffer[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0)
+            return 0;
+
+        int buffered = limit - position;
+        if (buffered == 0) {
+            //Large reads skip the buffer entirely
+            if (len >= buffer.length) {
+                int read = in.read(b, off, len);
+                if (read > 0)
+                    client.onRead(read);
+                return read;
+            }
+
+            position = limit = 0;
+            if (fill() == -1)
+                return -1;
+            buffered = limit;
+        }
+
+        int length = Math.min(len, buffered);
+        System.arraycopy(buffer, position, b, off, length);
+        position += length;
+        return length;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        if (n <= 0)
+            return 0;
+
+        int buffered = limit - position;
+        if (buffered > 0) {
+            int skipped = (int) Math.min(n, buffered);
+            position += skipped;
+            return skipped;
+        }
+        long skipped = in.skip(n);
+        if (skipped > 0)
+            client.onRead(skipped);
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return (limit - position) + in.available();
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
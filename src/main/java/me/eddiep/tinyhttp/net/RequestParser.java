@@ -0,0 +1,257 @@
+package me.eddiep.tinyhttp.net;
+
+import me.eddiep.tinyhttp.net.http.StatusCode;
+
+/**
+ * A byte level parser for the request line and headers of a request. <br></br>
+ * The parser is a state machine that can be fed a request head in as many pieces as it arrives in, it remembers where
+ * it stopped so no byte is ever looked at twice. It only records where the method, path, version and each header name
+ * and value start and end, nothing is decoded into a {@link java.lang.String} until {@link RequestHead} is asked for it. <br></br>
+ * One parser is kept per connection and {@link RequestParser#reset()} between requests, so parsing a request allocates
+ * nothing but the {@link RequestHead} it produces
+ */
+final class RequestParser {
+    private static final int START = 0;
+    private static final int METHOD = 1;
+    private static final int TARGET = 2;
+    private static final int VERSION = 3;
+    private static final int REQUEST_LINE_LF = 4;
+    private static final int LINE_START = 5;
+    private static final int NAME = 6;
+    private static final int VALUE_START = 7;
+    private static final int VALUE = 8;
+    private static final int HEADER_LF = 9;
+    private static final int END_LF = 10;
+
+    private static final int INITIAL_HEADERS = 16;
+
+    private final int maxHeadLength;
+    private final int maxHeaderCount;
+
+    private int state;
+    private int position;
+
+    private int methodStart, methodEnd;
+    private int targetStart, targetEnd;
+    private int versionStart, versionEnd;
+
+    private int[] fields = new int[INITIAL_HEADERS * 4];
+    private int[] ids = new int[INITIAL_HEADERS];
+    private int count;
+    private int nameStart, nameEnd, valueStart, valueEnd;
+
+    /**
+     * Create a new parser
+     * @param maxHeadLength The most bytes the request line and headers may take up together
+     * @param maxHeaderCount The most headers a request may have
+     */
+    RequestParser(int maxHeadLength, int maxHeaderCount) {
+        this.maxHeadLength = maxHeadLength;
+        this.maxHeaderCount = maxHeaderCount;
+    }
+
+    /**
+     * Forget the request that was parsed last, so the next request can be parsed
+     */
+    void reset() {
+        state = START;
+        position = 0;
+        count = 0;
+    }
+
+    /**
+     * Parse more of a request head. Every call for the same request must pass the same <code>start</code>, with
+     * <code>limit</code> growing as more bytes arrive
+     * @param data The buffer holding the request head
+     * @param start The index in the buffer where the request head starts
+     * @param limit The index right after the last byte that has arrived so far
+     * @return The index right after the blank line that ends the head, or -1 if more bytes are needed
+     * @throws HttpParseException If the request is malformed or too large
+     */
+    int parse(byte[] data, int start, int limit) throws HttpParseException {
+        int i = start + position;
+        int state = this.state;
+
+        while (i < limit) {
+            byte b = data[i];
+            int offset = i - start;
+
+            switch (state) {
+                case START:
+                    //Stray line breaks between requests are ignored
+                    if (b == '\r' || b == '\n')
+                        break;
+                    if (!isTokenChar(b))
+                        throw new HttpParseException(StatusCode.BadRequest, "Invalid request method");
+                    methodStart = offset;
+                    state = METHOD;
+                    break;
+                case METHOD:
+                    if (b == ' ') {
+                        methodEnd = offset;
+                        targetStart = offset + 1;
+                        state = TARGET;
+                    } else if (!isTokenChar(b)) {
+                        throw new HttpParseException(StatusCode.BadRequest, "Invalid request method");
+                    }
+                    break;
+                case TARGET:
+                    if (b == ' ') {
+                        if (offset == targetStart)
+                            throw new HttpParseException(StatusCode.BadRequest, "Missing request path");
+                        targetEnd = offset;
+                        versionStart = offset + 1;
+                        state = VERSION;
+                    } else if (b == '\r' || b == '\n' || b < 0x20 || b == 0x7F) {
+                        throw new HttpParseException(StatusCode.BadRequest, "Invalid request line");
+                    }
+                    break;
+                case VERSION:
+                    if (b == '\r' || b == '\n') {
+                        versionEnd = offset;
+                        if (!isHttpVersion(data, start + versionStart, start + versionEnd))
+                            throw new HttpParseException(StatusCode.BadRequest, "Invalid HTTP version");
+                        state = b == '\r' ? REQUEST_LINE_LF : LINE_START;
+                    } else if (b == ' ') {
+                        throw new HttpParseException(StatusCode.BadRequest, "Invalid request line");
+                    }
+                    break;
+                case REQUEST_LINE_LF:
+                case HEADER_LF:
+                    if (b != '\n')
+                        throw new HttpParseException(StatusCode.BadRequest, "Expected a line feed");
+                    state = LINE_START;
+                    break;
+                case LINE_START:
+                    if (b == '\r') {
+                        state = END_LF;
+                    } else if (b == '\n') {
+                        return finish(i + 1, start);
+                    } else if (b == ' ' || b == '\t') {
+                        throw new HttpParseException(StatusCode.BadRequest, "Folded header lines are not supported");
+                    } else if (isTokenChar(b)) {
+                        nameStart = offset;
+                        state = NAME;
+                    } else {
+                        throw new HttpParseException(StatusCode.BadRequest, "Invalid header name");
+                    }
+                    break;
+                case NAME:
+                    if (b == ':') {
+                        nameEnd = offset;
+                        state = VALUE_START;
+                    } else if (!isTokenChar(b)) {
+                        throw new HttpParseException(StatusCode.BadRequest, "Invalid header name");
+                    }
+                    break;
+                case VALUE_START:
+                    if (b == ' ' || b == '\t')
+                        break;
+                    valueStart = offset;
+                    valueEnd = offset;
+                    if (b == '\r' || b == '\n') {
+                        addHeader(data, start);
+                        state = b == '\r' ? HEADER_LF : LINE_START;
+                    } else {
+                        valueEnd = offset + 1;
+                        state = VALUE;
+                    }
+                    break;
+                case VALUE:
+                    if (b == '\r' || b == '\n') {
+                        addHeader(data, start);
+                        state = b == '\r' ? HEADER_LF : LINE_START;
+                    } else if (b != ' ' && b != '\t') {
+                        //Trailing whitespace is never part of the value
+                        valueEnd = offset + 1;
+                    }
+                    break;
+                case END_LF:
+                    if (b != '\n')
+                        throw new HttpParseException(StatusCode.BadRequest, "Expected a line feed");
+                    return finish(i + 1, start);
+            }
+
+            i++;
+            if (i - start > maxHeadLength)
+                throw tooLarge(state);
+        }
+
+        this.state = state;
+        this.position = i - start;
+        if (position >= maxHeadLength)
+            throw tooLarge(state);
+        return -1;
+    }
+
+    /**
+     * Create the view of the request head that was just parsed. The bytes of the head are copied, so the buffer can be
+     * reused right away
+     * @param data The buffer holding the request head
+     * @param start The index in the buffer where the request head starts
+     * @param end The index returned by {@link RequestParser#parse(byte[], int, int)}
+     */
+    RequestHead createHead(byte[] data, int start, int end) {
+        byte[] head = new byte[end - start];
+        System.arraycopy(data, start, head, 0, head.length);
+
+        int[] headerFields = new int[count * 4];
+        System.arraycopy(fields, 0, headerFields, 0, headerFields.length);
+        int[] headerIds = new int[count];
+        System.arraycopy(ids, 0, headerIds, 0, count);
+
+        return new RequestHead(head, methodStart, methodEnd, targetStart, targetEnd, versionStart, versionEnd,
+                headerFields, headerIds, count);
+    }
+
+    private int finish(int end, int start) {
+        this.state = START;
+        this.position = end - start;
+        return end;
+    }
+
+    private void addHeader(byte[] data, int start) throws HttpParseException {
+        if (count == maxHeaderCount)
+            throw new HttpParseException(StatusCode.RequestHeaderFieldsTooLarge, "Too many headers");
+
+        if (count == ids.length) {
+            int[] biggerFields = new int[fields.length * 2];
+            System.arraycopy(fields, 0, biggerFields, 0, fields.length);
+            fields = biggerFields;
+            int[] biggerIds = new int[ids.length * 2];
+            System.arraycopy(ids, 0, biggerIds, 0, ids.length);
+            ids = biggerIds;
+        }
+
+        int index = count * 4;
+        fields[index] = nameStart;
+        fields[index + 1] = nameEnd;
+        fields[index + 2] = valueStart;
+        fields[index + 3] = valueEnd;
+        ids[count] = RequestHead.findKnownHeader(data, start + nameStart, start + nameEnd);
+        count++;
+    }
+
+    private static HttpParseException tooLarge(int state) {
+        if (state <= VERSION)
+            return new HttpParseException(StatusCode.RequestURITooLong, "The request line is too long");
+        return new HttpParseException(StatusCode.RequestHeaderFieldsTooLarge, "The request headers are too large");
+    }
+
+    private static boolean isHttpVersion(byte[] data, int start, int end) {
+        return end - start >= 6 && data[start] == 'H' && data[start + 1] == 'T' && data[start + 2] == 'T' &&
+                data[start + 3] == 'P' && data[start + 4] == '/';
+    }
+
+    private static boolean isTokenChar(byte b) {
+        if (b <= 0x20 || b >= 0x7F)
+            return false;
+        switch (b) {
+            case '(': case ')': case '<': case '>': case '@': case ',': case ';': case ':':
+            case '\\': case '"': case '/': case '[': case ']': case '?': case '=': case '{': case '}':
+                return false;
+            default:
+                return true;
+        }
+    }
+}
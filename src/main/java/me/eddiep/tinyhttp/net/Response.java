@@ -1,16 +1,34 @@
 package me.eddiep.tinyhttp.net;
 
+import me.eddiep.tinyhttp.net.http.ByteRange;
 import me.eddiep.tinyhttp.net.http.StatusCode;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 public class Response {
     StreamResponse streamResponse;
+    long sequence;
+    long queuedAt;
+    boolean chunkingSupported = true;
 
-    private String content = "";
+    ResponseBuffer body;
     byte[] rawContents;
+    FileChannel fileContents;
+    long filePosition;
+    long fileLength;
+    ByteRange[] fileRanges;
+    byte[][] filePartHeaders;
+    byte[] fileClosing;
+    private boolean discarded;
     private Client client;
     private StatusCode statusCode = StatusCode.OK;
     private HashMap<String, String> headers = new HashMap<String, String>();
@@ -20,11 +38,20 @@ public class Response {
     }
 
     Response(Response response) {
-        this.content = response.content;
+        this.body = response.body;
         this.rawContents = response.rawContents;
+        this.fileContents = response.fileContents;
+        this.filePosition = response.filePosition;
+        this.fileLength = response.fileLength;
+        this.fileRanges = response.fileRanges;
+        this.filePartHeaders = response.filePartHeaders;
+        this.fileClosing = response.fileClosing;
         this.client = response.client;
         this.statusCode = response.statusCode;
         this.headers = response.headers;
+        this.sequence = response.sequence;
+        this.queuedAt = response.queuedAt;
+        this.chunkingSupported = response.chunkingSupported;
     }
 
     /**
@@ -58,7 +85,8 @@ public class Response {
      * Create a new {@link me.eddiep.tinyhttp.net.StreamResponse} object. <br></br>
      * A stream response allows you to stream large data in real time to the client as a response. You can begin to write
      * data by setting the contentLength using {@link me.eddiep.tinyhttp.net.StreamResponse#setContentLength(long)} and then by
-     * calling {@link StreamResponse#startStream()} and writing to the returned {@link java.io.OutputStream}
+     * calling {@link StreamResponse#startStream()} and writing to the returned {@link java.io.OutputStream}. If no contentLength
+     * is set, the data is sent chunked
      *
      * @see StreamResponse#startStream()
      * @return A new {@link me.eddiep.tinyhttp.net.StreamResponse} object
@@ -144,7 +172,22 @@ public class Response {
      * @return The content as a string
      */
     public String getContent() {
-        return content;
+        return body == null ? "" : body.toString(ResponseBuffer.UTF_8);
+    }
+
+    /**
+     * Get a {@link java.io.Writer} that appends to the content of this response. Text written to it is encoded to UTF-8
+     * straight into the content, just like {@link Response#echo(String)}
+     * @return A writer for the content of this response
+     */
+    public Writer getWriter() {
+        return new ResponseBuffer.BufferWriter(this);
+    }
+
+    ResponseBuffer body() {
+        if (body == null)
+            body = new ResponseBuffer();
+        return body;
     }
 
     /**
@@ -156,13 +199,94 @@ public class Response {
         this.rawContents = data;
     }
 
+    /**
+     * Respond with the contents of a file. The file is sent straight from the file system to the client without being
+     * read into memory. <b>Setting a file content will ignore {@link Response#getContent()}</b>
+     * @param file The file to respond with
+     * @throws IOException If the file could not be opened
+     */
+    public void setFileContent(File file) throws IOException {
+        FileChannel channel = new FileInputStream(file).getChannel();
+        setFileContent(channel, 0, channel.size());
+    }
+
+    /**
+     * Respond with part of an open file. The channel is closed once the response has been written
+     */
+    synchronized void setFileContent(FileChannel channel, long position, long length) {
+        closeFile();
+        if (discarded) {
+            //The request is already finished (for example, its handler timed out), so nothing will ever send this file
+            fileContents = channel;
+            closeFile();
+            return;
+        }
+
+        this.fileContents = channel;
+        this.filePosition = position;
+        this.fileLength = length;
+        this.fileRanges = null;
+        this.filePartHeaders = null;
+        this.fileClosing = null;
+    }
+
+    /**
+     * Close the file this response was going to send, if it was never sent. Any file set afterwards is closed right away,
+     * because the response is finished and will never be written
+     */
+    synchronized void discard() {
+        discarded = true;
+        closeFile();
+    }
+
+    private void closeFile() {
+        if (fileContents != null) {
+            try {
+                fileContents.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            fileContents = null;
+        }
+    }
+
+    /**
+     * Respond with several ranges of an open file as a <code>multipart/byteranges</code> body. The channel is closed once
+     * the response has been written
+     */
+    void setFileContent(FileChannel channel, List<ByteRange> ranges, String mime, long totalLength) {
+        String boundary = Long.toHexString(System.nanoTime()) + Long.toHexString(Double.doubleToLongBits(Math.random()));
+        Charset ascii = Charset.forName("ASCII");
+
+        byte[][] partHeaders = new byte[ranges.size()][];
+        long length = 0;
+        for (int i = 0; i < partHeaders.length; i++) {
+            ByteRange range = ranges.get(i);
+            String header = "\r\n--" + boundary + "\r\n" +
+                    "Content-Type: " + mime + "\r\n" +
+                    "Content-Range: " + range.toContentRange(totalLength) + "\r\n\r\n";
+            partHeaders[i] = header.getBytes(ascii);
+            length += partHeaders[i].length + range.getLength();
+        }
+        byte[] closing = ("\r\n--" + boundary + "--\r\n").getBytes(ascii);
+        length += closing.length;
+
+        setFileContent(channel, 0, length);
+        this.fileRanges = ranges.toArray(new ByteRange[ranges.size()]);
+        this.filePartHeaders = partHeaders;
+        this.fileClosing = closing;
+        addHeader("Content-Type", "multipart/byteranges; boundary=" + boundary);
+    }
+
     /**
      * Set the raw response content of this response. Any echo's made will not be preserved. This is a good place
      * to set HTML from a file
      * @param content The content to set as a string
      */
     public void setContent(String content) {
-        this.content = content;
+        ResponseBuffer body = body();
+        body.reset();
+        body.append(content, 0, content.length());
     }
 
     /**
@@ -170,7 +294,27 @@ public class Response {
      * @param string The content to append as a string
      */
     public void echo(String string) {
-        content += string;
+        if (string == null)
+            string = "null";
+        body().append(string, 0, string.length());
+    }
+
+    /**
+     * Append to the current content of this response.
+     * @param text The content to append as a {@link java.lang.CharSequence}, for example a {@link java.lang.StringBuilder}
+     */
+    public void echo(CharSequence text) {
+        if (text == null)
+            text = "null";
+        body().append(text, 0, text.length());
+    }
+
+    /**
+     * Append to the current content of this response.
+     * @param c The content to append as a char
+     */
+    public void echo(char c) {
+        body().appendChar(c);
     }
 
     /**
@@ -179,7 +323,7 @@ public class Response {
      */
 
     public void echo(int i)  {
-        echo("" + i);
+        body().append(i);
     }
 
     /**
@@ -187,7 +331,15 @@ public class Response {
      * @param f The content to append as a float
      */
     public void echo(float f) {
-        echo("" + f);
+        echo(Float.toString(f));
+    }
+
+    /**
+     * Append to the current content of this response.
+     * @param d The content to append as a double
+     */
+    public void echo(double d) {
+        echo(Double.toString(d));
     }
 
     /**
@@ -195,7 +347,7 @@ public class Response {
      * @param l The content to append as a long
      */
     public void echo(long l) {
-        echo("" + l);
+        body().append(l);
     }
 
     /**
@@ -203,7 +355,18 @@ public class Response {
      * @param bool The content to append as a bool
      */
     public void echo(boolean bool) {
-        echo("" + bool);
+        body().append(bool);
+    }
+
+    /**
+     * Append raw bytes to the current content of this response. The bytes are sent as they are, so they should match
+     * the charset of the <code>Content-Type</code>, which is UTF-8 by default
+     * @param data The bytes to append
+     * @param offset The index of the first byte to append
+     * @param length The number of bytes to append
+     */
+    public void echo(byte[] data, int offset, int length) {
+        body().write(data, offset, length);
     }
 
     /**
@@ -211,6 +374,6 @@ public class Response {
      * @param obj The content to append as an object
      */
     public void echo(Object obj) {
-        echo(obj.toString());
+        echo(String.valueOf(obj));
     }
 }
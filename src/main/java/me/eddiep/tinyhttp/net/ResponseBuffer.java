@@ -0,0 +1,309 @@
+package me.eddiep.tinyhttp.net;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The growable body of a {@link Response}. Text is encoded to UTF-8 straight into the buffer as it is echoed and
+ * numbers are written as digits without creating a {@link java.lang.String}. The buffer doubles when it runs out of
+ * room, so a page built out of thousands of small pieces costs time in proportion to its size. <br></br>
+ * The first block of every buffer comes from a shared pool and goes back to it once the response has been written
+ */
+final class ResponseBuffer {
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int POOLED_LENGTH = 8192;
+    private static final int MAX_POOLED = 256;
+    private static final ConcurrentLinkedQueue<byte[]> POOL = new ConcurrentLinkedQueue<byte[]>();
+    private static final AtomicInteger POOL_SIZE = new AtomicInteger();
+
+    private static final byte[] TRUE = { 't', 'r', 'u', 'e' };
+    private static final byte[] FALSE = { 'f', 'a', 'l', 's', 'e' };
+    private static final byte[] MIN_LONG = "-9223372036854775808".getBytes(UTF_8);
+
+    private byte[] data;
+    private int size;
+    private char highSurrogate;
+
+    ResponseBuffer() {
+        byte[] pooled = POOL.poll();
+        if (pooled != null)
+            POOL_SIZE.decrementAndGet();
+        this.data = pooled != null ? pooled : new byte[POOLED_LENGTH];
+    }
+
+    /**
+     * Get the array holding the body, only the first {@link ResponseBuffer#size()} bytes of it are part of the body
+     */
+    byte[] array() {
+        endText();
+        return data;
+    }
+
+    int size() {
+        endText();
+        return size;
+    }
+
+    void reset() {
+        size = 0;
+        highSurrogate = 0;
+    }
+
+    void write(byte[] b, int off, int len) {
+        ensureCapacity(len);
+        System.arraycopy(b, off, data, size, len);
+        size += len;
+    }
+
+    void writeTo(OutputStream out) throws IOException {
+        endText();
+        out.write(data, 0, size);
+    }
+
+    /**
+     * Give the first block of this buffer back to the pool. The buffer can't be used afterwards
+     */
+    void release() {
+        if (data != null)
+            recycle(data);
+        data = null;
+        size = 0;
+    }
+
+    void append(CharSequence text, int start, int end) {
+        ensureCapacity(end - start);
+        byte[] data = this.data;
+        int size = this.size;
+        int i = start;
+
+        //Most content is ASCII, which needs no more than the room already made for it
+        if (highSurrogate == 0) {
+            while (i < end) {
+                char c = text.charAt(i);
+                if (c >= 0x80)
+                    break;
+                data[size++] = (byte) c;
+                i++;
+            }
+        }
+        this.size = size;
+
+        for (; i < end; i++) {
+            appendChar(text.charAt(i));
+        }
+    }
+
+    void append(char[] text, int start, int end) {
+        ensureCapacity(end - start);
+        byte[] data = this.data;
+        int size = this.size;
+        int i = start;
+
+        if (highSurrogate == 0) {
+            while (i < end) {
+                char c = text[i];
+                if (c >= 0x80)
+                    break;
+                data[size++] = (byte) c;
+                i++;
+            }
+        }
+        this.size = size;
+
+        for (; i < end; i++) {
+            appendChar(text[i]);
+        }
+    }
+
+    void appendChar(char c) {
+        if (highSurrogate != 0) {
+            char high = highSurrogate;
+            highSurrogate = 0;
+            if (Character.isLowSurrogate(c)) {
+                int codePoint = Character.toCodePoint(high, c);
+                ensureCapacity(4);
+                data[size++] = (byte) (0xF0 | (codePoint >> 18));
+                data[size++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                data[size++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                data[size++] = (byte) (0x80 | (codePoint & 0x3F));
+                return;
+            }
+            //A high surrogate on its own can't be encoded
+            ensureCapacity(1);
+            data[size++] = '?';
+        }
+
+        if (c < 0x80) {
+            ensureCapacity(1);
+            data[size++] = (byte) c;
+        } else if (c < 0x800) {
+            ensureCapacity(2);
+            data[size++] = (byte) (0xC0 | (c >> 6));
+            data[size++] = (byte) (0x80 | (c & 0x3F));
+        } else if (Character.isHighSurrogate(c)) {
+            highSurrogate = c;
+        } else if (Character.isLowSurrogate(c)) {
+            ensureCapacity(1);
+            data[size++] = '?';
+        } else {
+            ensureCapacity(3);
+            data[size++] = (byte) (0xE0 | (c >> 12));
+            data[size++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+            data[size++] = (byte) (0x80 | (c & 0x3F));
+        }
+    }
+
+    /**
+     * Append text one byte per character, the way header values are sent. Characters ISO-8859-1 can't hold become
+     * <code>?</code>, and line breaks become spaces so a value can never end the header early
+     */
+    void appendLatin1(String text) {
+        int length = text.length();
+        ensureCapacity(length);
+        byte[] data = this.data;
+        int size = this.size;
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c > 0xFF)
+                c = '?';
+            else if (c == '\r' || c == '\n')
+                c = ' ';
+            data[size++] = (byte) c;
+        }
+        this.size = size;
+    }
+
+    void append(long value) {
+        if (value == Long.MIN_VALUE) {
+            write(MIN_LONG, 0, MIN_LONG.length);
+            return;
+        }
+
+        ensureCapacity(20);
+        if (value < 0) {
+            data[size++] = '-';
+            value = -value;
+        }
+
+        int digits = 1;
+        for (long v = value; v >= 10; v /= 10) {
+            digits++;
+        }
+
+        int position = size + digits;
+        do {
+            data[--position] = (byte) ('0' + (value % 10));
+            value /= 10;
+        } while (value > 0);
+        size += digits;
+    }
+
+    void append(boolean value) {
+        byte[] text = value ? TRUE : FALSE;
+        write(text, 0, text.length);
+    }
+
+    /**
+     * Decode the body back into text
+     */
+    String toString(Charset charset) {
+        endText();
+        return new String(data, 0, size, charset);
+    }
+
+    /**
+     * The body is being read, so a high surrogate still waiting for its low surrogate will never get one
+     */
+    private void endText() {
+        if (highSurrogate != 0) {
+            highSurrogate = 0;
+            ensureCapacity(1);
+            data[size++] = '?';
+        }
+    }
+
+    private void ensureCapacity(int extra) {
+        int needed = size + extra;
+        if (needed <= data.length)
+            return;
+
+        int length = data.length * 2;
+        while (length < needed) {
+            length *= 2;
+        }
+
+        byte[] bigger = new byte[length];
+        System.arraycopy(data, 0, bigger, 0, size);
+        recycle(data);
+        data = bigger;
+    }
+
+    private static void recycle(byte[] block) {
+        if (block.length != POOLED_LENGTH)
+            return;
+
+        if (POOL_SIZE.incrementAndGet() <= MAX_POOLED)
+            POOL.offer(block);
+        else
+            POOL_SIZE.decrementAndGet();
+    }
+
+    /**
+     * A {@link java.io.Writer} that encodes into a {@link ResponseBuffer}
+     */
+    static final class BufferWriter extends Writer {
+        private final Response response;
+
+        BufferWriter(Response response) {
+            this.response = response;
+        }
+
+        @Override
+        public void write(int c) {
+            response.body().appendChar((char) c);
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+            response.body().append(cbuf, off, off + len);
+        }
+
+        @Override
+        public void write(String str, int off, int len) {
+            response.body().append(str, off, off + len);
+        }
+
+        @Override
+        public Writer append(CharSequence csq) {
+            CharSequence text = csq == null ? "null" : csq;
+            response.body().append(text, 0, text.length());
+            return this;
+        }
+
+        @Override
+        public Writer append(CharSequence csq, int start, int end) {
+            CharSequence text = csq == null ? "null" : csq;
+            response.body().append(text, start, end);
+            return this;
+        }
+
+        @Override
+        public Writer append(char c) {
+            response.body().appendChar(c);
+            return this;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
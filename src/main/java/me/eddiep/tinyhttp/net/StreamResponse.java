@@ -1,26 +1,39 @@
 package me.eddiep.tinyhttp.net;
 
+import me.eddiep.tinyhttp.net.http.ByteRange;
+import me.eddiep.tinyhttp.net.http.ChunkedOutputStream;
+import me.eddiep.tinyhttp.net.http.StatusCode;
+
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
-import java.nio.charset.Charset;
+import java.util.LinkedHashMap;
 
 /**
  * A StreamResponse allows you to stream the content of your response to the client. This is useful for sending large
  * files or data to the client.
  *
- * <b>You must set the content length of the data before invoking {@link StreamResponse#startStream()}</b>
+ * If a content length is set before invoking {@link StreamResponse#startStream()}, exactly that many bytes must be written
+ * to the stream. If no content length is set, the content is sent with <code>Transfer-Encoding: chunked</code> so it can
+ * be generated on the fly. Chunked content is ended by closing the returned stream or by invoking
+ * {@link StreamResponse#finishStream()}, and may be followed by trailers added with {@link StreamResponse#addTrailer(String, String)}
  */
 public class StreamResponse extends Response {
     private long contentLength;
+    private int chunkSize;
+    private LinkedHashMap<String, String> trailers;
     private OutputStream out;
+    private ChunkedOutputStream chunked;
+    private LengthOutputStream fixed;
 
     StreamResponse(Response clone) {
         super(clone);
+        this.chunkSize = clone.getClient().getServer().getChunkSize();
     }
 
     /**
      * Get the content length of this response
-     * @return The content length
+     * @return The content length, or 0 if the content will be chunked
      */
     public long getContentLength() {
         return contentLength;
@@ -34,38 +47,170 @@ public class StreamResponse extends Response {
         this.contentLength = l;
     }
 
+    /**
+     * Get the size of each chunk when this response is chunked
+     * @return The chunk size, in bytes
+     */
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Set the size of each chunk when this response is chunked. The default is {@link me.eddiep.tinyhttp.TinyHttpServer#getChunkSize()}
+     * @param chunkSize The chunk size, in bytes
+     * @throws java.lang.IllegalStateException If the stream was already started
+     * @throws java.lang.IllegalArgumentException If the chunk size is not greater than 0
+     */
+    public void setChunkSize(int chunkSize) {
+        if (out != null)
+            throw new IllegalStateException("This StreamResponse was already started!");
+        if (chunkSize <= 0)
+            throw new IllegalArgumentException("The chunk size must be greater than 0!");
+
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Add a trailer to send after the content of a chunked response. Trailers added before {@link StreamResponse#startStream()}
+     * are declared to the client in the <code>Trailer</code> header. A trailer can still be added or changed while the content
+     * is being written, for example to send a checksum of the content
+     * @param property The property name of this trailer
+     * @param value The value of this trailer
+     * @throws java.lang.IllegalStateException If the stream was already finished
+     */
+    public void addTrailer(String property, String value) {
+        if (chunked != null && chunked.isFinished())
+            throw new IllegalStateException("This StreamResponse was already finished!");
+
+        if (trailers == null)
+            trailers = new LinkedHashMap<String, String>();
+        trailers.put(property, value);
+    }
+
+    /**
+     * Check whether the content of this response is being sent with <code>Transfer-Encoding: chunked</code>
+     * @return True if the stream was started and the content is chunked
+     */
+    public boolean isChunked() {
+        return chunked != null;
+    }
+
     /**
      * Start streaming the content to the client. This method will create a {@link java.io.OutputStream} object and
-     * write the appropriate HTTP headers to the stream before returning the {@link java.io.OutputStream} object
+     * write the appropriate HTTP headers to the stream before returning the {@link java.io.OutputStream} object. <br></br>
+     * If no content length was set, the returned stream chunks the content. Clients that only speak HTTP/1.0 can't read
+     * chunked content, so for them the content is sent as is and the connection is closed once the response is done
      * @return A stream you can write your data to
      * @throws IOException If there was an error creating or writing to the stream
-     * @throws java.lang.IllegalStateException If no content length was specified for this response or if the stream was already created
+     * @throws java.lang.IllegalStateException If the stream was already created
      */
     public OutputStream startStream() throws IOException {
-        if (contentLength == 0)
-            throw new IllegalStateException("Cannot create stream with content-length of 0!");
         if (out != null)
             throw new IllegalStateException("This StreamResponse was already started!");
 
-        out = getClient().getSocket().getOutputStream();
+        try {
+            //Earlier responses on this connection have to be written first
+            getClient().awaitWriteTurn(sequence);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to write the response");
+        }
+
+        //An earlier response ended the connection, the client won't read this one
+        if (getClient().isClosing())
+            throw new IOException("The connection was closed by an earlier response");
+
+        OutputStream stream = getClient().getResponseStream();
 
         if (!hasHeader("Content-Type"))
             addHeader("Content-Type", "text/html; charset=UTF-8");
 
+        boolean chunk = contentLength <= 0 && chunkingSupported;
+        if (contentLength > 0) {
+            addHeader("Content-Length", "" + contentLength);
+        } else if (chunk) {
+            removeHeader("Content-Length");
+            addHeader("Transfer-Encoding", "chunked");
+            if (trailers != null && !trailers.isEmpty()) {
+                StringBuilder names = new StringBuilder();
+                for (String property : trailers.keySet()) {
+                    if (names.length() > 0)
+                        names.append(", ");
+                    names.append(property);
+                }
+                addHeader("Trailer", names.toString());
+            }
+        } else {
+            //The end of the content can only be marked by closing the connection
+            removeHeader("Content-Length");
+            removeHeader("Keep-Alive");
+            addHeader("Connection", "close");
+        }
 
-        addHeader("Content-Length", "" + contentLength);
+        HeaderWriter.write(this, stream);
 
-        String raw = "HTTP/1.1 " + getStatusCode().getCode() + " " + getStatusCode().getName() + "\n";
-        for (String property : getHeaders().keySet()) {
-            raw += property + ": " + getHeaders().get(property) + "\n";
+        if (chunk) {
+            if (trailers == null)
+                trailers = new LinkedHashMap<String, String>();
+            chunked = new ChunkedOutputStream(stream, chunkSize, trailers);
+            out = chunked;
+        } else if (contentLength > 0) {
+            fixed = new LengthOutputStream(stream, contentLength);
+            out = fixed;
+        } else {
+            out = stream;
         }
-        raw += "\n";
 
-        byte[] rawHeaderData = raw.getBytes(Charset.forName("ASCII"));
+        return out;
+    }
+
+    /**
+     * End the content of this response. For chunked content this writes the last chunk and the trailers, otherwise
+     * it just flushes the stream. This is done automatically once the handler returns, but invoking it early lets the
+     * client see the end of the response while the handler is still running. <br></br>
+     * If fewer bytes than the content length were written, the client can no longer tell where this response ends, so
+     * the connection is closed
+     * @throws IOException If there was an error writing to the stream
+     * @throws java.lang.IllegalStateException If the stream was not started
+     */
+    public void finishStream() throws IOException {
+        if (out == null)
+            throw new IllegalStateException("This StreamResponse was not started!");
 
-        out.write(rawHeaderData);
+        if (chunked != null)
+            chunked.finish();
+        else
+            out.flush();
 
-        return out;
+        if (fixed != null && fixed.remaining > 0) {
+            removeHeader("Keep-Alive");
+            addHeader("Connection", "close");
+            getClient().closeAfterResponse();
+        }
+    }
+
+    /**
+     * Start streaming a single range of the content to the client. The response is turned into a
+     * {@link me.eddiep.tinyhttp.net.http.StatusCode#PartialContent} with the matching <code>Content-Range</code> header
+     * and the content length is set to the length of the range. <br></br>
+     * Use {@link Request#getRanges(long, String, long)} to find out which range the client asked for, you must write exactly
+     * {@link me.eddiep.tinyhttp.net.http.ByteRange#getLength()} bytes to the returned stream
+     * @param range The range of the content that will be written
+     * @param totalLength The length of the whole content
+     * @return A stream you can write the range to
+     * @throws IOException If there was an error creating or writing to the stream
+     * @throws java.lang.IllegalStateException If the stream was already created
+     * @throws java.lang.IllegalArgumentException If the range does not fit in the total length
+     */
+    public OutputStream startStream(ByteRange range, long totalLength) throws IOException {
+        if (range.getEnd() >= totalLength)
+            throw new IllegalArgumentException("The range " + range.getStart() + "-" + range.getEnd() + " does not fit in " + totalLength + " bytes!");
+
+        setStatusCode(StatusCode.PartialContent);
+        addHeader("Accept-Ranges", "bytes");
+        addHeader("Content-Range", range.toContentRange(totalLength));
+        setContentLength(range.getLength());
+        return startStream();
     }
 
     /**
@@ -86,4 +231,42 @@ public class StreamResponse extends Response {
     public StreamResponse createStreamResponse(long l) {
         throw new UnsupportedOperationException("Cannot create a StreamResponse from a StreamResponse object!");
     }
+
+    /**
+     * Passes at most the declared content length on to the connection. Writing more would make the client read the
+     * rest as the start of the next response
+     */
+    private static class LengthOutputStream extends OutputStream {
+        private final OutputStream stream;
+        private long remaining;
+
+        LengthOutputStream(OutputStream stream, long contentLength) {
+            this.stream = stream;
+            this.remaining = contentLength;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            checkRoom(1);
+            stream.write(b);
+            remaining--;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            checkRoom(len);
+            stream.write(b, off, len);
+            remaining -= len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            stream.flush();
+        }
+
+        private void checkRoom(int len) throws IOException {
+            if (len > remaining)
+                throw new IOException("Writing " + len + " more bytes would exceed the Content-Length, only " + remaining + " are left");
+        }
+    }
 }
\ No newline at end of file
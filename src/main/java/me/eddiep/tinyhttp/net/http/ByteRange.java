@@ -0,0 +1,131 @@
+package me.eddiep.tinyhttp.net.http;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A range of bytes requested with the <code>Range</code> header. Both ends of the range are inclusive
+ */
+public final class ByteRange {
+    /**
+     * The most ranges a single request may ask for. Requests asking for more are answered with the whole resource
+     */
+    public static final int MAX_RANGES = 16;
+
+    private final long start;
+    private final long end;
+
+    /**
+     * Create a new byte range
+     * @param start The first byte in the range
+     * @param end The last byte in the range
+     */
+    public ByteRange(long start, long end) {
+        if (start < 0 || end < start)
+            throw new IllegalArgumentException("Invalid byte range " + start + "-" + end + "!");
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * Get the first byte in this range
+     * @return The position of the first byte
+     */
+    public long getStart() {
+        return start;
+    }
+
+    /**
+     * Get the last byte in this range
+     * @return The position of the last byte
+     */
+    public long getEnd() {
+        return end;
+    }
+
+    /**
+     * Get the number of bytes in this range
+     * @return The length of this range
+     */
+    public long getLength() {
+        return end - start + 1;
+    }
+
+    /**
+     * Get the value of the <code>Content-Range</code> header for this range
+     * @param totalLength The length of the whole resource
+     * @return The <code>Content-Range</code> header value
+     */
+    public String toContentRange(long totalLength) {
+        return "bytes " + start + "-" + end + "/" + totalLength;
+    }
+
+    /**
+     * Parse the value of a <code>Range</code> header
+     * @param header The value of the <code>Range</code> header
+     * @param length The length of the resource the ranges are for
+     * @return The satisfiable ranges in the order they were requested. This is an empty list if none of the ranges can be
+     * satisfied, or null if the header is not a valid byte range header and should be ignored
+     */
+    public static List<ByteRange> parse(String header, long length) {
+        header = header.trim();
+        if (!header.regionMatches(true, 0, "bytes=", 0, 6))
+            return null;
+
+        String[] specs = header.substring(6).split(",");
+        if (specs.length > MAX_RANGES)
+            return null;
+
+        ArrayList<ByteRange> ranges = new ArrayList<ByteRange>(specs.length);
+        for (String spec : specs) {
+            spec = spec.trim();
+            int dash = spec.indexOf('-');
+            if (dash == -1)
+                return null;
+
+            long start, end;
+            if (dash == 0) {
+                //A suffix range, the last n bytes
+                long suffix = parseNumber(spec.substring(1));
+                if (suffix < 0)
+                    return null;
+                if (suffix == 0 || length == 0)
+                    continue;
+                start = Math.max(0, length - suffix);
+                end = length - 1;
+            } else {
+                start = parseNumber(spec.substring(0, dash));
+                end = dash == spec.length() - 1 ? Long.MAX_VALUE : parseNumber(spec.substring(dash + 1));
+                if (start < 0 || end < start)
+                    return null;
+                if (start >= length)
+                    continue;
+                end = Math.min(end, length - 1);
+            }
+
+            ranges.add(new ByteRange(start, end));
+        }
+
+        return ranges;
+    }
+
+    /**
+     * Parse one of the numbers in a byte range, which may only be made of digits
+     * @return The number, or -1 if it is not a valid number
+     */
+    private static long parseNumber(String value) {
+        if (value.isEmpty())
+            return -1;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9')
+                return -1;
+        }
+
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return -1; //Too large to be a position in any file
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package me.eddiep.tinyhttp.net.http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Map;
+
+/**
+ * An {@link java.io.OutputStream} that writes everything written to it with the <code>chunked</code> transfer coding. <br></br>
+ * Data is collected into chunks of a fixed size, so no more than one chunk is ever kept in memory. The size line and the
+ * CRLF that end a chunk are put around the data in the same buffer, so every chunk reaches the underlying stream in one
+ * write. Writes that are larger than a chunk are split into full chunks. <br></br>
+ * The message is ended by {@link ChunkedOutputStream#finish()} or {@link ChunkedOutputStream#close()}, which write the last
+ * chunk and any trailers. Neither of them closes the underlying stream, so the connection can be used for the next response
+ */
+public class ChunkedOutputStream extends OutputStream {
+    private static final Charset LATIN1 = Charset.forName("ISO-8859-1");
+    private static final byte[] HEX = { '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f' };
+
+    /**
+     * The room in front of the data for the longest size line, 8 hex digits and CRLF
+     */
+    private static final int SIZE_LINE_LENGTH = 10;
+
+    private final OutputStream out;
+    private final int chunkSize;
+    private final byte[] buffer;
+    private final Map<String, String> trailers;
+    private int count;
+    private boolean finished;
+
+    /**
+     * Create a new chunked stream
+     * @param out The stream to write the chunks to
+     * @param chunkSize The size of each chunk, in bytes
+     */
+    public ChunkedOutputStream(OutputStream out, int chunkSize) {
+        this(out, chunkSize, null);
+    }
+
+    /**
+     * Create a new chunked stream that ends with trailers
+     * @param out The stream to write the chunks to
+     * @param chunkSize The size of each chunk, in bytes
+     * @param trailers The trailers to write after the last chunk, or null for none. The map is read when the stream is
+     *                 finished, so trailers can still be added while the content is being written
+     */
+    public ChunkedOutputStream(OutputStream out, int chunkSize, Map<String, String> trailers) {
+        if (chunkSize <= 0)
+            throw new IllegalArgumentException("The chunk size must be greater than 0!");
+
+        this.out = out;
+        this.chunkSize = chunkSize;
+        this.buffer = new byte[SIZE_LINE_LENGTH + chunkSize + 2];
+        this.trailers = trailers;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        if (count == chunkSize)
+            writeBuffer();
+        buffer[SIZE_LINE_LENGTH + count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        if (len == 0)
+            return;
+
+        if (len >= chunkSize) {
+            writeBuffer();
+            while (len >= chunkSize) {
+                System.arraycopy(b, off, buffer, SIZE_LINE_LENGTH, chunkSize);
+                count = chunkSize;
+                writeBuffer();
+                off += chunkSize;
+                len -= chunkSize;
+            }
+        } else if (len > chunkSize - count) {
+            writeBuffer();
+        }
+
+        System.arraycopy(b, off, buffer, SIZE_LINE_LENGTH + count, len);
+        count += len;
+    }
+
+    /**
+     * Send whatever is buffered as a chunk and flush the underlying stream
+     * @throws IOException If there was an error writing to the underlying stream
+     */
+    @Override
+    public void flush() throws IOException {
+        if (!finished)
+            writeBuffer();
+        out.flush();
+    }
+
+    /**
+     * End the message by writing any buffered data, the last chunk and the trailers. Calling this more than once has no effect
+     * @throws IOException If there was an error writing to the underlying stream
+     */
+    public void finish() throws IOException {
+        if (finished)
+            return;
+
+        writeBuffer();
+        finished = true;
+
+        StringBuilder end = new StringBuilder("0\r\n");
+        if (trailers != null) {
+            for (Map.Entry<String, String> trailer : trailers.entrySet()) {
+                appendTrailerText(end, trailer.getKey());
+                end.append(": ");
+                appendTrailerText(end, trailer.getValue());
+                end.append("\r\n");
+            }
+        }
+        end.append("\r\n");
+
+        //Characters outside of Latin-1 become '?', like they do in headers
+        out.write(end.toString().getBytes(LATIN1));
+        out.flush();
+    }
+
+    /**
+     * Check whether this message was ended
+     * @return True if {@link ChunkedOutputStream#finish()} was invoked
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * End the message, see {@link ChunkedOutputStream#finish()}. The underlying stream is left open
+     * @throws IOException If there was an error writing to the underlying stream
+     */
+    @Override
+    public void close() throws IOException {
+        finish();
+    }
+
+    private void writeBuffer() throws IOException {
+        if (count == 0)
+            return;
+
+        int start = SIZE_LINE_LENGTH - 2;
+        buffer[start] = '\r';
+        buffer[start + 1] = '\n';
+        int size = count;
+        do {
+            buffer[--start] = HEX[size & 0xF];
+            size >>>= 4;
+        } while (size != 0);
+
+        int end = SIZE_LINE_LENGTH + count;
+        buffer[end++] = '\r';
+        buffer[end++] = '\n';
+
+        out.write(buffer, start, end - start);
+        count = 0;
+    }
+
+    /**
+     * Append the name or value of a trailer. A CR or LF would let it end the line early, so they are replaced by spaces
+     * the same way header values are
+     */
+    private static void appendTrailerText(StringBuilder end, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            end.append(c == '\r' || c == '\n' ? ' ' : c);
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (finished)
+            throw new IOException("The chunked stream was already finished!");
+    }
+}
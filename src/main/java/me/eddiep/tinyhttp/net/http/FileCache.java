@@ -0,0 +1,361 @@
+package me.eddiep.tinyhttp.net.http;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An in-memory cache of small static files. Each entry holds the whole file, ready to be written to a client, along with
+ * its MIME type. <br></br>
+ * The cache is bounded by both a total byte budget and an entry count, and the least recently used entries are evicted
+ * first. Entries are revalidated against the file's last modified time and length at most once every
+ * {@link FileCache#getRevalidateInterval()} milliseconds, and reloaded when the file changed
+ */
+public class FileCache {
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    private boolean enabled = true;
+    private long maxBytes = 64 * 1024 * 1024;
+    private int maxEntries = 1024;
+    private long maxFileSize = 1024 * 1024;
+    private long revalidateInterval = 1000;
+    private long size;
+
+    private AtomicLong hits = new AtomicLong();
+    private AtomicLong misses = new AtomicLong();
+    private AtomicLong evictions = new AtomicLong();
+    private AtomicLong invalidations = new AtomicLong();
+
+    /**
+     * Get a file from this cache, loading it if it is not cached yet or if it changed since it was cached
+     * @param file The file to get
+     * @return The cached file, or null if this cache is disabled, the file does not exist or it is too large to be cached
+     * @throws IOException If there was an error reading the file
+     */
+    public Entry get(File file) throws IOException {
+        Entry entry = peek(file);
+        if (entry != null)
+            return entry;
+        if (!enabled)
+            return null;
+
+        misses.incrementAndGet();
+        if (!file.isFile())
+            return null;
+
+        long length = file.length();
+        if (length > maxFileSize || length > maxBytes)
+            return null;
+
+        entry = load(file, System.currentTimeMillis());
+        put(file.getPath(), entry);
+        return entry;
+    }
+
+    /**
+     * Get a file from this cache without loading it. The entry is revalidated if it has not been checked in the last
+     * {@link FileCache#getRevalidateInterval()} milliseconds
+     * @param file The file to get
+     * @return The cached file, or null if the file is not cached or changed since it was cached
+     */
+    public Entry peek(File file) {
+        if (!enabled)
+            return null;
+
+        String key = file.getPath();
+        long now = System.currentTimeMillis();
+
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+        }
+        if (entry == null)
+            return null;
+
+        if (now - entry.validated < revalidateInterval) {
+            hits.incrementAndGet();
+            return entry;
+        }
+
+        if (file.lastModified() == entry.lastModified && file.length() == entry.content.length) {
+            entry.validated = now;
+            hits.incrementAndGet();
+            return entry;
+        }
+
+        invalidations.incrementAndGet();
+        remove(key);
+        return null;
+    }
+
+    /**
+     * Create the entity tag for a version of a file. The tag is made from the file's length and last modified time, so it
+     * can be computed without reading the file
+     * @param length The length of the file
+     * @param lastModified The last modified time of the file
+     * @return The entity tag, including its quotes
+     */
+    public static String createETag(long length, long lastModified) {
+        return "\"" + Long.toHexString(lastModified) + "-" + Long.toHexString(length) + "\"";
+    }
+
+    private Entry load(File file, long now) throws IOException {
+        long lastModified = file.lastModified();
+        byte[] content = new byte[(int) file.length()];
+        InputStream ios = new FileInputStream(file);
+        try {
+            int offset = 0;
+            while (offset < content.length) {
+                int read = ios.read(content, offset, content.length - offset);
+                if (read == -1)
+                    throw new IOException("EOF reached while trying to read whole file!");
+                offset += read;
+            }
+        } finally {
+            ios.close();
+        }
+
+        String mime = MimeTypes.getMimeTypeFor(file);
+        if (mime == null)
+            mime = "application/octet-stream";
+
+        return new Entry(content, mime, lastModified, createETag(content.length, lastModified), now);
+    }
+
+    private void put(String key, Entry entry) {
+        synchronized (entries) {
+            Entry old = entries.put(key, entry);
+            if (old != null)
+                size -= old.content.length;
+            size += entry.content.length;
+
+            Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+            while ((size > maxBytes || entries.size() > maxEntries) && iterator.hasNext()) {
+                Entry eldest = iterator.next().getValue();
+                if (eldest == entry)
+                    break;
+                iterator.remove();
+                size -= eldest.content.length;
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    private void remove(String key) {
+        synchronized (entries) {
+            Entry old = entries.remove(key);
+            if (old != null)
+                size -= old.content.length;
+        }
+    }
+
+    /**
+     * Remove every entry from this cache
+     */
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+            size = 0;
+        }
+    }
+
+    /**
+     * Whether or not this cache is used
+     * @return Whether or not this cache is enabled
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Set whether or not this cache is used. Disabling the cache also clears it
+     * @param enabled Whether or not this cache is enabled
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        if (!enabled)
+            clear();
+    }
+
+    /**
+     * Get the total number of bytes this cache may hold
+     * @return The byte budget of this cache
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Set the total number of bytes this cache may hold
+     * @param maxBytes The byte budget of this cache
+     */
+    public void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Get the number of files this cache may hold
+     * @return The maximum number of entries
+     */
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * Set the number of files this cache may hold
+     * @param maxEntries The maximum number of entries
+     */
+    public void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Get the size of the largest file this cache will hold, in bytes
+     * @return The largest cacheable file size
+     */
+    public long getMaxFileSize() {
+        return maxFileSize;
+    }
+
+    /**
+     * Set the size of the largest file this cache will hold, in bytes. Larger files are always read from the file system
+     * @param maxFileSize The largest cacheable file size
+     */
+    public void setMaxFileSize(long maxFileSize) {
+        this.maxFileSize = maxFileSize;
+    }
+
+    /**
+     * Get how long, in milliseconds, an entry is trusted before the file is checked for changes again
+     * @return The revalidate interval in milliseconds
+     */
+    public long getRevalidateInterval() {
+        return revalidateInterval;
+    }
+
+    /**
+     * Set how long, in milliseconds, an entry is trusted before the file is checked for changes again. A value of 0
+     * checks the file on every request
+     * @param revalidateInterval The revalidate interval in milliseconds
+     */
+    public void setRevalidateInterval(long revalidateInterval) {
+        this.revalidateInterval = revalidateInterval;
+    }
+
+    /**
+     * Get the number of bytes currently held by this cache
+     * @return The number of bytes cached
+     */
+    public long getSize() {
+        synchronized (entries) {
+            return size;
+        }
+    }
+
+    /**
+     * Get the number of files currently held by this cache
+     * @return The number of entries
+     */
+    public int getEntryCount() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * Get the number of requests answered from this cache
+     * @return The number of cache hits
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Get the number of requests that had to go to the file system
+     * @return The number of cache misses
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Get the number of entries removed to stay within the byte budget or entry count
+     * @return The number of evictions
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * Get the number of entries dropped because their file changed
+     * @return The number of invalidations
+     */
+    public long getInvalidations() {
+        return invalidations.get();
+    }
+
+    /**
+     * A file held in a {@link FileCache}
+     */
+    public static class Entry {
+        private final byte[] content;
+        private final String mimeType;
+        private final long lastModified;
+        private final String lastModifiedHeader;
+        private final String etag;
+        private volatile long validated;
+
+        Entry(byte[] content, String mimeType, long lastModified, String etag, long validated) {
+            this.content = content;
+            this.mimeType = mimeType;
+            this.lastModified = lastModified;
+            this.lastModifiedHeader = HttpDate.format(lastModified);
+            this.etag = etag;
+            this.validated = validated;
+        }
+
+        /**
+         * Get the content of the file. The returned array is shared and must not be modified
+         * @return The content of the file
+         */
+        public byte[] getContent() {
+            return content;
+        }
+
+        /**
+         * Get the MIME type of the file
+         * @return The MIME type of the file
+         */
+        public String getMimeType() {
+            return mimeType;
+        }
+
+        /**
+         * Get the last modified time of the file when it was cached
+         * @return The last modified time in milliseconds
+         */
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        /**
+         * Get the last modified time of the file when it was cached, formatted for the <code>Last-Modified</code> header
+         * @return The formatted last modified time
+         */
+        public String getLastModifiedHeader() {
+            return lastModifiedHeader;
+        }
+
+        /**
+         * Get the entity tag of the cached version of the file
+         * @return The entity tag, including its quotes
+         */
+        public String getETag() {
+            return etag;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package me.eddiep.tinyhttp.net.http;
+
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Formats and parses dates in the RFC 1123 format HTTP headers use, for example <code>Sun, 06 Nov 1994 08:49:37 GMT</code>
+ */
+public final class HttpDate {
+    private static final ThreadLocal<DateFormat> FORMAT = new ThreadLocal<DateFormat>() {
+        @Override
+        protected DateFormat initialValue() {
+            SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+            format.setTimeZone(TimeZone.getTimeZone("GMT"));
+            return format;
+        }
+    };
+
+    private static volatile CurrentDate current;
+
+    private HttpDate() { }
+
+    /**
+     * Get the current time as an HTTP date. HTTP dates only have a precision of one second, so the value is formatted
+     * once per second and shared by every caller until the next second starts
+     * @return The current date
+     */
+    public static String current() {
+        long second = System.currentTimeMillis() / 1000;
+        CurrentDate date = current;
+        if (date == null || date.second != second) {
+            date = new CurrentDate(second, format(second * 1000));
+            current = date;
+        }
+        return date.text;
+    }
+
+    /**
+     * Format a time as an HTTP date
+     * @param millis The time in milliseconds since the epoch
+     * @return The formatted date
+     */
+    public static String format(long millis) {
+        return FORMAT.get().format(new Date(millis));
+    }
+
+    /**
+     * Parse an HTTP date
+     * @param date The date to parse
+     * @return The time in milliseconds since the epoch, or -1 if the date is not a valid RFC 1123 date
+     */
+    public static long parse(String date) {
+        try {
+            return FORMAT.get().parse(date.trim()).getTime();
+        } catch (ParseException e) {
+            return -1;
+        }
+    }
+
+    private static final class CurrentDate {
+        private final long second;
+        private final String text;
+
+        CurrentDate(long second, String text) {
+            this.second = second;
+            this.text = text;
+        }
+    }
+}
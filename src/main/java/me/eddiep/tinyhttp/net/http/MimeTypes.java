@@ -1,6 +1,7 @@
 package me.eddiep.tinyhttp.net.http;
 
 import java.io.File;
+import java.nio.charset.Charset;
 import java.util.HashMap;
 import java.util.Scanner;
 
@@ -45,4 +46,48 @@ public class MimeTypes {
 
         return mime.get(ext);
     }
+
+    /**
+     * Get a parameter of a media type, for example the <code>charset</code> of <code>text/plain; charset=UTF-8</code>.
+     * Parameter names are not case sensitive and quoted values are unquoted
+     * @param contentType The media type, usually the value of a <code>Content-Type</code> header. May be null
+     * @param name The name of the parameter
+     * @return The value of the parameter, or null if the media type does not have it
+     */
+    public static String getParameter(String contentType, String name) {
+        if (contentType == null)
+            return null;
+
+        String[] parameters = contentType.split(";");
+        for (int i = 1; i < parameters.length; i++) {
+            String parameter = parameters[i].trim();
+            int equals = parameter.indexOf('=');
+            if (equals == -1 || !parameter.substring(0, equals).trim().equalsIgnoreCase(name))
+                continue;
+
+            String value = parameter.substring(equals + 1).trim();
+            if (value.length() > 1 && value.startsWith("\"") && value.endsWith("\""))
+                value = value.substring(1, value.length() - 1);
+            return value;
+        }
+        return null;
+    }
+
+    /**
+     * Get the charset of a media type
+     * @param contentType The media type, usually the value of a <code>Content-Type</code> header. May be null
+     * @param defaultCharset The charset to use when the media type does not name one, or names one that is not supported
+     * @return The charset of the media type
+     */
+    public static Charset getCharset(String contentType, Charset defaultCharset) {
+        String name = getParameter(contentType, "charset");
+        if (name == null)
+            return defaultCharset;
+
+        try {
+            return Charset.forName(name);
+        } catch (IllegalArgumentException e) {
+            return defaultCharset;
+        }
+    }
 }
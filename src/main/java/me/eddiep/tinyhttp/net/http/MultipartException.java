@@ -0,0 +1,27 @@
+package me.eddiep.tinyhttp.net.http;
+
+import java.io.IOException;
+
+/**
+ * Thrown by a {@link MultipartReader} when the enclosed content is not valid <code>multipart/form-data</code> or when
+ * it is larger than the limits of the reader allow
+ */
+public class MultipartException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    private final StatusCode statusCode;
+
+    public MultipartException(StatusCode statusCode, String message) {
+        super(message);
+        this.statusCode = statusCode;
+    }
+
+    /**
+     * Get the status code the client should be answered with. This is {@link StatusCode#RequestEntityTooLarge} when a size
+     * limit was exceeded, and {@link StatusCode#BadRequest} when the content is malformed
+     * @return The {@link me.eddiep.tinyhttp.net.http.StatusCode} for this error
+     */
+    public StatusCode getStatusCode() {
+        return statusCode;
+    }
+}
@@ -0,0 +1,397 @@
+package me.eddiep.tinyhttp.net.http;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A streaming reader for <code>multipart/form-data</code> content. <br></br>
+ * Parts are read one at a time with {@link MultipartReader#next()}, straight from the stream of the request, so the
+ * whole content never has to be held at once. The content of a part is kept in memory until it grows past
+ * {@link MultipartReader#getMemoryThreshold()}, after that it is written to a temporary file instead. <br></br>
+ * The limits must be set before the first part is read. The reader only holds on to the parts that were written to a
+ * temporary file, so their files can be deleted when the reader is closed, which the server does once the request has
+ * been handled
+ */
+public class MultipartReader implements Closeable {
+    static final String TEMP_FILE_PREFIX = "tinyhttp-";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int MAX_BOUNDARY_LENGTH = 70;
+    private static final int MAX_PART_HEADER_LENGTH = 16 * 1024;
+    private static final int BUFFER_LENGTH = 16 * 1024;
+
+    private final InputStream in;
+    private final byte[] delimiter;
+    private final byte[] buffer;
+    private int position;
+    private int limit;
+    private boolean eof;
+
+    private int memoryThreshold = 64 * 1024;
+    private long maxPartSize = -1;
+    private long maxTotalSize = -1;
+    private int maxParts = -1;
+    private File tempDirectory;
+
+    private boolean started;
+    private boolean finished;
+    private long totalSize;
+    private int partCount;
+    private ArrayList<Part> spilled = new ArrayList<Part>();
+
+    /**
+     * Create a new reader
+     * @param in The stream of the enclosed content
+     * @param boundary The boundary from the <code>Content-Type</code> of the content
+     * @throws java.lang.IllegalArgumentException If the boundary is empty or longer than 70 characters
+     */
+    public MultipartReader(InputStream in, String boundary) {
+        if (boundary == null || boundary.isEmpty() || boundary.length() > MAX_BOUNDARY_LENGTH)
+            throw new IllegalArgumentException("Invalid multipart boundary!");
+
+        this.in = in;
+        this.delimiter = ("\r\n--" + boundary).getBytes(Charset.forName("ISO-8859-1"));
+        this.buffer = new byte[BUFFER_LENGTH];
+
+        //The first boundary is not preceded by a line break, pretend it is so every boundary can be found the same way
+        buffer[0] = '\r';
+        buffer[1] = '\n';
+        limit = 2;
+    }
+
+    /**
+     * Get the size, in bytes, up to which the content of a part is kept in memory
+     * @return The memory threshold in bytes
+     */
+    public int getMemoryThreshold() {
+        return memoryThreshold;
+    }
+
+    /**
+     * Set the size, in bytes, up to which the content of a part is kept in memory. Larger parts are written to a temporary file
+     * @param memoryThreshold The memory threshold in bytes
+     */
+    public void setMemoryThreshold(int memoryThreshold) {
+        checkNotStarted();
+        this.memoryThreshold = memoryThreshold;
+    }
+
+    /**
+     * Get the largest size, in bytes, the content of a single part may have
+     * @return The largest part size, or -1 if there is no limit
+     */
+    public long getMaxPartSize() {
+        return maxPartSize;
+    }
+
+    /**
+     * Set the largest size, in bytes, the content of a single part may have. Reading a larger part throws a
+     * {@link MultipartException} with {@link StatusCode#RequestEntityTooLarge}
+     * @param maxPartSize The largest part size, or -1 for no limit
+     */
+    public void setMaxPartSize(long maxPartSize) {
+        checkNotStarted();
+        this.maxPartSize = maxPartSize;
+    }
+
+    /**
+     * Get the largest size, in bytes, the content of all parts may have together
+     * @return The largest total size, or -1 if there is no limit
+     */
+    public long getMaxTotalSize() {
+        return maxTotalSize;
+    }
+
+    /**
+     * Set the largest size, in bytes, the content of all parts may have together. Going over it throws a
+     * {@link MultipartException} with {@link StatusCode#RequestEntityTooLarge}
+     * @param maxTotalSize The largest total size, or -1 for no limit
+     */
+    public void setMaxTotalSize(long maxTotalSize) {
+        checkNotStarted();
+        this.maxTotalSize = maxTotalSize;
+    }
+
+    /**
+     * Get the most parts the content may have
+     * @return The most parts allowed, or -1 if there is no limit
+     */
+    public int getMaxParts() {
+        return maxParts;
+    }
+
+    /**
+     * Set the most parts the content may have. Reading more parts throws a {@link MultipartException} with
+     * {@link StatusCode#RequestEntityTooLarge}
+     * @param maxParts The most parts allowed, or -1 for no limit
+     */
+    public void setMaxParts(int maxParts) {
+        checkNotStarted();
+        this.maxParts = maxParts;
+    }
+
+    /**
+     * Get the directory temporary files are created in
+     * @return The directory, or null if the default temporary directory is used
+     */
+    public File getTempDirectory() {
+        return tempDirectory;
+    }
+
+    /**
+     * Set the directory temporary files are created in
+     * @param tempDirectory The directory, or null to use the default temporary directory
+     */
+    public void setTempDirectory(File tempDirectory) {
+        checkNotStarted();
+        this.tempDirectory = tempDirectory;
+    }
+
+    /**
+     * Read the next part
+     * @return The next part, or null if there are no more parts
+     * @throws MultipartException If the content is malformed or a size limit was exceeded
+     * @throws IOException If there was an error reading the content or writing a temporary file
+     */
+    public Part next() throws IOException {
+        if (finished)
+            return null;
+
+        if (!started) {
+            started = true;
+            //Anything before the first boundary is a preamble and is ignored
+            readContent(null);
+            if (finished)
+                return null;
+        }
+
+        if (maxParts >= 0 && partCount >= maxParts)
+            throw new MultipartException(StatusCode.RequestEntityTooLarge, "The content has more than " + maxParts + " parts");
+        partCount++;
+
+        Map<String, String> headers = readHeaders();
+        String disposition = headers.get("Content-Disposition");
+        String name = MimeTypes.getParameter(disposition, "name");
+        String fileName = MimeTypes.getParameter(disposition, "filename");
+
+        PartContent content = new PartContent();
+        try {
+            readContent(content);
+            content.close();
+        } catch (IOException e) {
+            content.discard();
+            throw e;
+        }
+
+        Part part = new Part(headers, name, fileName, content.memory, content.file, content.size);
+        if (content.file != null)
+            spilled.add(part);
+        return part;
+    }
+
+    /**
+     * Read every remaining part
+     * @return The remaining parts, in the order they were sent
+     * @throws IOException If there was an error reading the parts, see {@link MultipartReader#next()}
+     */
+    public List<Part> readAll() throws IOException {
+        ArrayList<Part> all = new ArrayList<Part>();
+        Part part;
+        while ((part = next()) != null) {
+            all.add(part);
+        }
+        return all;
+    }
+
+    /**
+     * Delete the temporary files of every part read by this reader, except those that were saved with {@link Part#saveTo(java.io.File)}
+     */
+    @Override
+    public void close() {
+        for (Part part : spilled) {
+            part.delete();
+        }
+        spilled.clear();
+    }
+
+    /**
+     * Get the boundary of a <code>multipart/form-data</code> content type
+     * @param contentType The value of the <code>Content-Type</code> header
+     * @return The boundary, or null if the content type is not <code>multipart/form-data</code> or has no boundary
+     */
+    public static String getBoundary(String contentType) {
+        if (contentType == null || !contentType.trim().regionMatches(true, 0, "multipart/form-data", 0, 19))
+            return null;
+        return MimeTypes.getParameter(contentType, "boundary");
+    }
+
+    /**
+     * Read up to the next delimiter, then past the line break that follows it
+     * @param sink Where to write the content before the delimiter, or null to throw it away
+     */
+    private void readContent(PartContent sink) throws IOException {
+        while (true) {
+            int found = indexOfDelimiter();
+            if (found != -1) {
+                if (sink != null)
+                    sink.write(buffer, position, found - position);
+                position = found + delimiter.length;
+                readAfterDelimiter();
+                return;
+            }
+
+            //Everything except a possible start of the delimiter at the end of the buffer is content
+            int safe = Math.max(position, limit - delimiter.length + 1);
+            if (sink != null)
+                sink.write(buffer, position, safe - position);
+            position = safe;
+
+            if (!fill())
+                throw new MultipartException(StatusCode.BadRequest, "The multipart content ended before its closing boundary");
+        }
+    }
+
+    private void readAfterDelimiter() throws IOException {
+        //Either "--" for the last boundary, or optional whitespace and a line break
+        while (!eof && limit - position < 2) {
+            fill();
+        }
+        if (limit - position >= 2 && buffer[position] == '-' && buffer[position + 1] == '-') {
+            finished = true;
+            return;
+        }
+
+        while (true) {
+            if (position == limit && !fill())
+                throw new MultipartException(StatusCode.BadRequest, "The multipart content ended after a boundary");
+
+            byte b = buffer[position++];
+            if (b == '\n')
+                return;
+            if (b != ' ' && b != '\t' && b != '\r')
+                throw new MultipartException(StatusCode.BadRequest, "Invalid multipart boundary");
+        }
+    }
+
+    private Map<String, String> readHeaders() throws IOException {
+        TreeMap<String, String> headers = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+        ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+        int read = 0;
+        while (true) {
+            if (position == limit && !fill())
+                throw new MultipartException(StatusCode.BadRequest, "The multipart content ended inside the headers of a part");
+            if (++read > MAX_PART_HEADER_LENGTH)
+                throw new MultipartException(StatusCode.RequestEntityTooLarge, "The headers of a part are too large");
+
+            byte b = buffer[position++];
+            if (b != '\n') {
+                line.write(b);
+                continue;
+            }
+
+            //Part headers are sent as UTF-8 by browsers, so file names with other characters survive
+            String header = new String(line.toByteArray(), UTF_8).trim();
+            line.reset();
+            if (header.isEmpty())
+                return headers;
+
+            int colon = header.indexOf(':');
+            if (colon > 0 && !headers.containsKey(header.substring(0, colon).trim()))
+                headers.put(header.substring(0, colon).trim(), header.substring(colon + 1).trim());
+        }
+    }
+
+    private int indexOfDelimiter() {
+        byte first = delimiter[0];
+        int last = limit - delimiter.length;
+        outer:
+        for (int i = position; i <= last; i++) {
+            if (buffer[i] != first)
+                continue;
+            for (int j = 1; j < delimiter.length; j++) {
+                if (buffer[i + j] != delimiter[j])
+                    continue outer;
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    private boolean fill() throws IOException {
+        if (eof)
+            return false;
+
+        if (position > 0) {
+            System.arraycopy(buffer, position, buffer, 0, limit - position);
+            limit -= position;
+            position = 0;
+        }
+
+        int read = in.read(buffer, limit, buffer.length - limit);
+        if (read == -1) {
+            eof = true;
+            return false;
+        }
+        limit += read;
+        return true;
+    }
+
+    private void checkNotStarted() {
+        if (started)
+            throw new IllegalStateException("The limits can't be changed once parts have been read!");
+    }
+
+    /**
+     * Collects the content of one part, in memory until it passes the memory threshold and in a temporary file after that
+     */
+    private class PartContent {
+        private ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private OutputStream out;
+        private File file;
+        private byte[] memory;
+        private long size;
+
+        void write(byte[] data, int offset, int length) throws IOException {
+            if (length == 0)
+                return;
+
+            size += length;
+            totalSize += length;
+            if (maxPartSize >= 0 && size > maxPartSize)
+                throw new MultipartException(StatusCode.RequestEntityTooLarge, "A part is larger than " + maxPartSize + " bytes");
+            if (maxTotalSize >= 0 && totalSize > maxTotalSize)
+                throw new MultipartException(StatusCode.RequestEntityTooLarge, "The parts are larger than " + maxTotalSize + " bytes");
+
+            if (out == null && size > memoryThreshold) {
+                file = File.createTempFile(TEMP_FILE_PREFIX, ".part", tempDirectory);
+                out = new BufferedOutputStream(new FileOutputStream(file), BUFFER_LENGTH);
+                bytes.writeTo(out);
+                bytes = null;
+            }
+
+            if (out != null)
+                out.write(data, offset, length);
+            else
+                bytes.write(data, offset, length);
+        }
+
+        void close() throws IOException {
+            if (out != null)
+                out.close();
+            else
+                memory = bytes.toByteArray();
+        }
+
+        void discard() {
+            try {
+                if (out != null)
+                    out.close();
+            } catch (IOException ignored) { }
+            if (file != null && !file.delete())
+                file.deleteOnExit();
+        }
+    }
+}
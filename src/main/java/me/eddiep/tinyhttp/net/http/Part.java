@@ -0,0 +1,173 @@
+package me.eddiep.tinyhttp.net.http;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * A single part of a <code>multipart/form-data</code> request, read by a {@link MultipartReader}. <br></br>
+ * Small parts are kept in memory, larger parts are kept in a temporary file. Temporary files are deleted once the
+ * request has been handled, use {@link Part#saveTo(java.io.File)} to keep the content of a part
+ */
+public final class Part {
+    private final Map<String, String> headers;
+    private final String name;
+    private final String fileName;
+    private final byte[] content;
+    private File file;
+    private boolean temporary;
+    private final long size;
+
+    Part(Map<String, String> headers, String name, String fileName, byte[] content, File file, long size) {
+        this.headers = headers;
+        this.name = name;
+        this.fileName = fileName;
+        this.content = content;
+        this.file = file;
+        this.temporary = file != null;
+        this.size = size;
+    }
+
+    /**
+     * Get the name of the form field this part is for
+     * @return The name of the form field, or null if the part did not have one
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Get the name of the file the client uploaded in this part
+     * @return The file name, or null if this part is not a file
+     */
+    public String getFileName() {
+        return fileName;
+    }
+
+    /**
+     * Check whether this part is an uploaded file
+     * @return True if this part has a file name
+     */
+    public boolean isFile() {
+        return fileName != null;
+    }
+
+    /**
+     * Get the content type of this part
+     * @return The value of the <code>Content-Type</code> header of this part, or <code>text/plain</code> if it has none
+     */
+    public String getContentType() {
+        String type = getHeader("Content-Type");
+        return type != null ? type : "text/plain";
+    }
+
+    /**
+     * Get the value of a header of this part. Header names are not case sensitive
+     * @param header The property name to get the value for. Example: 'Content-Type'
+     * @return The value for that property or null if no header was found
+     */
+    public String getHeader(String header) {
+        return headers.get(header);
+    }
+
+    /**
+     * Get all headers of this part in an unmodifiable {@link java.util.Map}
+     * @return All headers of this part
+     */
+    public Map<String, String> getHeaders() {
+        return Collections.unmodifiableMap(headers);
+    }
+
+    /**
+     * Get the size of the content of this part
+     * @return The size in bytes
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Check whether the content of this part is kept in memory
+     * @return True if the content is in memory, false if it is in a temporary file
+     */
+    public boolean isInMemory() {
+        return content != null;
+    }
+
+    /**
+     * Open a stream to read the content of this part
+     * @return A new {@link java.io.InputStream} for the content
+     * @throws IOException If the temporary file could not be opened
+     */
+    public InputStream getInputStream() throws IOException {
+        if (content != null)
+            return new ByteArrayInputStream(content);
+        if (file == null)
+            throw new IOException("The content of this part was deleted!");
+        return new FileInputStream(file);
+    }
+
+    /**
+     * Get the content of this part as a byte array. If the content is in a temporary file, the whole file is read
+     * @return The content of this part
+     * @throws IOException If the temporary file could not be read
+     */
+    public byte[] getBytes() throws IOException {
+        if (content != null)
+            return content;
+        if (file == null)
+            throw new IOException("The content of this part was deleted!");
+        if (size > Integer.MAX_VALUE - 8)
+            throw new IOException("The content of this part is too large to read into memory (" + size + " bytes)!");
+        return Files.readAllBytes(file.toPath());
+    }
+
+    /**
+     * Get the content of this part as a {@link java.lang.String}. The content is decoded with the charset given in the
+     * <code>Content-Type</code> of this part, or UTF-8 if there is none
+     * @return The content of this part
+     * @throws IOException If the temporary file could not be read
+     */
+    public String getString() throws IOException {
+        return new String(getBytes(), MimeTypes.getCharset(getHeader("Content-Type"), Charset.forName("UTF-8")));
+    }
+
+    /**
+     * Save the content of this part to a file. A temporary file is moved instead of copied when possible, and is no
+     * longer deleted once the request has been handled
+     * @param destination The file to save the content to, an existing file is replaced
+     * @throws IOException If the content could not be saved
+     */
+    public void saveTo(File destination) throws IOException {
+        if (content != null) {
+            OutputStream out = new FileOutputStream(destination);
+            try {
+                out.write(content);
+            } finally {
+                out.close();
+            }
+            return;
+        }
+        if (file == null)
+            throw new IOException("The content of this part was deleted!");
+
+        Files.move(file.toPath(), destination.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        file = destination;
+        temporary = false;
+    }
+
+    /**
+     * Delete the temporary file of this part, if it has one. This is done automatically once the request has been handled
+     */
+    public void delete() {
+        if (temporary) {
+            if (!file.delete() && file.exists())
+                file.deleteOnExit();
+            file = null;
+            temporary = false;
+        }
+    }
+}
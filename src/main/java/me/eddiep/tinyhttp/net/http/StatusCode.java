@@ -31,6 +31,7 @@ public enum StatusCode {
     UnsupportedMediaType(415, "Unsupported Media Type"),
     RequestedRangeNotSatisfiable(416, "Requested Range Not Satisfiable"),
     ExpectationFailed(417, "Expectation Failed"),
+    RequestHeaderFieldsTooLarge(431, "Request Header Fields Too Large"),
     InternalServerError(500, "Internal Server Error"),
     NotImplemented(501, "Not Implemented"),
     BadGateway(502, "Bad Gateway"),
@@ -0,0 +1,24 @@
+package me.eddiep.tinyhttp.routing;
+
+import me.eddiep.tinyhttp.net.Request;
+import me.eddiep.tinyhttp.net.Response;
+
+import java.util.concurrent.CompletionStage;
+
+/**
+ * An AsyncRequestHandler is a direct invoker for a single handler method in a {@link me.eddiep.tinyhttp.TinyListener}
+ * class that returns a {@link java.util.concurrent.CompletionStage}. The response is written once the stage completes
+ *
+ * @see HandlerFactory#createAsyncHandler(me.eddiep.tinyhttp.TinyListener, java.lang.reflect.Method)
+ */
+public interface AsyncRequestHandler {
+
+    /**
+     * Start handling a request
+     * @param request The request sent by the client
+     * @param response The response to fill in before the returned stage completes
+     * @return A stage that completes once the response has been filled in
+     * @throws Throwable Any exception thrown by the handler method
+     */
+    CompletionStage<?> handle(Request request, Response response) throws Throwable;
+}
@@ -0,0 +1,125 @@
+package me.eddiep.tinyhttp.routing;
+
+import me.eddiep.tinyhttp.TinyListener;
+import me.eddiep.tinyhttp.net.Request;
+import me.eddiep.tinyhttp.net.Response;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Turns handler methods of a {@link me.eddiep.tinyhttp.TinyListener} class into {@link RequestHandler} objects. <br></br>
+ * Public methods in public listener classes are linked with {@link java.lang.invoke.LambdaMetafactory}, so invoking the
+ * handler is a plain interface call the JIT can inline. Any other method falls back to a bound
+ * {@link java.lang.invoke.MethodHandle}, which still avoids the argument boxing and
+ * {@link java.lang.reflect.InvocationTargetException} wrapping of {@link java.lang.reflect.Method#invoke(Object, Object...)}
+ */
+public final class HandlerFactory {
+    private static final MethodType HANDLER_TYPE = MethodType.methodType(void.class, Request.class, Response.class);
+    private static final MethodType ASYNC_HANDLER_TYPE = MethodType.methodType(CompletionStage.class, Request.class, Response.class);
+
+    private HandlerFactory() { }
+
+    /**
+     * Create a {@link RequestHandler} that invokes the method on the given listener
+     * @param listener The listener object the method will be invoked on
+     * @param method The handler method. It must take a {@link me.eddiep.tinyhttp.net.Request} and a
+     *               {@link me.eddiep.tinyhttp.net.Response} as its only parameters
+     * @return A {@link RequestHandler} for the method
+     * @throws IllegalAccessException If the method could not be accessed
+     */
+    public static RequestHandler createHandler(TinyListener listener, Method method) throws IllegalAccessException {
+        if (Modifier.isPublic(method.getModifiers()) && Modifier.isPublic(method.getDeclaringClass().getModifiers())) {
+            try {
+                return (RequestHandler) createLambda(listener, method, RequestHandler.class, HANDLER_TYPE);
+            } catch (Throwable t) {
+                //The lambda could not be linked from here (for example the class is not visible to us), use a method handle instead
+            }
+        }
+
+        return new MethodHandleHandler(createMethodHandle(listener, method, HANDLER_TYPE));
+    }
+
+    /**
+     * Create an {@link AsyncRequestHandler} that invokes the method on the given listener
+     * @param listener The listener object the method will be invoked on
+     * @param method The handler method. It must take a {@link me.eddiep.tinyhttp.net.Request} and a
+     *               {@link me.eddiep.tinyhttp.net.Response} as its only parameters and return a {@link java.util.concurrent.CompletionStage}
+     * @return An {@link AsyncRequestHandler} for the method
+     * @throws IllegalAccessException If the method could not be accessed
+     */
+    public static AsyncRequestHandler createAsyncHandler(TinyListener listener, Method method) throws IllegalAccessException {
+        if (!CompletionStage.class.isAssignableFrom(method.getReturnType()))
+            throw new IllegalArgumentException(method.getName() + " does not return a CompletionStage!");
+
+        if (Modifier.isPublic(method.getModifiers()) && Modifier.isPublic(method.getDeclaringClass().getModifiers())) {
+            try {
+                return (AsyncRequestHandler) createLambda(listener, method, AsyncRequestHandler.class, ASYNC_HANDLER_TYPE);
+            } catch (Throwable t) {
+                //The lambda could not be linked from here (for example the class is not visible to us), use a method handle instead
+            }
+        }
+
+        return new MethodHandleAsyncHandler(createMethodHandle(listener, method, ASYNC_HANDLER_TYPE));
+    }
+
+    private static MethodHandle createMethodHandle(TinyListener listener, Method method, MethodType type) throws IllegalAccessException {
+        method.setAccessible(true);
+        MethodHandle handle = MethodHandles.lookup().unreflect(method);
+        if (!Modifier.isStatic(method.getModifiers()))
+            handle = handle.bindTo(listener);
+        return handle.asType(type);
+    }
+
+    private static Object createLambda(TinyListener listener, Method method, Class<?> handlerType, MethodType type) throws Throwable {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        MethodHandle target = lookup.unreflect(method);
+        Class<?> owner = method.getDeclaringClass();
+        boolean isStatic = Modifier.isStatic(method.getModifiers());
+
+        CallSite site = LambdaMetafactory.metafactory(
+                lookup,
+                "handle",
+                isStatic ? MethodType.methodType(handlerType) : MethodType.methodType(handlerType, owner),
+                type,
+                target,
+                type
+        );
+
+        if (isStatic)
+            return site.getTarget().invoke();
+        return site.getTarget().invoke(owner.cast(listener));
+    }
+
+    private static final class MethodHandleHandler implements RequestHandler {
+        private final MethodHandle handle;
+
+        MethodHandleHandler(MethodHandle handle) {
+            this.handle = handle;
+        }
+
+        @Override
+        public void handle(Request request, Response response) throws Throwable {
+            handle.invokeExact(request, response);
+        }
+    }
+
+    private static final class MethodHandleAsyncHandler implements AsyncRequestHandler {
+        private final MethodHandle handle;
+
+        MethodHandleAsyncHandler(MethodHandle handle) {
+            this.handle = handle;
+        }
+
+        @Override
+        public CompletionStage<?> handle(Request request, Response response) throws Throwable {
+            return (CompletionStage<?>) handle.invokeExact(request, response);
+        }
+    }
+}
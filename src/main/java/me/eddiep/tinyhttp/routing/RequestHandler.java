@@ -0,0 +1,20 @@
+package me.eddiep.tinyhttp.routing;
+
+import me.eddiep.tinyhttp.net.Request;
+import me.eddiep.tinyhttp.net.Response;
+
+/**
+ * A RequestHandler is a direct invoker for a single handler method in a {@link me.eddiep.tinyhttp.TinyListener} class.
+ *
+ * @see HandlerFactory#createHandler(me.eddiep.tinyhttp.TinyListener, java.lang.reflect.Method)
+ */
+public interface RequestHandler {
+
+    /**
+     * Handle a request
+     * @param request The request sent by the client
+     * @param response The response to fill in
+     * @throws Throwable Any exception thrown by the handler method
+     */
+    void handle(Request request, Response response) throws Throwable;
+}
@@ -0,0 +1,250 @@
+package me.eddiep.tinyhttp.routing;
+
+import me.eddiep.tinyhttp.net.http.HttpMethod;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * A RouteDispatcher maps a {@link me.eddiep.tinyhttp.net.http.HttpMethod} and a request path to a handler. Routes are
+ * registered once (usually in {@link me.eddiep.tinyhttp.TinyHttpServer#onStart()}) and then looked up for every request. <br></br>
+ * Each route path is a regex, just like the path given to {@link me.eddiep.tinyhttp.annotations.GetHandler#requestPath()}, but
+ * it is sorted into one of three kinds when it is registered:
+ * <ul>
+ *     <li><b>Literal</b> routes contain no regex syntax (for example <code>/index.html</code>) and are kept in a hash map</li>
+ *     <li><b>Prefix</b> routes are a literal followed by <code>.*</code> (for example <code>/wat.*</code>) and are kept in a trie</li>
+ *     <li><b>Regex</b> routes are everything else. Their {@link java.util.regex.Pattern} is compiled once and they are kept
+ *     in the trie under their literal prefix, so only routes whose prefix matches the path are ever tested</li>
+ * </ul>
+ * When more than one route matches a path, the following precedence is used:
+ * <ol>
+ *     <li>A literal route always wins</li>
+ *     <li>Otherwise the route with the longest literal prefix wins</li>
+ *     <li>If two routes share the same literal prefix, a regex route wins over a prefix route</li>
+ *     <li>If two regex routes share the same literal prefix, the one registered first wins</li>
+ * </ol>
+ * @param <T> The type of handler stored for each route
+ */
+public final class RouteDispatcher<T> {
+    private EnumMap<HttpMethod, RouteTable<T>> tables = new EnumMap<HttpMethod, RouteTable<T>>(HttpMethod.class);
+
+    /**
+     * Register a new route
+     * @param method The {@link me.eddiep.tinyhttp.net.http.HttpMethod} this route handles
+     * @param requestPath The path this route handles, as a regex
+     * @param handler The handler to return when this route matches
+     * @throws java.util.regex.PatternSyntaxException If the requestPath is not a valid regex
+     */
+    public void register(HttpMethod method, String requestPath, T handler) {
+        RouteTable<T> table = tables.get(method);
+        if (table == null) {
+            table = new RouteTable<T>();
+            tables.put(method, table);
+        }
+
+        table.register(requestPath, handler);
+    }
+
+    /**
+     * Find the handler for a request
+     * @param method The {@link me.eddiep.tinyhttp.net.http.HttpMethod} of the request
+     * @param path The path of the request
+     * @return The handler for the matching route, or null if no route matched
+     */
+    public T lookup(HttpMethod method, String path) {
+        RouteTable<T> table = tables.get(method);
+        if (table == null)
+            return null;
+
+        return table.lookup(path);
+    }
+
+    /**
+     * Get the total number of routes registered in this dispatcher
+     * @return The number of routes
+     */
+    public int size() {
+        int size = 0;
+        for (RouteTable<T> table : tables.values()) {
+            size += table.size;
+        }
+        return size;
+    }
+
+    private static final class RouteTable<T> {
+        private HashMap<String, T> literals = new HashMap<String, T>();
+        private Node<T> root = new Node<T>();
+        private int size;
+
+        void register(String requestPath, T handler) {
+            ParsedRoute route = ParsedRoute.parse(requestPath);
+
+            if (route.kind == ParsedRoute.LITERAL) {
+                if (!literals.containsKey(route.prefix))
+                    literals.put(route.prefix, handler);
+            } else {
+                Node<T> node = root;
+                for (int i = 0; i < route.prefix.length(); i++) {
+                    node = node.childOrCreate(route.prefix.charAt(i));
+                }
+
+                if (route.kind == ParsedRoute.PREFIX) {
+                    if (node.prefixHandler == null)
+                        node.prefixHandler = handler;
+                } else {
+                    if (node.regexRoutes == null)
+                        node.regexRoutes = new ArrayList<RegexRoute<T>>();
+                    node.regexRoutes.add(new RegexRoute<T>(Pattern.compile(requestPath), handler));
+                }
+            }
+            size++;
+        }
+
+        T lookup(String path) {
+            T handler = literals.get(path);
+            if (handler != null)
+                return handler;
+
+            //Walk the trie as deep as the path allows, then test routes from the deepest node back up to the root
+            int depth = 0;
+            Node<T> node = root;
+            while (depth < path.length()) {
+                Node<T> next = node.child(path.charAt(depth));
+                if (next == null)
+                    break;
+                node = next;
+                depth++;
+            }
+
+            while (node != null) {
+                if (node.regexRoutes != null) {
+                    for (RegexRoute<T> route : node.regexRoutes) {
+                        if (route.pattern.matcher(path).matches())
+                            return route.handler;
+                    }
+                }
+                if (node.prefixHandler != null)
+                    return node.prefixHandler;
+
+                node = node.parent;
+            }
+
+            return null;
+        }
+    }
+
+    private static final class Node<T> {
+        private Node<T> parent;
+        private HashMap<Character, Node<T>> children;
+        private T prefixHandler;
+        private List<RegexRoute<T>> regexRoutes;
+
+        Node<T> child(char c) {
+            if (children == null)
+                return null;
+            return children.get(c);
+        }
+
+        Node<T> childOrCreate(char c) {
+            if (children == null)
+                children = new HashMap<Character, Node<T>>();
+
+            Node<T> child = children.get(c);
+            if (child == null) {
+                child = new Node<T>();
+                child.parent = this;
+                children.put(c, child);
+            }
+            return child;
+        }
+    }
+
+    private static final class RegexRoute<T> {
+        private final Pattern pattern;
+        private final T handler;
+
+        RegexRoute(Pattern pattern, T handler) {
+            this.pattern = pattern;
+            this.handler = handler;
+        }
+    }
+
+    /**
+     * The result of splitting a route regex into its leading literal text and whatever follows it
+     */
+    static final class ParsedRoute {
+        static final int LITERAL = 0;
+        static final int PREFIX = 1;
+        static final int REGEX = 2;
+
+        final int kind;
+        final String prefix;
+
+        private ParsedRoute(int kind, String prefix) {
+            this.kind = kind;
+            this.prefix = prefix;
+        }
+
+        static ParsedRoute parse(String regex) {
+            StringBuilder literal = new StringBuilder();
+            int i = 0;
+            while (i < regex.length()) {
+                char c = regex.charAt(i);
+                if (c == '\\' && i + 1 < regex.length() && !Character.isLetterOrDigit(regex.charAt(i + 1))) {
+                    literal.append(regex.charAt(i + 1));
+                    i += 2;
+                } else if (isMeta(c)) {
+                    break;
+                } else {
+                    literal.append(c);
+                    i++;
+                }
+            }
+
+            if (i == regex.length())
+                return new ParsedRoute(LITERAL, literal.toString());
+
+            //An alternation anywhere means the literal text may not be a prefix of every match
+            if (hasAlternation(regex))
+                return new ParsedRoute(REGEX, "");
+
+            String rest = regex.substring(i);
+            char c = regex.charAt(i);
+            if (c == '*' || c == '+' || c == '?' || c == '{') {
+                //The quantifier applies to the last literal character, so it is not part of the prefix
+                if (literal.length() > 0)
+                    literal.setLength(literal.length() - 1);
+                return new ParsedRoute(REGEX, literal.toString());
+            }
+
+            if (rest.equals(".*"))
+                return new ParsedRoute(PREFIX, literal.toString());
+
+            return new ParsedRoute(REGEX, literal.toString());
+        }
+
+        private static boolean isMeta(char c) {
+            switch (c) {
+                case '.': case '[': case ']': case '{': case '}': case '(': case ')':
+                case '*': case '+': case '?': case '^': case '$': case '|': case '\\':
+                    return true;
+                default:
+                    return false;
+            }
+        }
+
+        private static boolean hasAlternation(String regex) {
+            for (int i = 0; i < regex.length(); i++) {
+                char c = regex.charAt(i);
+                if (c == '\\')
+                    i++;
+                else if (c == '|')
+                    return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package me.eddiep.tinyhttp;
+
+import java.io.IOException;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ServerSocketChannel;
+
+/**
+ * Access to SO_REUSEPORT. This version is packaged under <code>META-INF/versions/21</code> and is only loaded on
+ * Java 21 and newer
+ */
+final class ReusePort {
+
+    private ReusePort() { }
+
+    /**
+     * Whether or not several sockets can listen on the same port and have the kernel balance connections between them.
+     * Other systems accept SO_REUSEPORT too, but only Linux spreads connections over the sockets
+     * @return Whether this is Linux
+     */
+    static boolean isSupported() {
+        return System.getProperty("os.name", "").startsWith("Linux");
+    }
+
+    /**
+     * Enable SO_REUSEPORT on a socket before it is bound
+     * @param channel The socket to enable SO_REUSEPORT on
+     * @throws IOException If the option could not be set
+     */
+    static void enable(ServerSocketChannel channel) throws IOException {
+        channel.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+    }
+}
@@ -0,0 +1,30 @@
+package me.eddiep.tinyhttp;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Access to virtual threads. This version is packaged under <code>META-INF/versions/21</code> and is only loaded on
+ * Java 21 and newer
+ */
+final class VirtualThreads {
+
+    private VirtualThreads() { }
+
+    /**
+     * Whether or not this JVM supports virtual threads
+     * @return Always true on this JVM
+     */
+    static boolean isSupported() {
+        return true;
+    }
+
+    /**
+     * Create an executor that starts a new virtual thread for every task
+     * @param name The prefix for the name of each thread
+     * @return A new executor
+     */
+    static ExecutorService newExecutor(String name) {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name, 0).factory());
+    }
+}
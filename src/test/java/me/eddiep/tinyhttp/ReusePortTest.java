@@ -0,0 +1,59 @@
+package me.eddiep.tinyhttp;
+
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+public class ReusePortTest {
+    @Test
+    public void supportedOnLinuxSinceJava9() {
+        assumeTrue(System.getProperty("os.name", "").startsWith("Linux"));
+        assumeTrue(!System.getProperty("java.specification.version", "").startsWith("1."));
+        assertTrue(ReusePort.isSupported());
+    }
+
+    @Test
+    public void socketsShareThePort() throws Exception {
+        assumeTrue(ReusePort.isSupported());
+        int port = TestServer.freePort();
+        ServerSocketChannel first = ServerSocketChannel.open();
+        ServerSocketChannel second = ServerSocketChannel.open();
+        try {
+            ReusePort.enable(first);
+            ReusePort.enable(second);
+            first.bind(new InetSocketAddress(port));
+            second.bind(new InetSocketAddress(port));
+        } finally {
+            first.close();
+            second.close();
+        }
+    }
+
+    @Test
+    public void everyAcceptorServesRequests() throws Exception {
+        TinyHttpServer server = new TinyHttpServer(TestServer.freePort(), new WorkerPoolTest.HelloListener());
+        server.setAcceptorThreads(4);
+        TestServer test = TestServer.start(server);
+        try {
+            for (int i = 0; i < 20; i++) {
+                Socket socket = test.connect();
+                try {
+                    TestServer.send(socket, TestServer.get("/hello", false));
+                    TestServer.Reply reply = TestServer.read(socket);
+                    assertEquals(200, reply.status);
+                    assertEquals("hello", reply.text());
+                } finally {
+                    socket.close();
+                }
+            }
+        } finally {
+            test.stop();
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package me.eddiep.tinyhttp;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Starts a {@link TinyHttpServer} on a free loopback port for a test, and speaks just enough HTTP/1.1 to check its responses
+ */
+public class TestServer {
+    public static final Charset ASCII = Charset.forName("US-ASCII");
+
+    private final TinyHttpServer server;
+    private final int port;
+
+    private TestServer(TinyHttpServer server, int port) {
+        this.server = server;
+        this.port = port;
+    }
+
+    /**
+     * Pick a port nothing is listening on
+     */
+    public static int freePort() throws IOException {
+        ServerSocket socket = new ServerSocket(0);
+        try {
+            return socket.getLocalPort();
+        } finally {
+            socket.close();
+        }
+    }
+
+    /**
+     * Start a server created with {@link TestServer#freePort()} and wait until it accepts connections
+     */
+    public static TestServer start(final TinyHttpServer server) throws Exception {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    server.start();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }, "test-server");
+        thread.setDaemon(true);
+        thread.start();
+
+        long deadline = System.currentTimeMillis() + 10000;
+        while (true) {
+            Socket socket = new Socket();
+            try {
+                socket.connect(new InetSocketAddress("127.0.0.1", server.getPort()), 1000);
+                return new TestServer(server, server.getPort());
+            } catch (IOException e) {
+                if (System.currentTimeMillis() > deadline)
+                    throw e;
+                Thread.sleep(20);
+            } finally {
+                socket.close();
+            }
+        }
+    }
+
+    public TinyHttpServer getServer() {
+        return server;
+    }
+
+    public Socket connect() throws IOException {
+        Socket socket = new Socket("127.0.0.1", port);
+        socket.setSoTimeout(10000);
+        socket.setTcpNoDelay(true);
+        return socket;
+    }
+
+    public void stop() throws IOException {
+        if (server.isRunning())
+            server.stop();
+    }
+
+    public static void send(Socket socket, String request) throws IOException {
+        OutputStream out = socket.getOutputStream();
+        out.write(request.getBytes(ASCII));
+        out.flush();
+    }
+
+    public static String get(String path, boolean keepAlive) {
+        return "GET " + path + " HTTP/1.1\r\nHost: localhost\r\nConnection: " + (keepAlive ? "keep-alive" : "close") + "\r\n\r\n";
+    }
+
+    /**
+     * Read one response that has a <code>Content-Length</code>, or that ends when the connection is closed
+     */
+    public static Reply read(Socket socket) throws IOException {
+        InputStream in = socket.getInputStream();
+        String status = readLine(in);
+        Map<String, String> headers = new LinkedHashMap<String, String>();
+        String line;
+        while (!(line = readLine(in)).isEmpty()) {
+            int colon = line.indexOf(':');
+            headers.put(line.substring(0, colon).trim().toLowerCase(Locale.ROOT), line.substring(colon + 1).trim());
+        }
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        String length = headers.get("content-length");
+        if (length != null) {
+            long remaining = Long.parseLong(length);
+            while (remaining > 0) {
+                int b = in.read();
+                if (b == -1)
+                    throw new EOFException();
+                body.write(b);
+                remaining--;
+            }
+        } else {
+            int b;
+            while ((b = in.read()) != -1) {
+                body.write(b);
+            }
+        }
+        return new Reply(Integer.parseInt(status.split(" ")[1]), headers, body.toByteArray());
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b == -1)
+                throw new EOFException("The connection was closed after \"" + line + "\"");
+            if (b != '\r')
+                line.append((char) b);
+        }
+        return line.toString();
+    }
+
+    public static class Reply {
+        public final int status;
+        public final Map<String, String> headers;
+        public final byte[] body;
+
+        Reply(int status, Map<String, String> headers, byte[] body) {
+            this.status = status;
+            this.headers = headers;
+            this.body = body;
+        }
+
+        public String header(String name) {
+            return headers.get(name.toLowerCase(Locale.ROOT));
+        }
+
+        public String text() {
+            return new String(body, ASCII);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package me.eddiep.tinyhttp;
+
+import me.eddiep.tinyhttp.annotations.GetHandler;
+import me.eddiep.tinyhttp.net.Request;
+import me.eddiep.tinyhttp.net.Response;
+import org.junit.Test;
+
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class WorkerPoolTest {
+    @Test
+    public void startsThreadsBeforeQueueing() throws Exception {
+        WorkerPool pool = new WorkerPool(1, 4, 100);
+        final CountDownLatch started = new CountDownLatch(4);
+        final CountDownLatch release = new CountDownLatch(1);
+        try {
+            for (int i = 0; i < 4; i++) {
+                pool.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        started.countDown();
+                        await(release);
+                    }
+                });
+            }
+
+            assertTrue("Every task should get its own thread", started.await(5, TimeUnit.SECONDS));
+            assertEquals(4, pool.getPoolSize());
+            assertEquals(0, pool.getQueueSize());
+        } finally {
+            release.countDown();
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void queuesThenRejectsOnceEveryThreadIsBusy() throws Exception {
+        WorkerPool pool = new WorkerPool(0, 2, 3);
+        final CountDownLatch release = new CountDownLatch(1);
+        Runnable blocked = new Runnable() {
+            @Override
+            public void run() {
+                await(release);
+            }
+        };
+        try {
+            for (int i = 0; i < 5; i++) {
+                pool.execute(blocked);
+            }
+            assertEquals(2, pool.getPoolSize());
+            assertEquals(3, pool.getQueueSize());
+
+            try {
+                pool.execute(blocked);
+                fail("A saturated pool should reject work");
+            } catch (RejectedExecutionException expected) {
+            }
+            assertEquals(1, pool.getRejectedCount());
+        } finally {
+            release.countDown();
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void reusesIdleThreads() throws Exception {
+        WorkerPool pool = new WorkerPool(0, 8, 10);
+        try {
+            for (int i = 0; i < 20; i++) {
+                final CountDownLatch done = new CountDownLatch(1);
+                pool.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        done.countDown();
+                    }
+                });
+                assertTrue(done.await(5, TimeUnit.SECONDS));
+                //Give the thread a moment to go back to waiting for work
+                Thread.sleep(5);
+            }
+            assertEquals("Tasks run one after another should share a thread", 1, pool.getPoolSize());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Idle persistent connections hold on to their worker, so a connection opened after more of them than there are
+     * core threads must still be served right away instead of waiting for one of them to time out
+     */
+    @Test
+    public void moreKeepAliveConnectionsThanCoreThreads() throws Exception {
+        TinyHttpServer server = new TinyHttpServer(TestServer.freePort(), new HelloListener());
+        server.setWorkerPoolSize(2, 16, 64);
+        server.setKeepAliveTimeout(5000);
+        TestServer test = TestServer.start(server);
+        List<Socket> idle = new ArrayList<Socket>();
+        try {
+            for (int i = 0; i < 4; i++) {
+                Socket socket = test.connect();
+                idle.add(socket);
+                TestServer.send(socket, TestServer.get("/hello", true));
+                assertEquals(200, TestServer.read(socket).status);
+            }
+
+            Socket socket = test.connect();
+            idle.add(socket);
+            long start = System.nanoTime();
+            TestServer.send(socket, TestServer.get("/hello", true));
+            TestServer.Reply reply = TestServer.read(socket);
+            long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            assertEquals(200, reply.status);
+            assertEquals("hello", reply.text());
+            assertTrue("The request waited " + millis + "ms for a worker", millis < 2000);
+        } finally {
+            for (Socket socket : idle) {
+                socket.close();
+            }
+            test.stop();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public static class HelloListener implements TinyListener {
+        @GetHandler(requestPath = "/hello")
+        public void hello(Request request, Response response) {
+            response.echo("hello");
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package me.eddiep.tinyhttp.net;
+
+import me.eddiep.tinyhttp.TestServer;
+import me.eddiep.tinyhttp.TinyHttpServer;
+import me.eddiep.tinyhttp.TinyListener;
+import me.eddiep.tinyhttp.annotations.GetHandler;
+import org.junit.Test;
+
+import java.net.Socket;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AsyncResponseTest {
+    /**
+     * The connection goes back to waiting for the next request while the handler is still running. Writing the response
+     * must not wait for that request, or for the keep-alive timeout when none comes
+     */
+    @Test
+    public void asyncResponseOnKeepAliveConnectionIsNotDelayed() throws Exception {
+        TinyHttpServer server = new TinyHttpServer(TestServer.freePort(), new DelayedListener());
+        server.setKeepAliveTimeout(5000);
+        TestServer test = TestServer.start(server);
+        try {
+            Socket socket = test.connect();
+            try {
+                for (int i = 0; i < 3; i++) {
+                    long start = System.nanoTime();
+                    TestServer.send(socket, TestServer.get("/delayed/" + i, true));
+                    TestServer.Reply reply = TestServer.read(socket);
+                    long took = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+                    assertEquals(200, reply.status);
+                    assertEquals(String.valueOf(i), reply.text());
+                    assertTrue("The response took " + took + "ms", took < 2000);
+                }
+            } finally {
+                socket.close();
+            }
+        } finally {
+            test.stop();
+        }
+    }
+
+    public static class DelayedListener implements TinyListener {
+        @GetHandler(requestPath = "/delayed/.*")
+        public CompletableFuture<Void> delayed(final Request request, final Response response) {
+            final CompletableFuture<Void> done = new CompletableFuture<Void>();
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        Thread.sleep(100);
+                        response.echo(request.getFileRequest());
+                        done.complete(null);
+                    } catch (InterruptedException e) {
+                        done.completeExceptionally(e);
+                    }
+                }
+            }).start();
+            return done;
+        }
+    }
+}
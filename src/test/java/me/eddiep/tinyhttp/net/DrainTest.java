@@ -0,0 +1,89 @@
+package me.eddiep.tinyhttp.net;
+
+import me.eddiep.tinyhttp.TestServer;
+import me.eddiep.tinyhttp.TinyHttpServer;
+import me.eddiep.tinyhttp.TinyListener;
+import me.eddiep.tinyhttp.annotations.GetHandler;
+import org.junit.Test;
+
+import java.net.Socket;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DrainTest {
+    @Test
+    public void idleConnectionIsClosed() throws Exception {
+        TinyHttpServer server = new TinyHttpServer(TestServer.freePort(), new AsyncListener());
+        TestServer test = TestServer.start(server);
+        Socket socket = test.connect();
+        try {
+            TestServer.send(socket, TestServer.get("/now", true));
+            assertEquals(200, TestServer.read(socket).status);
+
+            long start = System.nanoTime();
+            server.stop(Duration.ofSeconds(10)).get(5, TimeUnit.SECONDS);
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 2000);
+            assertEquals(-1, socket.getInputStream().read());
+        } finally {
+            socket.close();
+            test.stop();
+        }
+    }
+
+    /**
+     * The connection goes back to waiting for its next request while the asynchronous handler is still running, it must
+     * not be closed before the response has been written
+     */
+    @Test
+    public void pendingAsyncResponseIsWritten() throws Exception {
+        AsyncListener listener = new AsyncListener();
+        TinyHttpServer server = new TinyHttpServer(TestServer.freePort(), listener);
+        TestServer test = TestServer.start(server);
+        Socket socket = test.connect();
+        try {
+            TestServer.send(socket, TestServer.get("/later", true));
+            assertTrue(listener.started.await(5, TimeUnit.SECONDS));
+            //Let the connection go back to waiting for its next request
+            Thread.sleep(200);
+
+            CompletableFuture<Void> stopped = server.stop(Duration.ofSeconds(10));
+            Thread.sleep(200);
+            listener.later.complete("done");
+
+            TestServer.Reply reply = TestServer.read(socket);
+            assertEquals(200, reply.status);
+            assertEquals("done", reply.text());
+            stopped.get(5, TimeUnit.SECONDS);
+        } finally {
+            socket.close();
+            test.stop();
+        }
+    }
+
+    public static class AsyncListener implements TinyListener {
+        private final CountDownLatch started = new CountDownLatch(1);
+        private final CompletableFuture<String> later = new CompletableFuture<String>();
+
+        @GetHandler(requestPath = "/now")
+        public void now(Request request, Response response) {
+            response.echo("now");
+        }
+
+        @GetHandler(requestPath = "/later")
+        public CompletableFuture<Void> later(Request request, final Response response) {
+            started.countDown();
+            return later.thenAccept(new Consumer<String>() {
+                @Override
+                public void accept(String text) {
+                    response.echo(text);
+                }
+            });
+        }
+    }
+}
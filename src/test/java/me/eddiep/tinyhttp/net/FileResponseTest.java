@@ -0,0 +1,185 @@
+package me.eddiep.tinyhttp.net;
+
+import me.eddiep.tinyhttp.TestServer;
+import me.eddiep.tinyhttp.TinyHttpServer;
+import me.eddiep.tinyhttp.TinyListener;
+import me.eddiep.tinyhttp.annotations.GetHandler;
+import me.eddiep.tinyhttp.annotations.Timeout;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.Socket;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class FileResponseTest {
+    private File file;
+
+    @Before
+    public void createFile() throws IOException {
+        file = File.createTempFile("tinyhttp-file", ".txt");
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write("file contents".getBytes(TestServer.ASCII));
+        } finally {
+            out.close();
+        }
+    }
+
+    @After
+    public void deleteFile() {
+        file.delete();
+    }
+
+    @Test
+    public void discardClosesUnsentFile() throws IOException {
+        Response response = new Response((Client) null);
+        FileChannel channel = open();
+        response.setFileContent(channel, 0, channel.size());
+
+        response.discard();
+        assertFalse(channel.isOpen());
+        assertNull(response.fileContents);
+    }
+
+    @Test
+    public void fileSetAfterDiscardIsClosed() throws IOException {
+        Response response = new Response((Client) null);
+        response.discard();
+
+        FileChannel channel = open();
+        response.setFileContent(channel, 0, channel.size());
+        assertFalse(channel.isOpen());
+        assertNull(response.fileContents);
+    }
+
+    @Test
+    public void replacedFileIsClosed() throws IOException {
+        Response response = new Response((Client) null);
+        FileChannel first = open();
+        response.setFileContent(first, 0, first.size());
+        FileChannel second = open();
+        response.setFileContent(second, 0, second.size());
+
+        assertFalse(first.isOpen());
+        assertTrue(second.isOpen());
+        response.discard();
+        assertFalse(second.isOpen());
+    }
+
+    /**
+     * The first response closes the connection, so the pipelined file response after it is never written
+     */
+    @Test
+    public void unsentPipelinedFileIsClosed() throws Exception {
+        FileListener listener = new FileListener();
+        TestServer test = TestServer.start(new TinyHttpServer(TestServer.freePort(), listener));
+        try {
+            Socket socket = test.connect();
+            try {
+                TestServer.send(socket, TestServer.get("/close", true) + TestServer.get("/file", true));
+                TestServer.Reply reply = TestServer.read(socket);
+                assertEquals(200, reply.status);
+                assertEquals("close", reply.header("Connection"));
+            } finally {
+                socket.close();
+            }
+
+            assertTrue(listener.opened.await(5, TimeUnit.SECONDS));
+            assertClosedSoon(listener.channel);
+        } finally {
+            test.stop();
+        }
+    }
+
+    /**
+     * The handler only sets its file after it timed out, when its response has already been replaced by a 503
+     */
+    @Test
+    public void fileSetAfterTimeoutIsClosed() throws Exception {
+        FileListener listener = new FileListener();
+        TestServer test = TestServer.start(new TinyHttpServer(TestServer.freePort(), listener));
+        try {
+            Socket socket = test.connect();
+            try {
+                TestServer.send(socket, TestServer.get("/late", false));
+                assertEquals(503, TestServer.read(socket).status);
+            } finally {
+                socket.close();
+            }
+
+            assertTrue(listener.opened.await(5, TimeUnit.SECONDS));
+            assertClosedSoon(listener.channel);
+        } finally {
+            test.stop();
+        }
+    }
+
+    private FileChannel open() throws IOException {
+        return new RandomAccessFile(file, "r").getChannel();
+    }
+
+    private static void assertClosedSoon(FileChannel channel) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (channel.isOpen() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertFalse("The file was never closed", channel.isOpen());
+    }
+
+    public class FileListener implements TinyListener {
+        private final CountDownLatch opened = new CountDownLatch(1);
+        private volatile FileChannel channel;
+
+        @GetHandler(requestPath = "/close")
+        public void close(Request request, Response response) throws InterruptedException {
+            //Give the connection time to hand the next request to another thread
+            Thread.sleep(200);
+            response.addHeader("Connection", "close");
+            response.echo("bye");
+        }
+
+        @GetHandler(requestPath = "/file")
+        public void file(Request request, Response response) throws IOException {
+            setFile(response);
+        }
+
+        @GetHandler(requestPath = "/late")
+        @Timeout(100)
+        public CompletableFuture<Void> late(Request request, final Response response) {
+            final CompletableFuture<Void> done = new CompletableFuture<Void>();
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        Thread.sleep(400);
+                        setFile(response);
+                        done.complete(null);
+                    } catch (Throwable e) {
+                        done.completeExceptionally(e);
+                    }
+                }
+            }).start();
+            return done;
+        }
+
+        private void setFile(Response response) throws IOException {
+            FileChannel channel = open();
+            this.channel = channel;
+            response.setFileContent(channel, 0, channel.size());
+            opened.countDown();
+        }
+    }
+}
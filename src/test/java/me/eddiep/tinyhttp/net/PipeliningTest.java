@@ -0,0 +1,135 @@
+package me.eddiep.tinyhttp.net;
+
+import me.eddiep.tinyhttp.TestServer;
+import me.eddiep.tinyhttp.TinyHttpServer;
+import me.eddiep.tinyhttp.TinyListener;
+import me.eddiep.tinyhttp.annotations.GetHandler;
+import org.junit.Test;
+
+import java.net.Socket;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PipeliningTest {
+    @Test
+    public void responsesKeepRequestOrder() throws Exception {
+        TinyHttpServer server = new TinyHttpServer(TestServer.freePort(), new SlowListener());
+        TestServer test = TestServer.start(server);
+        try {
+            Socket socket = test.connect();
+            try {
+                StringBuilder requests = new StringBuilder();
+                for (int i = 0; i < 5; i++) {
+                    requests.append(TestServer.get(i % 2 == 0 ? "/slow/" + i : "/fast/" + i, i < 4));
+                }
+                TestServer.send(socket, requests.toString());
+
+                for (int i = 0; i < 5; i++) {
+                    TestServer.Reply reply = TestServer.read(socket);
+                    assertEquals(200, reply.status);
+                    assertEquals(String.valueOf(i), reply.text());
+                }
+            } finally {
+                socket.close();
+            }
+        } finally {
+            test.stop();
+        }
+    }
+
+    /**
+     * Responses to pipelined requests must not wait for the rest of a request the client is still sending
+     */
+    @Test
+    public void responsesDoNotWaitForPartialRequest() throws Exception {
+        TinyHttpServer server = new TinyHttpServer(TestServer.freePort(), new SlowListener());
+        TestServer test = TestServer.start(server);
+        try {
+            Socket socket = test.connect();
+            try {
+                String last = TestServer.get("/fast/2", false);
+                TestServer.send(socket, TestServer.get("/slow/0", true) + TestServer.get("/fast/1", true) + last.substring(0, 10));
+
+                socket.setSoTimeout(2000);
+                for (int i = 0; i < 2; i++) {
+                    TestServer.Reply reply = TestServer.read(socket);
+                    assertEquals(200, reply.status);
+                    assertEquals(String.valueOf(i), reply.text());
+                }
+
+                TestServer.send(socket, last.substring(10));
+                TestServer.Reply reply = TestServer.read(socket);
+                assertEquals(200, reply.status);
+                assertEquals("2", reply.text());
+            } finally {
+                socket.close();
+            }
+        } finally {
+            test.stop();
+        }
+    }
+
+    /**
+     * A single client pipelining many requests must not get more threads than the handler executor is bounded to.
+     * Requests it has no room for are turned away like the load shedder would
+     */
+    @Test
+    public void handlerExecutorIsBounded() throws Exception {
+        SlowListener listener = new SlowListener();
+        TinyHttpServer server = new TinyHttpServer(TestServer.freePort(), listener);
+        server.setWorkerPoolSize(1, 2, 1);
+        TestServer test = TestServer.start(server);
+        try {
+            Socket socket = test.connect();
+            try {
+                StringBuilder requests = new StringBuilder();
+                for (int i = 0; i < 10; i++) {
+                    requests.append(TestServer.get("/slow/" + i, true));
+                }
+                TestServer.send(socket, requests.toString());
+
+                int ok = 0;
+                TestServer.Reply reply;
+                while ((reply = TestServer.read(socket)).status == 200) {
+                    assertEquals(String.valueOf(ok), reply.text());
+                    ok++;
+                }
+                assertEquals(503, reply.status);
+                assertEquals("close", reply.header("Connection"));
+                assertEquals("Two threads and one queued request", 3, ok);
+                assertTrue("At most two pipelined requests may run at once, saw " + listener.maxConcurrent.get(),
+                        listener.maxConcurrent.get() <= 2);
+                assertEquals(1, server.getLoadShedder().getShedCount());
+            } finally {
+                socket.close();
+            }
+        } finally {
+            test.stop();
+        }
+    }
+
+    public static class SlowListener implements TinyListener {
+        private final AtomicInteger concurrent = new AtomicInteger();
+        private final AtomicInteger maxConcurrent = new AtomicInteger();
+
+        @GetHandler(requestPath = "/slow/.*")
+        public void slow(Request request, Response response) throws InterruptedException {
+            int now = concurrent.incrementAndGet();
+            int max;
+            while (now > (max = maxConcurrent.get()) && !maxConcurrent.compareAndSet(max, now)) { }
+            try {
+                Thread.sleep(200);
+                response.echo(request.getFileRequest());
+            } finally {
+                concurrent.decrementAndGet();
+            }
+        }
+
+        @GetHandler(requestPath = "/fast/.*")
+        public void fast(Request request, Response response) {
+            response.echo(request.getFileRequest());
+        }
+    }
+}
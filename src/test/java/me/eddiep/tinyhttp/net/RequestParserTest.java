@@ -0,0 +1,268 @@
+package me.eddiep.tinyhttp.net;
+
+import me.eddiep.tinyhttp.TestServer;
+import me.eddiep.tinyhttp.TinyHttpServer;
+import me.eddiep.tinyhttp.TinyListener;
+import me.eddiep.tinyhttp.net.http.HttpMethod;
+import me.eddiep.tinyhttp.net.http.StatusCode;
+import org.junit.Test;
+
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class RequestParserTest {
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    private static final String REQUEST = "POST /upload/file.txt?x=1 HTTP/1.1\r\n" +
+            "Host: example.com\r\n" +
+            "content-length:   12  \r\n" +
+            "X-Empty:\r\n" +
+            "X-Custom: one\r\n" +
+            "x-custom: two\r\n" +
+            "\r\n";
+
+    @Test
+    public void parsesWholeHead() throws HttpParseException {
+        byte[] data = bytes(REQUEST + "body follows");
+        RequestParser parser = new RequestParser(8192, 100);
+
+        int end = parser.parse(data, 0, data.length);
+        assertEquals(REQUEST.length(), end);
+        assertRequest(parser.createHead(data, 0, end));
+    }
+
+    @Test
+    public void parsesOneByteAtATime() throws HttpParseException {
+        byte[] data = bytes(REQUEST);
+        RequestParser parser = new RequestParser(8192, 100);
+
+        for (int limit = 0; limit < data.length; limit++) {
+            assertEquals(-1, parser.parse(data, 0, limit));
+        }
+        assertEquals(data.length, parser.parse(data, 0, data.length));
+        assertRequest(parser.createHead(data, 0, data.length));
+    }
+
+    @Test
+    public void parsesRandomSplits() throws HttpParseException {
+        Random random = new Random(3);
+        byte[] data = bytes("xx" + REQUEST);
+        for (int round = 0; round < 100; round++) {
+            RequestParser parser = new RequestParser(8192, 100);
+            int limit = 2;
+            int end = -1;
+            while (end == -1) {
+                limit = Math.min(data.length, limit + 1 + random.nextInt(20));
+                end = parser.parse(data, 2, limit);
+            }
+            assertEquals(data.length, end);
+            assertRequest(parser.createHead(data, 2, end));
+        }
+    }
+
+    @Test
+    public void parsesPipelinedHeadsAfterReset() throws HttpParseException {
+        String first = "GET /a HTTP/1.1\r\nHost: a\r\n\r\n";
+        String second = "\r\nGET /b HTTP/1.0\nHost: b\n\n";
+        byte[] data = bytes(first + second);
+        RequestParser parser = new RequestParser(8192, 100);
+
+        int end = parser.parse(data, 0, data.length);
+        assertEquals(first.length(), end);
+        RequestHead head = parser.createHead(data, 0, end);
+        assertEquals("/a", head.getTarget());
+
+        parser.reset();
+        int secondEnd = parser.parse(data, end, data.length);
+        assertEquals(data.length, secondEnd);
+        head = parser.createHead(data, end, secondEnd);
+        assertEquals(HttpMethod.GET, head.getMethod());
+        assertEquals("/b", head.getTarget());
+        assertEquals("HTTP/1.0", head.getVersion());
+        assertEquals("b", head.get(RequestHead.HOST));
+    }
+
+    @Test
+    public void unknownMethod() throws HttpParseException {
+        RequestHead head = parse("BREW /pot HTTP/1.1\r\n\r\n");
+        assertEquals(HttpMethod.UNKNOWN, head.getMethod());
+        assertEquals(-1, head.getContentLength());
+        assertEquals(0, head.size());
+    }
+
+    @Test
+    public void requestLineTooLong() {
+        StringBuilder path = new StringBuilder("/");
+        for (int i = 0; i < 200; i++) {
+            path.append('a');
+        }
+        assertFails("GET " + path + " HTTP/1.1\r\n\r\n", 100, 100, StatusCode.RequestURITooLong);
+    }
+
+    @Test
+    public void headersTooLarge() {
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            value.append('v');
+        }
+        assertFails("GET / HTTP/1.1\r\nX-Big: " + value + "\r\n\r\n", 100, 100, StatusCode.RequestHeaderFieldsTooLarge);
+    }
+
+    @Test
+    public void headTooLargeWhileWaitingForMore() {
+        byte[] data = bytes("GET / HTTP/1.1\r\nX-Partial: 0123456789");
+        RequestParser parser = new RequestParser(20, 100);
+        try {
+            parser.parse(data, 0, data.length);
+            fail("The head is already over the limit");
+        } catch (HttpParseException e) {
+            assertEquals(StatusCode.RequestHeaderFieldsTooLarge, e.getStatusCode());
+        }
+    }
+
+    @Test
+    public void tooManyHeaders() {
+        StringBuilder request = new StringBuilder("GET / HTTP/1.1\r\n");
+        for (int i = 0; i < 5; i++) {
+            request.append("X-").append(i).append(": ").append(i).append("\r\n");
+        }
+        request.append("\r\n");
+        assertFails(request.toString(), 8192, 4, StatusCode.RequestHeaderFieldsTooLarge);
+    }
+
+    @Test
+    public void manyHeadersGrowTheTables() throws HttpParseException {
+        StringBuilder request = new StringBuilder("GET / HTTP/1.1\r\n");
+        for (int i = 0; i < 40; i++) {
+            request.append("X-").append(i).append(": ").append(i).append("\r\n");
+        }
+        request.append("\r\n");
+        RequestHead head = parse(request.toString());
+        assertEquals(40, head.size());
+        assertEquals("X-39", head.getName(39));
+        assertEquals("39", head.getValue(39));
+    }
+
+    @Test
+    public void malformedHeads() {
+        String[] malformed = {
+                "G(T / HTTP/1.1\r\n\r\n",
+                "GET  HTTP/1.1\r\n\r\n",
+                "GET / HTTX/1.1\r\n\r\n",
+                "GET / HTTP/\r\n\r\n",
+                "GET / HTTP/1.1 extra\r\n\r\n",
+                "GET /a\u0001b HTTP/1.1\r\n\r\n",
+                "GET / HTTP/1.1\rX\r\n\r\n",
+                "GET / HTTP/1.1\r\nHost : x\r\n\r\n",
+                "GET / HTTP/1.1\r\n: x\r\n\r\n",
+                "GET / HTTP/1.1\r\nHost: x\r\n folded\r\n\r\n",
+                "GET / HTTP/1.1\r\nHost: x\rY\r\n",
+                "GET / HTTP/1.1\r\nHost: x\r\n\rX",
+        };
+        for (String request : malformed) {
+            try {
+                byte[] data = bytes(request);
+                new RequestParser(8192, 100).parse(data, 0, data.length);
+                fail("Should not parse: " + request);
+            } catch (HttpParseException e) {
+                assertEquals(request, StatusCode.BadRequest, e.getStatusCode());
+            }
+        }
+    }
+
+    @Test
+    public void contentLength() throws HttpParseException {
+        assertEquals(0, parse("POST / HTTP/1.1\r\nContent-Length: 0\r\n\r\n").getContentLength());
+        assertEquals(123456789012L, parse("POST / HTTP/1.1\r\nContent-Length: 123456789012\r\n\r\n").getContentLength());
+        assertEquals(-1, parse("POST / HTTP/1.1\r\n\r\n").getContentLength());
+    }
+
+    @Test
+    public void repeatedEqualContentLengthIsAccepted() throws HttpParseException {
+        assertEquals(5, parse("POST / HTTP/1.1\r\nContent-Length: 5\r\ncontent-length: 5\r\n\r\n").getContentLength());
+    }
+
+    @Test
+    public void invalidContentLengthIsRejected() throws HttpParseException {
+        String[] invalid = {
+                "Content-Length: 5\r\nContent-Length: 6",
+                "Content-Length: 6\r\nX-Other: 1\r\nCONTENT-LENGTH: 5",
+                "Content-Length: 5, 5",
+                "Content-Length: -1",
+                "Content-Length: +5",
+                "Content-Length: 0x10",
+                "Content-Length:",
+                "Content-Length: 1234567890123456789",
+                "Content-Length: 5\r\nTransfer-Encoding: chunked",
+        };
+        for (String headers : invalid) {
+            RequestHead head = parse("POST / HTTP/1.1\r\n" + headers + "\r\n\r\n");
+            try {
+                head.getContentLength();
+                fail("Should be rejected: " + headers);
+            } catch (HttpParseException e) {
+                assertEquals(headers, StatusCode.BadRequest, e.getStatusCode());
+            }
+        }
+    }
+
+    @Test
+    public void conflictingContentLengthIsAnsweredWithBadRequest() throws Exception {
+        TestServer test = TestServer.start(new TinyHttpServer(TestServer.freePort(), new TinyListener() { }));
+        try {
+            Socket socket = test.connect();
+            try {
+                TestServer.send(socket, "POST / HTTP/1.1\r\nHost: x\r\nContent-Length: 0\r\nContent-Length: 44\r\n\r\n" +
+                        "GET /smuggled HTTP/1.1\r\nHost: x\r\n\r\n");
+                TestServer.Reply reply = TestServer.read(socket);
+                assertEquals(400, reply.status);
+                assertEquals(-1, socket.getInputStream().read());
+            } finally {
+                socket.close();
+            }
+        } finally {
+            test.stop();
+        }
+    }
+
+    private static void assertRequest(RequestHead head) throws HttpParseException {
+        assertEquals(HttpMethod.POST, head.getMethod());
+        assertEquals("/upload/file.txt?x=1", head.getTarget());
+        assertEquals("HTTP/1.1", head.getVersion());
+        assertEquals(5, head.size());
+        assertEquals("example.com", head.get(RequestHead.HOST));
+        assertEquals(12, head.getContentLength());
+        assertEquals("content-length", head.getName(1));
+        assertEquals("", head.getValue(head.indexOf("x-empty")));
+        assertEquals("First value wins", "one", head.getValue(head.indexOf("X-CUSTOM")));
+        assertEquals(-1, head.indexOf("X-Missing"));
+        assertNull(head.get(RequestHead.COOKIE));
+    }
+
+    private static RequestHead parse(String request) throws HttpParseException {
+        byte[] data = bytes(request);
+        RequestParser parser = new RequestParser(8192, 100);
+        int end = parser.parse(data, 0, data.length);
+        assertEquals(data.length, end);
+        return parser.createHead(data, 0, end);
+    }
+
+    private static void assertFails(String request, int maxHeadLength, int maxHeaderCount, StatusCode expected) {
+        byte[] data = bytes(request);
+        try {
+            new RequestParser(maxHeadLength, maxHeaderCount).parse(data, 0, data.length);
+            fail("Should not parse: " + request);
+        } catch (HttpParseException e) {
+            assertEquals(expected, e.getStatusCode());
+        }
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(ASCII);
+    }
+}
@@ -0,0 +1,44 @@
+package me.eddiep.tinyhttp.net;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class ResponseBufferTest {
+    @Test
+    public void encodesSurrogatePairsAcrossAppends() {
+        ResponseBuffer buffer = new ResponseBuffer();
+        String text = "a\uD83D\uDE00b";
+        buffer.append(text, 0, 2);
+        buffer.append(text, 2, text.length());
+        assertEquals(text, buffer.toString(ResponseBuffer.UTF_8));
+        buffer.release();
+    }
+
+    @Test
+    public void trailingHighSurrogateIsWrittenWhenRead() throws IOException {
+        ResponseBuffer buffer = new ResponseBuffer();
+        buffer.append("ok\uD83D", 0, 3);
+        assertEquals(3, buffer.size());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        buffer.writeTo(out);
+        assertArrayEquals(new byte[] { 'o', 'k', '?' }, out.toByteArray());
+        assertEquals("ok?", buffer.toString(ResponseBuffer.UTF_8));
+        buffer.release();
+    }
+
+    @Test
+    public void loneSurrogatesBecomeQuestionMarks() {
+        ResponseBuffer buffer = new ResponseBuffer();
+        buffer.appendChar('\uDE00');
+        buffer.appendChar('\uD83D');
+        buffer.appendChar('x');
+        assertEquals("??x", buffer.toString(ResponseBuffer.UTF_8));
+        buffer.release();
+    }
+}
@@ -0,0 +1,103 @@
+package me.eddiep.tinyhttp.net;
+
+import me.eddiep.tinyhttp.TestServer;
+import me.eddiep.tinyhttp.TinyHttpServer;
+import me.eddiep.tinyhttp.TinyListener;
+import me.eddiep.tinyhttp.annotations.GetHandler;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class StreamResponseTest {
+    @Test
+    public void shortContentClosesConnection() throws Exception {
+        TinyHttpServer server = new TinyHttpServer(TestServer.freePort(), new LengthListener());
+        TestServer test = TestServer.start(server);
+        try {
+            Socket socket = test.connect();
+            try {
+                TestServer.send(socket, TestServer.get("/short", true) + TestServer.get("/exact", true));
+
+                //The client would otherwise wait for bytes that never come, or read the next response as this one's content
+                InputStream in = socket.getInputStream();
+                ByteArrayOutputStream received = new ByteArrayOutputStream();
+                int b;
+                while ((b = in.read()) != -1) {
+                    received.write(b);
+                }
+                String reply = new String(received.toByteArray(), TestServer.ASCII);
+                assertTrue(reply, reply.contains("Content-Length: 10\r\n"));
+                assertTrue(reply, reply.endsWith("\r\n\r\nabc"));
+                assertEquals(reply, 1, reply.split("HTTP/1.1 ").length - 1);
+            } finally {
+                socket.close();
+            }
+        } finally {
+            test.stop();
+        }
+    }
+
+    @Test
+    public void overlongContentIsRefused() throws Exception {
+        LengthListener listener = new LengthListener();
+        TinyHttpServer server = new TinyHttpServer(TestServer.freePort(), listener);
+        TestServer test = TestServer.start(server);
+        try {
+            Socket socket = test.connect();
+            try {
+                TestServer.send(socket, TestServer.get("/long", true) + TestServer.get("/exact", true));
+
+                TestServer.Reply reply = TestServer.read(socket);
+                assertEquals(200, reply.status);
+                assertEquals("0123456789", reply.text());
+
+                //The refused byte did not end up in front of the next response
+                reply = TestServer.read(socket);
+                assertEquals(200, reply.status);
+                assertEquals("abcdefghij", reply.text());
+
+                assertNotNull("Writing past the Content-Length must fail", listener.refused.get());
+            } finally {
+                socket.close();
+            }
+        } finally {
+            test.stop();
+        }
+    }
+
+    public static class LengthListener implements TinyListener {
+        private final AtomicReference<IOException> refused = new AtomicReference<IOException>();
+
+        @GetHandler(requestPath = "/short")
+        public void shortContent(Request request, Response response) throws IOException {
+            OutputStream out = response.createStreamResponse(10).startStream();
+            out.write("abc".getBytes(TestServer.ASCII));
+        }
+
+        @GetHandler(requestPath = "/long")
+        public void longContent(Request request, Response response) throws IOException {
+            OutputStream out = response.createStreamResponse(10).startStream();
+            out.write("0123456789".getBytes(TestServer.ASCII));
+            try {
+                out.write('!');
+            } catch (IOException e) {
+                refused.set(e);
+            }
+        }
+
+        @GetHandler(requestPath = "/exact")
+        public void exactContent(Request request, Response response) throws IOException {
+            OutputStream out = response.createStreamResponse(10).startStream();
+            out.write("abcdefghij".getBytes(TestServer.ASCII));
+        }
+    }
+}
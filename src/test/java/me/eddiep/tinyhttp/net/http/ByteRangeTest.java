@@ -0,0 +1,137 @@
+package me.eddiep.tinyhttp.net.http;
+
+import me.eddiep.tinyhttp.TestServer;
+import me.eddiep.tinyhttp.TinyHttpServer;
+import me.eddiep.tinyhttp.TinyListener;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.net.Socket;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ByteRangeTest {
+    @Test
+    public void closedRange() {
+        assertRanges("bytes=0-9", 100, 0, 9);
+        assertRanges("bytes=10-10", 100, 10, 10);
+    }
+
+    @Test
+    public void endIsClampedToLength() {
+        assertRanges("bytes=90-200", 100, 90, 99);
+    }
+
+    @Test
+    public void openEndedRange() {
+        assertRanges("bytes=95-", 100, 95, 99);
+        assertRanges("bytes=0-", 100, 0, 99);
+    }
+
+    @Test
+    public void suffixRange() {
+        assertRanges("bytes=-5", 100, 95, 99);
+        assertRanges("bytes=-500", 100, 0, 99);
+    }
+
+    @Test
+    public void multipleRanges() {
+        assertRanges("bytes=0-0, -1 ,10-19", 100, 0, 0, 99, 99, 10, 19);
+    }
+
+    @Test
+    public void unitIsCaseInsensitive() {
+        assertRanges("Bytes=0-9", 100, 0, 9);
+    }
+
+    @Test
+    public void unsatisfiableRangesAreDropped() {
+        assertTrue(ByteRange.parse("bytes=100-200", 100).isEmpty());
+        assertTrue(ByteRange.parse("bytes=-0", 100).isEmpty());
+        assertTrue(ByteRange.parse("bytes=0-", 0).isEmpty());
+        assertTrue(ByteRange.parse("bytes=-5", 0).isEmpty());
+        assertRanges("bytes=200-300,0-1", 100, 0, 1);
+    }
+
+    @Test
+    public void malformedHeadersAreIgnored() {
+        String[] malformed = {
+                "bytes=--5", "bytes=5--3", "bytes=-5-", "bytes=+1-2", "bytes=1-+2", "bytes=-+5", "bytes=10-5",
+                "bytes=", "bytes=-", "bytes=abc", "bytes=1", "bytes=0-1,,2-3", "bytes=0x10-20", "bytes=1 - 2",
+                "items=0-1", "0-1", "bytes=99999999999999999999-", "bytes=-99999999999999999999",
+        };
+        for (String header : malformed) {
+            assertNull(header, ByteRange.parse(header, 100));
+        }
+    }
+
+    @Test
+    public void tooManyRangesAreIgnored() {
+        StringBuilder header = new StringBuilder("bytes=0-0");
+        for (int i = 1; i < ByteRange.MAX_RANGES; i++) {
+            header.append(',').append(i).append('-').append(i);
+        }
+        assertEquals(ByteRange.MAX_RANGES, ByteRange.parse(header.toString(), 100).size());
+
+        header.append(",99-99");
+        assertNull(ByteRange.parse(header.toString(), 100));
+    }
+
+    @Test
+    public void contentRange() {
+        assertEquals("bytes 5-9/100", new ByteRange(5, 9).toContentRange(100));
+        assertEquals(5, new ByteRange(5, 9).getLength());
+    }
+
+    /**
+     * A malformed <code>Range</code> header is ignored, so the whole file is sent instead of failing the request
+     */
+    @Test
+    public void malformedRangeServesWholeFile() throws Exception {
+        File root = File.createTempFile("tinyhttp-range", "");
+        root.delete();
+        root.mkdir();
+        File file = new File(root, "file.txt");
+        FileOutputStream out = new FileOutputStream(file);
+        out.write("0123456789".getBytes(TestServer.ASCII));
+        out.close();
+
+        TinyHttpServer server = new TinyHttpServer(TestServer.freePort(), new TinyListener() { }, true);
+        server.setRootDirectory(root);
+        TestServer test = TestServer.start(server);
+        try {
+            assertEquals("0123456789", request(test, "bytes=--5", 200));
+            assertEquals("56789", request(test, "bytes=-5", 206));
+            request(test, "bytes=20-30", 416);
+        } finally {
+            test.stop();
+            file.delete();
+            root.delete();
+        }
+    }
+
+    private static String request(TestServer test, String range, int status) throws Exception {
+        Socket socket = test.connect();
+        try {
+            TestServer.send(socket, "GET /file.txt HTTP/1.1\r\nHost: localhost\r\nRange: " + range + "\r\nConnection: close\r\n\r\n");
+            TestServer.Reply reply = TestServer.read(socket);
+            assertEquals(range, status, reply.status);
+            return reply.text();
+        } finally {
+            socket.close();
+        }
+    }
+
+    private static void assertRanges(String header, long length, long... bounds) {
+        List<ByteRange> ranges = ByteRange.parse(header, length);
+        assertEquals(header, bounds.length / 2, ranges.size());
+        for (int i = 0; i < ranges.size(); i++) {
+            assertEquals(header, bounds[i * 2], ranges.get(i).getStart());
+            assertEquals(header, bounds[i * 2 + 1], ranges.get(i).getEnd());
+        }
+    }
+}
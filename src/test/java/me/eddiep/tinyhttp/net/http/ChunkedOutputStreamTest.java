@@ -0,0 +1,223 @@
+package me.eddiep.tinyhttp.net.http;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ChunkedOutputStreamTest {
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    @Test
+    public void emptyMessage() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new ChunkedOutputStream(out, 16).finish();
+        assertEquals("0\r\n\r\n", text(out));
+    }
+
+    @Test
+    public void smallWritesShareOneChunk() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ChunkedOutputStream chunked = new ChunkedOutputStream(out, 16);
+        chunked.write("hello".getBytes(ASCII));
+        chunked.write(' ');
+        chunked.write("world".getBytes(ASCII));
+        assertEquals("Nothing is sent before a chunk is full", 0, out.size());
+
+        chunked.finish();
+        assertEquals("b\r\nhello world\r\n0\r\n\r\n", text(out));
+    }
+
+    @Test
+    public void fullBufferIsSentAsChunk() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ChunkedOutputStream chunked = new ChunkedOutputStream(out, 4);
+        chunked.write("abc".getBytes(ASCII));
+        chunked.write("def".getBytes(ASCII));
+        chunked.write('g');
+        chunked.finish();
+        assertEquals("3\r\nabc\r\n4\r\ndefg\r\n0\r\n\r\n", text(out));
+    }
+
+    @Test
+    public void largeWriteIsSplitIntoFullChunks() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ChunkedOutputStream chunked = new ChunkedOutputStream(out, 4);
+        chunked.write('x');
+        chunked.write("0123456789abcdefghi".getBytes(ASCII));
+        chunked.finish();
+        assertEquals("1\r\nx\r\n4\r\n0123\r\n4\r\n4567\r\n4\r\n89ab\r\n4\r\ncdef\r\n3\r\nghi\r\n0\r\n\r\n", text(out));
+    }
+
+    @Test
+    public void eachChunkIsOneWrite() throws IOException {
+        final List<String> writes = new ArrayList<String>();
+        OutputStream out = new OutputStream() {
+            @Override
+            public void write(int b) {
+                writes.add(String.valueOf((char) b));
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                writes.add(new String(b, off, len, ASCII));
+            }
+        };
+        ChunkedOutputStream chunked = new ChunkedOutputStream(out, 32);
+        chunked.write("0123456789abcdefghijklmnopqrstuvwxyz".getBytes(ASCII));
+        chunked.write("end".getBytes(ASCII));
+        chunked.flush();
+        assertEquals(Arrays.asList("20\r\n0123456789abcdefghijklmnopqrstuv\r\n", "7\r\nwxyzend\r\n"), writes);
+    }
+
+    @Test
+    public void flushSendsPartialChunk() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ChunkedOutputStream chunked = new ChunkedOutputStream(out, 16);
+        chunked.write("ab".getBytes(ASCII));
+        chunked.flush();
+        assertEquals("2\r\nab\r\n", text(out));
+
+        chunked.flush();
+        assertEquals("An empty flush sends no chunk, which would end the message", "2\r\nab\r\n", text(out));
+    }
+
+    @Test
+    public void trailersAddedWhileWriting() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Map<String, String> trailers = new LinkedHashMap<String, String>();
+        ChunkedOutputStream chunked = new ChunkedOutputStream(out, 16, trailers);
+        chunked.write("data".getBytes(ASCII));
+        trailers.put("Content-MD5", "abc");
+        trailers.put("X-Count", "4");
+        chunked.close();
+
+        assertEquals("4\r\ndata\r\n0\r\nContent-MD5: abc\r\nX-Count: 4\r\n\r\n", text(out));
+    }
+
+    @Test
+    public void trailersCannotStartNewLines() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Map<String, String> trailers = new LinkedHashMap<String, String>();
+        trailers.put("X-Name\r\nX-Injected", "value\r\nX-Injected: 1");
+        new ChunkedOutputStream(out, 16, trailers).finish();
+
+        assertEquals("0\r\nX-Name  X-Injected: value  X-Injected: 1\r\n\r\n", text(out));
+    }
+
+    @Test
+    public void finishOnlyOnceAndRejectsLaterWrites() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ChunkedOutputStream chunked = new ChunkedOutputStream(out, 16);
+        chunked.finish();
+        chunked.close();
+        chunked.flush();
+        assertTrue(chunked.isFinished());
+        assertEquals("0\r\n\r\n", text(out));
+
+        try {
+            chunked.write('x');
+            fail("Writing after the last chunk should fail");
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void closeLeavesUnderlyingStreamOpen() throws IOException {
+        final boolean[] closed = new boolean[1];
+        ByteArrayOutputStream out = new ByteArrayOutputStream() {
+            @Override
+            public void close() {
+                closed[0] = true;
+            }
+        };
+        new ChunkedOutputStream(out, 16).close();
+        assertFalse(closed[0]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsEmptyChunkSize() {
+        new ChunkedOutputStream(new ByteArrayOutputStream(), 0);
+    }
+
+    @Test
+    public void randomWritesDecodeToSameContent() throws IOException {
+        Random random = new Random(12);
+        for (int round = 0; round < 50; round++) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            ChunkedOutputStream chunked = new ChunkedOutputStream(out, 1 + random.nextInt(64));
+
+            int writes = random.nextInt(30);
+            for (int i = 0; i < writes; i++) {
+                byte[] data = new byte[random.nextInt(200)];
+                random.nextBytes(data);
+                int off = data.length == 0 ? 0 : random.nextInt(data.length);
+                int len = data.length - off;
+                if (random.nextBoolean() && len > 0) {
+                    chunked.write(data[off]);
+                    expected.write(data[off]);
+                } else {
+                    chunked.write(data, off, len);
+                    expected.write(data, off, len);
+                }
+                if (random.nextInt(5) == 0)
+                    chunked.flush();
+            }
+            chunked.finish();
+
+            assertArrayEquals(expected.toByteArray(), decode(out.toByteArray()));
+        }
+    }
+
+    /**
+     * Decode a chunked body, checking its framing along the way
+     */
+    private static byte[] decode(byte[] encoded) {
+        ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+        int pos = 0;
+        while (true) {
+            int lineEnd = indexOfCrlf(encoded, pos);
+            int size = Integer.parseInt(new String(encoded, pos, lineEnd - pos, ASCII), 16);
+            pos = lineEnd + 2;
+            if (size == 0) {
+                assertEquals("The last chunk ends the message", encoded.length, pos + 2);
+                assertEquals('\r', encoded[pos]);
+                assertEquals('\n', encoded[pos + 1]);
+                return decoded.toByteArray();
+            }
+
+            decoded.write(encoded, pos, size);
+            pos += size;
+            assertEquals('\r', encoded[pos]);
+            assertEquals('\n', encoded[pos + 1]);
+            pos += 2;
+        }
+    }
+
+    private static int indexOfCrlf(byte[] data, int from) {
+        for (int i = from; i < data.length - 1; i++) {
+            if (data[i] == '\r' && data[i + 1] == '\n')
+                return i;
+        }
+        throw new AssertionError("Missing CRLF after position " + from);
+    }
+
+    private static String text(ByteArrayOutputStream out) {
+        return new String(out.toByteArray(), ASCII);
+    }
+}
@@ -0,0 +1,155 @@
+package me.eddiep.tinyhttp.net.http;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class FileCacheTest {
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    private File root;
+    private FileCache cache;
+
+    @Before
+    public void setUp() throws IOException {
+        root = File.createTempFile("tinyhttp-cache", "");
+        root.delete();
+        root.mkdir();
+        cache = new FileCache();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = root.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        root.delete();
+    }
+
+    @Test
+    public void loadsOnceThenHits() throws IOException {
+        File file = write("index.html", "<html></html>");
+
+        FileCache.Entry first = cache.get(file);
+        FileCache.Entry second = cache.get(file);
+
+        assertSame(first, second);
+        assertArrayEquals("<html></html>".getBytes(ASCII), first.getContent());
+        assertEquals("text/html", first.getMimeType());
+        assertEquals(FileCache.createETag(13, file.lastModified()), first.getETag());
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getHits());
+        assertEquals(13, cache.getSize());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedOverEntryCount() throws IOException {
+        cache.setMaxEntries(2);
+        File a = write("a.txt", "a");
+        File b = write("b.txt", "b");
+        File c = write("c.txt", "c");
+
+        cache.get(a);
+        cache.get(b);
+        cache.get(a); //a is now more recently used than b
+        cache.get(c);
+
+        assertEquals(2, cache.getEntryCount());
+        assertEquals(1, cache.getEvictions());
+        assertNull(cache.peek(b));
+        assertNotNull(cache.peek(a));
+        assertNotNull(cache.peek(c));
+    }
+
+    @Test
+    public void evictsOverByteBudget() throws IOException {
+        cache.setMaxBytes(10);
+        File a = write("a.txt", "aaaaaa");
+        File b = write("b.txt", "bbbbbb");
+
+        cache.get(a);
+        cache.get(b);
+
+        assertEquals(1, cache.getEntryCount());
+        assertEquals(6, cache.getSize());
+        assertEquals(1, cache.getEvictions());
+        assertNull(cache.peek(a));
+        assertNotNull(cache.peek(b));
+    }
+
+    @Test
+    public void skipsLargeAndMissingFiles() throws IOException {
+        cache.setMaxFileSize(4);
+        File large = write("large.txt", "too large");
+
+        assertNull(cache.get(large));
+        assertNull(cache.get(new File(root, "missing.txt")));
+        assertNull(cache.get(root));
+        assertEquals(0, cache.getEntryCount());
+    }
+
+    @Test
+    public void invalidatesChangedFile() throws IOException {
+        cache.setRevalidateInterval(0);
+        File file = write("page.txt", "old");
+        cache.get(file);
+
+        write("page.txt", "changed");
+        file.setLastModified(file.lastModified() + 5000);
+
+        assertNull(cache.peek(file));
+        assertEquals(1, cache.getInvalidations());
+        assertEquals(0, cache.getSize());
+        assertArrayEquals("changed".getBytes(ASCII), cache.get(file).getContent());
+    }
+
+    @Test
+    public void trustsEntryWithinRevalidateInterval() throws IOException {
+        cache.setRevalidateInterval(60000);
+        File file = write("page.txt", "old");
+        cache.get(file);
+
+        write("page.txt", "changed");
+
+        assertArrayEquals("old".getBytes(ASCII), cache.peek(file).getContent());
+        assertEquals(0, cache.getInvalidations());
+    }
+
+    @Test
+    public void disablingClears() throws IOException {
+        File file = write("a.txt", "a");
+        cache.get(file);
+
+        cache.setEnabled(false);
+        assertFalse(cache.isEnabled());
+        assertEquals(0, cache.getEntryCount());
+        assertNull(cache.get(file));
+        assertNull(cache.peek(file));
+    }
+
+    private File write(String name, String content) throws IOException {
+        File file = new File(root, name);
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content.getBytes(ASCII));
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+}
@@ -0,0 +1,345 @@
+package me.eddiep.tinyhttp.net.http;
+
+import me.eddiep.tinyhttp.TestServer;
+import me.eddiep.tinyhttp.TinyHttpServer;
+import me.eddiep.tinyhttp.TinyListener;
+import me.eddiep.tinyhttp.annotations.PostHandler;
+import me.eddiep.tinyhttp.net.Request;
+import me.eddiep.tinyhttp.net.Response;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MultipartReaderTest {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String BOUNDARY = "----tinyhttp42";
+
+    private File tempDirectory;
+
+    @Before
+    public void setUp() throws IOException {
+        tempDirectory = File.createTempFile("tinyhttp-multipart", "");
+        tempDirectory.delete();
+        tempDirectory.mkdir();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = tempDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        tempDirectory.delete();
+    }
+
+    @Test
+    public void readsFieldsAndFiles() throws IOException {
+        String content = "preamble is ignored\r\n" +
+                part("form-data; name=\"title\"", null, "Hello") +
+                part("form-data; name=\"upload\"; filename=\"na\u00efve.txt\"", "text/plain; charset=UTF-8", "file\r\ncontents") +
+                "--" + BOUNDARY + "--\r\nepilogue is ignored";
+
+        MultipartReader reader = new MultipartReader(stream(content, 0), BOUNDARY);
+        List<Part> parts = reader.readAll();
+        assertEquals(2, parts.size());
+
+        Part title = parts.get(0);
+        assertEquals("title", title.getName());
+        assertFalse(title.isFile());
+        assertEquals("text/plain", title.getContentType());
+        assertEquals("Hello", title.getString());
+
+        Part upload = parts.get(1);
+        assertEquals("upload", upload.getName());
+        assertEquals("na\u00efve.txt", upload.getFileName());
+        assertTrue(upload.isFile());
+        assertEquals("text/plain; charset=UTF-8", upload.getHeader("content-type"));
+        assertEquals("file\r\ncontents", upload.getString());
+        assertEquals(14, upload.getSize());
+
+        assertNull(reader.next());
+    }
+
+    @Test
+    public void emptyContentHasNoParts() throws IOException {
+        MultipartReader reader = new MultipartReader(stream("--" + BOUNDARY + "--\r\n", 0), BOUNDARY);
+        assertNull(reader.next());
+        assertNull(reader.next());
+    }
+
+    /**
+     * The content holds things that look like the start of a boundary, and is read in pieces that cut through every
+     * possible place, so a delimiter is only ever found when all of it has arrived
+     */
+    @Test
+    public void findsBoundariesAcrossReads() throws IOException {
+        String tricky = "\r\n--" + BOUNDARY.substring(0, 10) + " \r\n-" + BOUNDARY + "\r\n\r\n--";
+        String content = part("form-data; name=\"a\"", null, tricky) +
+                part("form-data; name=\"b\"", null, "") +
+                part("form-data; name=\"c\"", null, "last") +
+                "--" + BOUNDARY + "--";
+
+        for (int chunk = 1; chunk <= 40; chunk++) {
+            MultipartReader reader = new MultipartReader(stream(content, chunk), BOUNDARY);
+            List<Part> parts = reader.readAll();
+            assertEquals(3, parts.size());
+            assertEquals(tricky, parts.get(0).getString());
+            assertEquals(0, parts.get(1).getSize());
+            assertEquals("last", parts.get(2).getString());
+        }
+    }
+
+    @Test
+    public void largePartsSpillToDisk() throws IOException {
+        byte[] data = new byte[100 * 1024];
+        new Random(7).nextBytes(data);
+        String content = part("form-data; name=\"small\"", null, "tiny") +
+                "--" + BOUNDARY + "\r\nContent-Disposition: form-data; name=\"big\"; filename=\"big.bin\"\r\n\r\n";
+        byte[] body = concat(content.getBytes(UTF_8), data, ("\r\n--" + BOUNDARY + "--\r\n").getBytes(UTF_8));
+
+        MultipartReader reader = new MultipartReader(new ChunkedStream(body, 1000), BOUNDARY);
+        reader.setMemoryThreshold(1024);
+        reader.setTempDirectory(tempDirectory);
+
+        Part small = reader.next();
+        Part big = reader.next();
+        assertNull(reader.next());
+
+        assertTrue(small.isInMemory());
+        assertFalse(big.isInMemory());
+        assertEquals(data.length, big.getSize());
+        assertArrayEquals(data, big.getBytes());
+        assertEquals(1, tempFiles());
+
+        reader.close();
+        assertEquals("The temporary file is deleted on close", 0, tempFiles());
+        assertEquals("Parts in memory stay readable", "tiny", small.getString());
+        try {
+            big.getBytes();
+            fail("The content of a deleted part can't be read");
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void savedPartsAreKept() throws IOException {
+        String content = part("form-data; name=\"big\"; filename=\"big.txt\"", null, "more than eight bytes") +
+                "--" + BOUNDARY + "--";
+        MultipartReader reader = new MultipartReader(stream(content, 0), BOUNDARY);
+        reader.setMemoryThreshold(8);
+        reader.setTempDirectory(tempDirectory);
+
+        Part part = reader.next();
+        File saved = new File(tempDirectory, "saved.txt");
+        part.saveTo(saved);
+        reader.close();
+
+        assertTrue(saved.exists());
+        assertEquals("more than eight bytes", part.getString());
+        assertEquals(1, tempFiles());
+    }
+
+    @Test
+    public void partSizeLimit() throws IOException {
+        String content = part("form-data; name=\"ok\"", null, "12345") +
+                part("form-data; name=\"big\"; filename=\"big.txt\"", null, "1234567890") +
+                "--" + BOUNDARY + "--";
+        MultipartReader reader = new MultipartReader(stream(content, 3), BOUNDARY);
+        reader.setMaxPartSize(5);
+        reader.setMemoryThreshold(2);
+        reader.setTempDirectory(tempDirectory);
+
+        assertEquals("12345", reader.next().getString());
+        assertTooLarge(reader);
+        reader.close();
+        assertEquals("The temporary file of the rejected part is deleted", 0, tempFiles());
+    }
+
+    @Test
+    public void totalSizeLimit() throws IOException {
+        String content = part("form-data; name=\"a\"", null, "12345") +
+                part("form-data; name=\"b\"", null, "12345") +
+                "--" + BOUNDARY + "--";
+        MultipartReader reader = new MultipartReader(stream(content, 0), BOUNDARY);
+        reader.setMaxTotalSize(8);
+
+        reader.next();
+        assertTooLarge(reader);
+    }
+
+    @Test
+    public void partCountLimit() throws IOException {
+        String content = part("form-data; name=\"a\"", null, "1") +
+                part("form-data; name=\"b\"", null, "2") +
+                "--" + BOUNDARY + "--";
+
+        MultipartReader exact = new MultipartReader(stream(content, 0), BOUNDARY);
+        exact.setMaxParts(2);
+        assertEquals(2, exact.readAll().size());
+
+        MultipartReader reader = new MultipartReader(stream(content, 0), BOUNDARY);
+        reader.setMaxParts(1);
+        reader.next();
+        assertTooLarge(reader);
+    }
+
+    @Test
+    public void limitsCantChangeOnceStarted() throws IOException {
+        MultipartReader reader = new MultipartReader(stream(part("form-data; name=\"a\"", null, "1") + "--" + BOUNDARY + "--", 0), BOUNDARY);
+        reader.next();
+        try {
+            reader.setMaxParts(10);
+            fail("The limits are fixed once parts have been read");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    @Test
+    public void malformedContent() throws IOException {
+        String[] malformed = {
+                part("form-data; name=\"a\"", null, "no closing boundary"),
+                "--" + BOUNDARY + "\r\nContent-Disposition: form-data; name=\"a\"\r\n",
+                "--" + BOUNDARY + "garbage\r\n\r\n\r\n--" + BOUNDARY + "--",
+                "no boundary at all",
+        };
+        for (String content : malformed) {
+            MultipartReader reader = new MultipartReader(stream(content, 0), BOUNDARY);
+            try {
+                reader.readAll();
+                fail("Should not parse: " + content);
+            } catch (MultipartException e) {
+                assertEquals(content, StatusCode.BadRequest, e.getStatusCode());
+            }
+        }
+    }
+
+    @Test
+    public void boundaryFromContentType() {
+        assertEquals("abc", MultipartReader.getBoundary("multipart/form-data; boundary=abc"));
+        assertEquals("a b", MultipartReader.getBoundary("Multipart/Form-Data; charset=UTF-8; boundary=\"a b\""));
+        assertNull(MultipartReader.getBoundary("multipart/form-data"));
+        assertNull(MultipartReader.getBoundary("text/plain; boundary=abc"));
+        assertNull(MultipartReader.getBoundary(null));
+
+        try {
+            new MultipartReader(stream("", 0), "");
+            fail("An empty boundary is invalid");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void requestsStartWithTheServerLimits() throws Exception {
+        TinyHttpServer server = new TinyHttpServer(TestServer.freePort(), new UploadListener());
+        server.setMaxMultipartParts(2);
+        TestServer test = TestServer.start(server);
+        try {
+            String two = part("form-data; name=\"a\"", null, "1") + part("form-data; name=\"b\"", null, "2");
+            assertEquals("2 parts", post(test, two + "--" + BOUNDARY + "--"));
+            assertEquals("RequestEntityTooLarge", post(test, two + part("form-data; name=\"c\"", null, "3") + "--" + BOUNDARY + "--"));
+        } finally {
+            test.stop();
+        }
+    }
+
+    private static String post(TestServer test, String content) throws IOException {
+        Socket socket = test.connect();
+        try {
+            byte[] body = content.getBytes(UTF_8);
+            TestServer.send(socket, "POST /upload HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n" +
+                    "Content-Type: multipart/form-data; boundary=" + BOUNDARY + "\r\n" +
+                    "Content-Length: " + body.length + "\r\n\r\n" + content);
+            TestServer.Reply reply = TestServer.read(socket);
+            assertEquals(200, reply.status);
+            return reply.text();
+        } finally {
+            socket.close();
+        }
+    }
+
+    private static void assertTooLarge(MultipartReader reader) throws IOException {
+        try {
+            reader.next();
+            fail("The limit should have been exceeded");
+        } catch (MultipartException e) {
+            assertEquals(StatusCode.RequestEntityTooLarge, e.getStatusCode());
+        }
+    }
+
+    private int tempFiles() {
+        String[] names = tempDirectory.list();
+        return names == null ? 0 : names.length;
+    }
+
+    private static String part(String disposition, String contentType, String body) {
+        return "--" + BOUNDARY + "\r\n" +
+                "Content-Disposition: " + disposition + "\r\n" +
+                (contentType != null ? "Content-Type: " + contentType + "\r\n" : "") +
+                "\r\n" + body + "\r\n";
+    }
+
+    private static InputStream stream(String content, int chunk) {
+        byte[] data = content.getBytes(UTF_8);
+        return chunk == 0 ? new ByteArrayInputStream(data) : new ChunkedStream(data, chunk);
+    }
+
+    private static byte[] concat(byte[]... arrays) {
+        int length = 0;
+        for (byte[] array : arrays) {
+            length += array.length;
+        }
+        byte[] result = new byte[length];
+        int offset = 0;
+        for (byte[] array : arrays) {
+            System.arraycopy(array, 0, result, offset, array.length);
+            offset += array.length;
+        }
+        return result;
+    }
+
+    /**
+     * Hands out its data a few bytes at a time, like a socket would
+     */
+    private static class ChunkedStream extends ByteArrayInputStream {
+        private final int chunk;
+
+        ChunkedStream(byte[] data, int chunk) {
+            super(data);
+            this.chunk = chunk;
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) {
+            return super.read(b, off, Math.min(len, chunk));
+        }
+    }
+
+    public static class UploadListener implements TinyListener {
+        @PostHandler(requestPath = "/upload")
+        public void upload(Request request, Response response) throws IOException {
+            try {
+                response.echo(request.getMultipartReader().readAll().size() + " parts");
+            } catch (MultipartException e) {
+                response.echo(e.getStatusCode().name());
+            }
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package me.eddiep.tinyhttp.routing;
+
+import me.eddiep.tinyhttp.net.http.HttpMethod;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RouteDispatcherTest {
+    private static final String[] ROUTES = {
+            "/index.html|/",
+            "/index\\.html",
+            "/file\\.txt",
+            "/wat.*",
+            "/api/[a-z]+",
+            "/api/v1/.*",
+            "/api/v1/users/\\d+",
+            "/static/.*\\.css",
+            "/a\\.+b",
+            "/x+",
+            "(?i)/upper",
+            "/opt(ional)?",
+            "/end$",
+            "/brackets/[|]",
+            "/dash\\-case",
+            "",
+    };
+
+    private static final String[] PATHS = {
+            "", "/", "/index.html", "/indexxhtml", "/file.txt", "/filextxt", "/wat", "/wat/is/this", "/wa",
+            "/api/foo", "/api/Foo", "/api/", "/api/v1/", "/api/v1/users/12", "/api/v1/users/x", "/static/site.css",
+            "/static/site.js", "/a.b", "/a...b", "/ab", "/x", "/xxx", "/", "/UPPER", "/upper", "/opt", "/optional",
+            "/optio", "/end", "/brackets/|", "/brackets/a", "/dash-case", "/nothing",
+    };
+
+    /**
+     * Whatever the dispatcher returns has to be a route that {@link String#matches(String)} accepts, which is how
+     * routes were matched before the dispatcher existed. It may only return null if no route matches at all
+     */
+    @Test
+    public void agreesWithPatternMatches() {
+        RouteDispatcher<String> dispatcher = new RouteDispatcher<String>();
+        for (String route : ROUTES) {
+            dispatcher.register(HttpMethod.GET, route, route);
+        }
+
+        for (String path : PATHS) {
+            List<String> matching = new ArrayList<String>();
+            for (String route : ROUTES) {
+                if (Pattern.matches(route, path))
+                    matching.add(route);
+            }
+
+            String found = dispatcher.lookup(HttpMethod.GET, path);
+            if (matching.isEmpty()) {
+                assertNull("No route matches " + path, found);
+            } else {
+                assertTrue(found + " was returned for " + path + ", expected one of " + matching, matching.contains(found));
+            }
+        }
+    }
+
+    @Test
+    public void literalRoutes() {
+        RouteDispatcher<String> dispatcher = new RouteDispatcher<String>();
+        dispatcher.register(HttpMethod.GET, "/index\\.html", "escaped");
+        dispatcher.register(HttpMethod.GET, "/about", "about");
+
+        assertEquals("escaped", dispatcher.lookup(HttpMethod.GET, "/index.html"));
+        assertNull(dispatcher.lookup(HttpMethod.GET, "/indexxhtml"));
+        assertEquals("about", dispatcher.lookup(HttpMethod.GET, "/about"));
+        assertNull(dispatcher.lookup(HttpMethod.GET, "/about/"));
+        assertNull(dispatcher.lookup(HttpMethod.POST, "/about"));
+    }
+
+    @Test
+    public void literalWinsOverPrefix() {
+        RouteDispatcher<String> dispatcher = new RouteDispatcher<String>();
+        dispatcher.register(HttpMethod.GET, "/.*", "all");
+        dispatcher.register(HttpMethod.GET, "/api/status", "status");
+
+        assertEquals("status", dispatcher.lookup(HttpMethod.GET, "/api/status"));
+        assertEquals("all", dispatcher.lookup(HttpMethod.GET, "/api/other"));
+    }
+
+    @Test
+    public void longestPrefixWins() {
+        RouteDispatcher<String> dispatcher = new RouteDispatcher<String>();
+        dispatcher.register(HttpMethod.GET, "/.*", "all");
+        dispatcher.register(HttpMethod.GET, "/api/.*", "api");
+        dispatcher.register(HttpMethod.GET, "/api/[a-z]+", "letters");
+
+        assertEquals("letters", dispatcher.lookup(HttpMethod.GET, "/api/foo"));
+        assertEquals("api", dispatcher.lookup(HttpMethod.GET, "/api/42"));
+        assertEquals("all", dispatcher.lookup(HttpMethod.GET, "/ap"));
+    }
+
+    @Test
+    public void alternationIsNotTreatedAsPrefix() {
+        RouteDispatcher<String> dispatcher = new RouteDispatcher<String>();
+        dispatcher.register(HttpMethod.GET, "/index.html|/", "index");
+
+        assertEquals("index", dispatcher.lookup(HttpMethod.GET, "/"));
+        assertEquals("index", dispatcher.lookup(HttpMethod.GET, "/index.html"));
+        assertNull(dispatcher.lookup(HttpMethod.GET, "/index"));
+    }
+
+    @Test
+    public void quantifierIsNotPartOfPrefix() {
+        RouteDispatcher<String> dispatcher = new RouteDispatcher<String>();
+        dispatcher.register(HttpMethod.GET, "/ab?c", "optional");
+
+        assertEquals("optional", dispatcher.lookup(HttpMethod.GET, "/ac"));
+        assertEquals("optional", dispatcher.lookup(HttpMethod.GET, "/abc"));
+        assertNull(dispatcher.lookup(HttpMethod.GET, "/abbc"));
+    }
+
+    @Test
+    public void firstRegisteredRegexWins() {
+        RouteDispatcher<String> dispatcher = new RouteDispatcher<String>();
+        dispatcher.register(HttpMethod.GET, "/api/[a-z]+", "first");
+        dispatcher.register(HttpMethod.GET, "/api/[a-z0-9]+", "second");
+
+        assertEquals("first", dispatcher.lookup(HttpMethod.GET, "/api/foo"));
+        assertEquals("second", dispatcher.lookup(HttpMethod.GET, "/api/foo1"));
+        assertEquals(2, dispatcher.size());
+    }
+
+    @Test
+    public void parsedRouteKinds() {
+        assertEquals(RouteDispatcher.ParsedRoute.LITERAL, RouteDispatcher.ParsedRoute.parse("/a\\.b").kind);
+        assertEquals("/a.b", RouteDispatcher.ParsedRoute.parse("/a\\.b").prefix);
+        assertEquals(RouteDispatcher.ParsedRoute.PREFIX, RouteDispatcher.ParsedRoute.parse("/wat.*").kind);
+        assertEquals("/wat", RouteDispatcher.ParsedRoute.parse("/wat.*").prefix);
+        assertEquals(RouteDispatcher.ParsedRoute.REGEX, RouteDispatcher.ParsedRoute.parse("/x+").kind);
+        assertEquals("/", RouteDispatcher.ParsedRoute.parse("/x+").prefix);
+        assertEquals("", RouteDispatcher.ParsedRoute.parse("/a|/b").prefix);
+        assertEquals("/v", RouteDispatcher.ParsedRoute.parse("/v\\d").prefix);
+    }
+}